@@ -0,0 +1,21 @@
+package com.example.bankcards.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Ключи шифрования номеров карт (app.crypto.*).
+ * aes-key-base64 — ключ с id 0 (им зашифровано всё, что записано до появления keyring);
+ * keys — дополнительные ключи по id 1..255; active-key-id — каким ключом шифровать новые записи.
+ * Старые ключи убирать из keyring только после завершения ротации (CardKeyRotationJob);
+ * id ключей не переиспользовать — по id ведётся чекпоинт ротации.
+ */
+@ConfigurationProperties(prefix = "app.crypto")
+public record CryptoProperties(
+        String aesKeyBase64,
+        String hmacKeyBase64,
+        Map<Integer, String> keys,
+        @DefaultValue("0") int activeKeyId
+) { }
@@ -0,0 +1,10 @@
+package com.example.bankcards.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// @Scheduled-задачи (CardExpiryJob); отдельный класс, чтобы их можно было отключить в тестах/профилях
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
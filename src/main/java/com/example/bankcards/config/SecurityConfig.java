@@ -25,7 +25,7 @@ public SecurityConfig() {}
     @Bean
     public DaoAuthenticationProvider daoAuthProvider(BankUserDetailsService uds, PasswordEncoder enc) {
         DaoAuthenticationProvider p = new DaoAuthenticationProvider();
-        p.setUserDetailsService(uds);
+        p.setUserDetailsService(uds.uncached()); // пароль — по свежей строке, не по кэшу узла
         p.setPasswordEncoder(enc);
         return p;
     }
@@ -44,6 +44,8 @@ public SecurityConfig() {}
                 .csrf(cs -> cs.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/**", "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .authenticationProvider(provider)
@@ -5,6 +5,7 @@ import com.example.bankcards.dto.auth.LoginRequest;
 import com.example.bankcards.dto.auth.RegisterRequest;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.security.JwtService;
+import com.example.bankcards.security.PasswordHashingExecutor;
 import com.example.bankcards.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
@@ -13,6 +14,8 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 // Swagger/OpenAPI аннотации
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -25,13 +28,17 @@ public class AuthController {
     private final UserService userService;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
+    // BCrypt выполняется в отдельном ограниченном пуле, поток Tomcat сразу освобождается
+    private final PasswordHashingExecutor hashing;
 
     public AuthController(UserService userService,
                           AuthenticationManager authenticationManager,
-                          JwtService jwtService) {
+                          JwtService jwtService,
+                          PasswordHashingExecutor hashing) {
         this.userService = userService;
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
+        this.hashing = hashing;
     }
 
     @Operation(
@@ -40,10 +47,12 @@ public class AuthController {
             security = {} // снимаем глобальную безопасность для этого метода
     )
     @PostMapping(value = "/register", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<AuthResponse> register(@RequestBody @Valid RegisterRequest req) {
-        User u = userService.register(req.username(), req.password());
-        String token = jwtService.generateToken(u.getUsername(), u.getRoles());
-        return ResponseEntity.ok(new AuthResponse(token));
+    public CompletableFuture<ResponseEntity<AuthResponse>> register(@RequestBody @Valid RegisterRequest req) {
+        return hashing.submit("register", () -> {
+            User u = userService.register(req.username(), req.password());
+            String token = jwtService.generateToken(u);
+            return ResponseEntity.ok(new AuthResponse(token));
+        });
     }
 
     @Operation(
@@ -52,12 +61,14 @@ public class AuthController {
             security = {} // снимаем глобальную безопасность для этого метода
     )
     @PostMapping(value = "/login", consumes = "application/json", produces = "application/json")
-    public ResponseEntity<AuthResponse> login(@RequestBody @Valid LoginRequest req) {
-        Authentication auth = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(req.username(), req.password())
-        );
-        User u = userService.byUsername(auth.getName());
-        String token = jwtService.generateToken(u.getUsername(), u.getRoles());
-        return ResponseEntity.ok(new AuthResponse(token));
+    public CompletableFuture<ResponseEntity<AuthResponse>> login(@RequestBody @Valid LoginRequest req) {
+        return hashing.submit("login", () -> {
+            Authentication auth = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(req.username(), req.password())
+            );
+            User u = userService.byUsername(auth.getName());
+            String token = jwtService.generateToken(u);
+            return ResponseEntity.ok(new AuthResponse(token));
+        });
     }
 }
\ No newline at end of file
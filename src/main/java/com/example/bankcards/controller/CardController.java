@@ -1,27 +1,60 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.card.CardCreateRequest;
+import com.example.bankcards.dto.card.CardImportResult;
+import com.example.bankcards.dto.card.CardLookupRequest;
 import com.example.bankcards.dto.card.CardResponse;
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardStatusBulkRequest;
+import com.example.bankcards.dto.card.CardStatusBulkResponse;
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.card.LedgerBalanceResponse;
+import com.example.bankcards.dto.page.CursorPage;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.CardImportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.LedgerService;
+import com.example.bankcards.service.StatementService;
+import com.example.bankcards.util.CursorUtil;
+import com.example.bankcards.util.DataFormat;
+import com.example.bankcards.util.DateUtil;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/cards")
 public class CardController {
 
     private final CardService cardService;
+    private final CardImportService cardImportService;
+    private final StatementService statementService;
+    private final LedgerService ledgerService;
 
-    public CardController(CardService cardService) {
+    public CardController(CardService cardService, CardImportService cardImportService,
+                          StatementService statementService, LedgerService ledgerService) {
         this.cardService = cardService;
+        this.cardImportService = cardImportService;
+        this.statementService = statementService;
+        this.ledgerService = ledgerService;
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -31,50 +64,136 @@ public class CardController {
         Card c = cardService.create(req.number(), req.expiry(), req.ownerUsername(), req.initialBalance());
         return toDto(c);
     }
+
+    /**
+     * Пакетный выпуск карт: тело читается потоком (NDJSON или CSV), не целиком в память.
+     * Ответ — счётчики и ошибки по номерам строк; корректные строки вставляются независимо от ошибочных.
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    public CardImportResult importCards(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                        InputStream body) {
+        return cardImportService.importCards(body, DataFormat.of(MediaType.parseMediaType(contentType)));
+    }
+
+    // номер в теле POST, а не в URL: полный PAN не попадает в access-логи и историю прокси
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/lookup")
+    @Transactional(readOnly = true)
+    public CardResponse lookup(@RequestBody @Valid CardLookupRequest req) {
+        return toDto(cardService.findByNumber(req.number()));
+    }
+
     @Transactional(readOnly = true)
     @GetMapping
     public Page<CardResponse> list(
-            @AuthenticationPrincipal UserDetails ud,
+            @AuthenticationPrincipal AuthUser ud,
             @RequestParam(name = "status", required = false) CardStatus status,
             @RequestParam(name = "last4", required = false) String last4,
+            @RequestParam(name = "owner", required = false) String owner,
+            @RequestParam(name = "expiryFrom", required = false) String expiryFrom,
+            @RequestParam(name = "expiryTo", required = false) String expiryTo,
+            @RequestParam(name = "minBalance", required = false) BigDecimal minBalance,
+            @RequestParam(name = "maxBalance", required = false) BigDecimal maxBalance,
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "10") int size
     ) {
         if (page < 0) throw new BadRequestException("page must be >= 0");
         if (size < 1) throw new BadRequestException("size must be >= 1");
 
-        boolean admin = isAdmin(ud);
-        Page<Card> src = admin
-                ? cardService.listAll(page, size) // при желании можно добавить фильтры и для админа
-                : cardService.listOwned(ud.getUsername(), status, last4, page, size);
+        CardSearch filter = new CardSearch(null, owner, last4, status, expiryFrom, expiryTo, minBalance, maxBalance);
+        // пользователь ищет только среди своих карт; owner доступен администратору
+        if (!isAdmin(ud)) filter = filter.restrictedTo(ud.getId());
+
+        return cardService.search(filter, page, size).map(this::toDto);
+    }
+    /**
+     * Keyset-режим списка: курсор after из поля next предыдущего ответа.
+     * В отличие от page/size, глубокие страницы не дорожают и не считается total.
+     */
+    @Transactional(readOnly = true)
+    @GetMapping("/scroll")
+    public CursorPage<CardResponse> scroll(
+            @AuthenticationPrincipal AuthUser ud,
+            @RequestParam(name = "status", required = false) CardStatus status,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "size", defaultValue = "10") int size
+    ) {
+        if (size < 1) throw new BadRequestException("size must be >= 1");
+        Long beforeId = CursorUtil.decode(after);
+        Slice<CardView> src = isAdmin(ud)
+                ? cardService.scrollAll(status, beforeId, size)
+                : cardService.scrollOwned(ud.getId(), status, beforeId, size);
 
-        return src.map(this::toDto);
+        List<CardView> rows = src.getContent();
+        String next = src.hasNext() ? CursorUtil.encode(rows.get(rows.size() - 1).id()) : null;
+        return new CursorPage<>(rows.stream().map(this::toDto).toList(), next);
     }
+
     @Transactional(readOnly = true)
     @GetMapping("/{id}")
-    public CardResponse get(@PathVariable Long id, @AuthenticationPrincipal UserDetails ud) {
-        boolean admin = isAdmin(ud);
-        Card c = admin
-                ? cardService.findByIdOr404(id)
-                : cardService.getOwned(id, ud.getUsername());
+    public CardResponse get(@PathVariable Long id, @AuthenticationPrincipal AuthUser ud) {
+        CardView c = isAdmin(ud)
+                ? cardService.getView(id)
+                : cardService.getOwned(id, ud.getId());
         return toDto(c);
     }
 
+    /**
+     * Выписка по своей карте за период (даты включительно): OPENING, DEBIT/CREDIT с остатком после строки, CLOSING.
+     * Пишется потоком, как выгрузки (ExportController), при Accept-Encoding: gzip — сжимается.
+     */
+    @GetMapping("/{id}/statement")
+    public void statement(@PathVariable Long id, @AuthenticationPrincipal AuthUser ud,
+                          @RequestParam(name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                          @RequestParam(name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                          @RequestParam(name = "format", defaultValue = "ndjson") String format,
+                          @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                          HttpServletResponse response) throws IOException {
+        DataFormat f = DataFormat.of(format);
+        if (from.isAfter(to)) throw new BadRequestException("from must be <= to");
+        // 400/404 — до заголовков выгрузки (Content-Encoding: gzip и т.п.); баланс выписка перечитает в своём снимке
+        cardService.getOwned(id, ud.getId());
+        OutputStream out = ExportController.open(response, "statement-" + id, f, acceptEncoding);
+        statementService.exportCardStatement(ud.getId(), id, from, to, out, f);
+        out.close();
+    }
+
+    /** Сверка карты с журналом: последний снимок + проводки после него против cards.balance. */
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/{id}/ledger")
+    public LedgerBalanceResponse ledger(@PathVariable Long id) {
+        return ledgerService.balance(id);
+    }
+
     @PatchMapping("/{id}/block")
-    @Transactional
-    public CardResponse block(@PathVariable Long id, @AuthenticationPrincipal UserDetails ud) {
-        // Пользователь может блокировать только свою карту; админ — любую.
-        if (!isAdmin(ud)) cardService.getOwned(id, ud.getUsername());
-        return toDto(cardService.block(id));
+    public CardResponse block(@PathVariable Long id, @AuthenticationPrincipal AuthUser ud) {
+        // Пользователь может блокировать только свою карту (владелец — условие UPDATE); админ — любую.
+        CardView c = isAdmin(ud)
+                ? cardService.block(id)
+                : cardService.changeOwnedStatus(id, ud.getId(), CardStatus.BLOCKED);
+        return toDto(c);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @PatchMapping("/{id}/activate")
-    @Transactional
     public CardResponse activate(@PathVariable Long id) {
         return toDto(cardService.activate(id));
     }
 
+    /** Массовая блокировка/разблокировка: по списку id или по всем картам владельца. */
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/status")
+    public CardStatusBulkResponse changeStatusBulk(@RequestBody @Valid CardStatusBulkRequest req) {
+        boolean byIds = req.ids() != null && !req.ids().isEmpty();
+        boolean byOwner = req.ownerUsername() != null && !req.ownerUsername().isBlank();
+        if (byIds == byOwner) throw new BadRequestException("exactly one of ids or ownerUsername is required");
+        int affected = byIds
+                ? cardService.changeStatusBulk(req.ids(), req.status())
+                : cardService.changeStatusByOwner(req.ownerUsername(), req.status());
+        return new CardStatusBulkResponse(affected);
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/{id}")
     public void delete(@PathVariable Long id) {
@@ -85,14 +204,25 @@ public class CardController {
         return new CardResponse(
                 c.getId(),
                 cardService.masked(c),
-                c.getExpiry(),
+                DateUtil.formatExpiry(c.getExpiryDate()),
                 cardService.effectiveStatus(c),
                 c.getBalance(),
                 c.getOwner().getUsername()
         );
     }
 
-    private boolean isAdmin(UserDetails ud) {
+    private CardResponse toDto(CardView v) {
+        return new CardResponse(
+                v.id(),
+                cardService.masked(v.last4()),
+                DateUtil.formatExpiry(v.expiryDate()),
+                cardService.effectiveStatus(v.expiryDate(), v.status()),
+                v.balance(),
+                v.ownerUsername()
+        );
+    }
+
+    private boolean isAdmin(AuthUser ud) {
         return ud.getAuthorities().stream().anyMatch(a -> {
             String v = a.getAuthority();
             return "ROLE_ADMIN".equals(v);
@@ -0,0 +1,82 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.service.ExportService;
+import com.example.bankcards.service.StatementService;
+import com.example.bankcards.util.DataFormat;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузки для ночной сверки: весь набор одним потоковым ответом вместо сотен страниц GET /api/cards.
+ * Ответ пишется прямо в поток сервлета (без async-таймаута StreamingResponseBody), при Accept-Encoding: gzip —
+ * сжимается на лету. Поток закрывается только после успешной выгрузки: при ошибке ответ обрывается,
+ * и клиент не примет усечённый файл за полный (gzip без трейлера, chunked без последнего чанка).
+ */
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+    private final ExportService exportService;
+    private final StatementService statementService;
+
+    public ExportController(ExportService exportService, StatementService statementService) {
+        this.exportService = exportService;
+        this.statementService = statementService;
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/cards")
+    public void cards(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                      HttpServletResponse response) throws IOException {
+        DataFormat f = DataFormat.of(format);
+        OutputStream out = open(response, "cards", f, acceptEncoding);
+        exportService.exportCards(out, f);
+        out.close();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/transfers")
+    public void transfers(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                          @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                          HttpServletResponse response) throws IOException {
+        DataFormat f = DataFormat.of(format);
+        OutputStream out = open(response, "transfers", f, acceptEncoding);
+        exportService.exportTransfers(out, f);
+        out.close();
+    }
+
+    /** Месячные выписки всех карт (month=yyyy-MM) одним потоком — для пакетной рассылки. */
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/statements")
+    public void statements(@RequestParam(name = "month") YearMonth month,
+                           @RequestParam(name = "format", defaultValue = "ndjson") String format,
+                           @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                           HttpServletResponse response) throws IOException {
+        DataFormat f = DataFormat.of(format);
+        OutputStream out = open(response, "statements-" + month, f, acceptEncoding);
+        statementService.exportMonthlyStatements(month, out, f);
+        out.close();
+    }
+
+    // заголовки — до первой записи: после неё ответ уже отправлен клиенту
+    static OutputStream open(HttpServletResponse response, String name, DataFormat format, String acceptEncoding)
+            throws IOException {
+        response.setContentType(format.mediaType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + name + "-" + LocalDate.now() + "." + format.extension() + "\"");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new GZIPOutputStream(response.getOutputStream(), 64 * 1024);
+        }
+        return response.getOutputStream();
+    }
+}
@@ -1,24 +1,89 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.page.CursorPage;
+import com.example.bankcards.dto.transfer.TransferBatchRequest;
+import com.example.bankcards.dto.transfer.TransferBatchResponse;
 import com.example.bankcards.dto.transfer.TransferRequest;
+import com.example.bankcards.dto.transfer.TransferSubmissionResponse;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.TransferHistoryService;
 import com.example.bankcards.service.TransferService;
+import com.example.bankcards.util.CursorUtil;
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/transfers")
 public class TransferController {
     private final TransferService transferService;
+    private final AsyncTransferService asyncTransferService;
+    private final TransferHistoryService historyService;
 
-    public TransferController(TransferService transferService) { this.transferService = transferService; }
+    public TransferController(TransferService transferService, AsyncTransferService asyncTransferService,
+                              TransferHistoryService historyService) {
+        this.transferService = transferService;
+        this.asyncTransferService = asyncTransferService;
+        this.historyService = historyService;
+    }
 
+    /**
+     * История своих переводов, новые сверху; cardId — только по одной карте, from/to — даты включительно (ISO).
+     * Курсор after — из поля next предыдущего ответа.
+     */
+    @GetMapping
+    public CursorPage<TransferView> history(
+            @AuthenticationPrincipal AuthUser ud,
+            @RequestParam(name = "cardId", required = false) Long cardId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "size", defaultValue = "10") int size
+    ) {
+        Slice<TransferView> src = historyService.scroll(ud.getId(), cardId, from, to,
+                CursorUtil.decodeTimeKey(after), size);
+        List<TransferView> rows = src.getContent();
+        TransferView last = src.hasNext() ? rows.get(rows.size() - 1) : null;
+        return new CursorPage<>(rows, last != null ? CursorUtil.encode(last.createdAt(), last.id()) : null);
+    }
+
+    // Idempotency-Key: повтор запроса (например, после таймаута у клиента) возвращает тот же перевод, а не новый
     @PostMapping
-    public ResponseEntity<Long> transfer(@AuthenticationPrincipal UserDetails ud,
-                                         @RequestBody @Valid TransferRequest req) {
-        Long id = transferService.transfer(ud.getUsername(), req.fromCardId(), req.toCardId(), req.amount());
+    public ResponseEntity<Long> transfer(@AuthenticationPrincipal AuthUser ud,
+                                         @RequestBody @Valid TransferRequest req,
+                                         @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        Long id = transferService.transfer(ud.getId(), req.fromCardId(), req.toCardId(), req.amount(), idempotencyKey);
         return ResponseEntity.ok(id);
     }
+
+    // пакет переводов между своими картами одной транзакцией (например, распределение зарплаты по правилам)
+    @PostMapping("/batch")
+    public TransferBatchResponse transferBatch(@AuthenticationPrincipal AuthUser ud,
+                                               @RequestBody TransferBatchRequest req) {
+        return transferService.transferBatch(ud.getId(), req.items(), req.mode());
+    }
+
+    // асинхронный перевод: 202 сразу после приёма заявки, статус — по Location
+    @PostMapping("/async")
+    public ResponseEntity<TransferSubmissionResponse> submit(@AuthenticationPrincipal AuthUser ud,
+                                                             @RequestBody @Valid TransferRequest req,
+                                                             @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        TransferSubmissionResponse s = asyncTransferService.submit(ud.getId(), req.fromCardId(), req.toCardId(),
+                req.amount(), idempotencyKey);
+        return ResponseEntity.accepted().location(URI.create("/api/transfers/submissions/" + s.id())).body(s);
+    }
+
+    @GetMapping("/submissions/{id}")
+    public TransferSubmissionResponse submission(@AuthenticationPrincipal AuthUser ud, @PathVariable Long id) {
+        return asyncTransferService.status(ud.getId(), id);
+    }
 }
@@ -0,0 +1,46 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.user.PasswordChangeRequest;
+import com.example.bankcards.dto.user.RolesChangeRequest;
+import com.example.bankcards.security.PasswordHashingExecutor;
+import com.example.bankcards.service.UserService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Управление пользователями (ADMIN): смена пароля и ролей.
+ * Обе операции отзывают токены пользователя и сбрасывают его кэшированные UserDetails после коммита.
+ */
+@RestController
+@RequestMapping("/api/users")
+public class UserController {
+    private final UserService userService;
+    // BCrypt нового пароля — в пуле хэширования, как при регистрации
+    private final PasswordHashingExecutor hashing;
+
+    public UserController(UserService userService, PasswordHashingExecutor hashing) {
+        this.userService = userService;
+        this.hashing = hashing;
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping(value = "/{id}/password", consumes = "application/json")
+    public CompletableFuture<ResponseEntity<Void>> changePassword(@PathVariable Long id,
+                                                                  @RequestBody @Valid PasswordChangeRequest req) {
+        return hashing.submit("password", () -> {
+            userService.changePassword(id, req.password());
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping(value = "/{id}/roles", consumes = "application/json")
+    public ResponseEntity<Void> changeRoles(@PathVariable Long id, @RequestBody @Valid RolesChangeRequest req) {
+        userService.changeRoles(id, req.roles());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.bankcards.dto.card;
+
+/** Ошибка строки импорта: line — номер строки во входном файле (с 1). */
+public record CardImportError(long line, String error) { }
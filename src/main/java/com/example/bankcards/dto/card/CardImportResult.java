@@ -0,0 +1,10 @@
+package com.example.bankcards.dto.card;
+
+import java.util.List;
+
+/**
+ * Итог импорта карт. errors — первые ошибки по строкам (не больше app.cards.import.max-errors),
+ * errorsTruncated = true, если ошибок было больше; failed — их полное число.
+ */
+public record CardImportResult(long total, long created, long failed, List<CardImportError> errors,
+                               boolean errorsTruncated) { }
@@ -0,0 +1,6 @@
+package com.example.bankcards.dto.card;
+
+import java.math.BigDecimal;
+
+/** Строка импорта (NDJSON-объект или CSV-строка number,expiry,ownerUsername,initialBalance). */
+public record CardImportRow(String number, String expiry, String ownerUsername, BigDecimal initialBalance) { }
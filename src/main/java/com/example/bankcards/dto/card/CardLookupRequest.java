@@ -0,0 +1,7 @@
+package com.example.bankcards.dto.card;
+
+import jakarta.validation.constraints.Pattern;
+
+public record CardLookupRequest(
+        @Pattern(regexp = "\\d{16}", message = "card number must be 16 digits") String number
+) { }
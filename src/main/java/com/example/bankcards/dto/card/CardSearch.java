@@ -0,0 +1,30 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.entity.CardStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Фильтры поиска карт; null — фильтр не задан.
+ * last4: 4 цифры — точное совпадение, 1–3 — префикс (оба варианта идут по индексу, в отличие от LIKE '%x%').
+ * expiryFrom/expiryTo — "MM/yy", границы включительно.
+ */
+public record CardSearch(
+        Long ownerId,
+        String ownerUsername,
+        String last4,
+        CardStatus status,
+        String expiryFrom,
+        String expiryTo,
+        BigDecimal minBalance,
+        BigDecimal maxBalance) {
+
+    public static CardSearch ofOwner(Long ownerId, CardStatus status, String last4) {
+        return new CardSearch(ownerId, null, last4, status, null, null, null, null);
+    }
+
+    /** Тот же поиск, но только по картам пользователя ownerId (фильтр владельца от клиента игнорируется). */
+    public CardSearch restrictedTo(Long ownerId) {
+        return new CardSearch(ownerId, null, last4, status, expiryFrom, expiryTo, minBalance, maxBalance);
+    }
+}
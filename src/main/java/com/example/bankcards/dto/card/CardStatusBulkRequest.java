@@ -0,0 +1,13 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.entity.CardStatus;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+/** Задаётся ровно одно: ids или ownerUsername. */
+public record CardStatusBulkRequest(
+        List<Long> ids,
+        String ownerUsername,
+        @NotNull CardStatus status
+) { }
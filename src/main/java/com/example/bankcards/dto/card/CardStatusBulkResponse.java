@@ -0,0 +1,4 @@
+package com.example.bankcards.dto.card;
+
+/** affected — число карт, у которых статус действительно изменился. */
+public record CardStatusBulkResponse(int affected) { }
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.entity.CardStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Строка списка карт, выбранная JPQL-конструктором: ровно колонки для CardResponse.
+ * status — сохранённый статус; эффективный (с учётом срока) считает CardService.effectiveStatus.
+ */
+public record CardView(
+        Long id,
+        String last4,
+        LocalDate expiryDate,
+        CardStatus status,
+        BigDecimal balance,
+        String ownerUsername) { }
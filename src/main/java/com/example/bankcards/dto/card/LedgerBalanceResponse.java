@@ -0,0 +1,16 @@
+package com.example.bankcards.dto.card;
+
+import java.math.BigDecimal;
+
+/**
+ * Баланс карты по журналу: последний снимок + проводки после него, и сверка с рабочим cards.balance.
+ * consistent = false — расхождение журнала и баланса (повод для разбора, а не автоматической правки).
+ */
+public record LedgerBalanceResponse(
+        Long cardId,
+        long snapshotSeq,
+        BigDecimal snapshotBalance,
+        long postingsAfterSnapshot,
+        BigDecimal ledgerBalance,
+        BigDecimal cardBalance,
+        boolean consistent) { }
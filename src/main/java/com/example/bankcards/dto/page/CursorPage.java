@@ -0,0 +1,9 @@
+package com.example.bankcards.dto.page;
+
+import java.util.List;
+
+/**
+ * Страница keyset-пагинации: без total и номера страницы (их цена — COUNT(*) и OFFSET).
+ * next — непрозрачный курсор следующей страницы, null если это последняя.
+ */
+public record CursorPage<T>(List<T> items, String next) { }
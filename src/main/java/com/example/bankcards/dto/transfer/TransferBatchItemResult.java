@@ -0,0 +1,4 @@
+package com.example.bankcards.dto.transfer;
+
+/** Результат элемента пакета по его индексу в запросе: transferId или error. */
+public record TransferBatchItemResult(int index, Long transferId, String error) { }
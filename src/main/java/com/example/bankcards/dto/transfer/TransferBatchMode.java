@@ -0,0 +1,4 @@
+package com.example.bankcards.dto.transfer;
+
+/** ALL_OR_NOTHING — первая ошибка отменяет весь пакет; PER_ITEM — ошибочные переводы пропускаются. */
+public enum TransferBatchMode { ALL_OR_NOTHING, PER_ITEM }
@@ -0,0 +1,9 @@
+package com.example.bankcards.dto.transfer;
+
+import java.util.List;
+
+/** Пакет переводов между своими картами; mode по умолчанию ALL_OR_NOTHING. Элементы проверяет сервис. */
+public record TransferBatchRequest(
+        List<TransferRequest> items,
+        TransferBatchMode mode
+) { }
@@ -0,0 +1,5 @@
+package com.example.bankcards.dto.transfer;
+
+import java.util.List;
+
+public record TransferBatchResponse(int succeeded, int failed, List<TransferBatchItemResult> items) { }
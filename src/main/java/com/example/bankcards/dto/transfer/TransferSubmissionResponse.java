@@ -0,0 +1,15 @@
+package com.example.bankcards.dto.transfer;
+
+import com.example.bankcards.entity.TransferSubmissionStatus;
+
+import java.time.LocalDateTime;
+
+/** Состояние асинхронного перевода: transferId — когда COMPLETED, reason — когда REJECTED. */
+public record TransferSubmissionResponse(
+        Long id,
+        TransferSubmissionStatus status,
+        Long transferId,
+        String reason,
+        LocalDateTime createdAt,
+        LocalDateTime completedAt
+) { }
@@ -0,0 +1,13 @@
+package com.example.bankcards.dto.transfer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/** Строка перевода для выгрузки: только колонки transfers (id карт и пользователя — сами FK, без join). */
+public record TransferView(
+        Long id,
+        Long fromCardId,
+        Long toCardId,
+        Long userId,
+        BigDecimal amount,
+        LocalDateTime createdAt) { }
@@ -0,0 +1,6 @@
+package com.example.bankcards.dto.user;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+public record PasswordChangeRequest(@NotBlank @Size(min = 6, max = 100) String password) { }
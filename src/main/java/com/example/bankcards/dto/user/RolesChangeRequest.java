@@ -0,0 +1,9 @@
+package com.example.bankcards.dto.user;
+
+import com.example.bankcards.entity.Role;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.Set;
+
+/** Новый набор ролей целиком (замена, а не добавление). */
+public record RolesChangeRequest(@NotEmpty Set<Role> roles) { }
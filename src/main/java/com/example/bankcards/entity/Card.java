@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -14,26 +15,40 @@ import java.time.LocalDateTime;
 @Builder
 @Table(name = "cards")
 public class Card {
+    // pooled-последовательность (таблица cards_seq, см. 011-id-sequences): id выдаются блоками из памяти,
+    // поэтому INSERT не выполняется немедленно и попадает в JDBC batch (с IDENTITY batching невозможен)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cards_seq")
+    @SequenceGenerator(name = "cards_seq", sequenceName = "cards_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
     /**
-     * Номер карты хранится шифрованным как Base64: "iv:cipher" (AES-GCM)
+     * Номер карты хранится шифрованным (AES-GCM), бинарно: [версия][id ключа][iv][cipher+tag] — см. CryptoUtil.
      * Почему: минимизируем риск утечки чувствительных данных из БД.
+     * updatable = false у колонок номера: UPDATE сущности (баланс, статус) не перезаписывает шифртекст,
+     * который параллельно перешифровала ротация ключей; их меняют только точечные запросы CardRepository.
      */
+    @Column(name = "enc_pan", length = 64, updatable = false)
+    private byte[] encPan;
 
-    @Column(name = "enc_number", nullable = false, length = 512)
+    /** Устаревший формат Base64 "iv:cipher": только для чтения карт, выпущенных до enc_pan. */
+    @Column(name = "enc_number", length = 512, updatable = false)
     private String encNumber;
+
+    /** Blind index: HMAC-SHA256 номера (уникальный индекс) — поиск по полному номеру и защита от дублей. */
+    @Column(name = "pan_hmac", columnDefinition = "BINARY(32)", updatable = false)
+    private byte[] panHmac;
+
     @Column(name = "last4", columnDefinition = "CHAR(4)", nullable = false, length = 4)
     private String last4;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id")
     private User owner;
-    @Column(name = "expiry", columnDefinition = "CHAR(5)", nullable = false)
-    private String expiry;
+    /** Последний день месяца срока ("12/29" -> 2029-12-31); в API форматируется обратно в "MM/yy". */
+    @Column(name = "expiry_date", nullable = false)
+    private LocalDate expiryDate;
 
     @Column(nullable = false, length = 10)
     @Enumerated(EnumType.STRING)
@@ -41,6 +56,10 @@ public class Card {
     @Column(nullable = false, precision = 19, scale = 2)
     private BigDecimal balance;
 
+    /** Номер последней проводки карты (postings.seq): растёт в тех же UPDATE, что и баланс, см. LedgerService. */
+    @Column(name = "posting_seq", nullable = false)
+    private long postingSeq;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
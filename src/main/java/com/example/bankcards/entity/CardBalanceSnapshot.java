@@ -0,0 +1,41 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/** Баланс карты после проводки seq (seq 0 — при выпуске); баланс по журналу = снимок + проводки после него. */
+@Entity
+@Immutable
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(CardBalanceSnapshot.Pk.class)
+@Table(name = "card_balance_snapshots")
+public class CardBalanceSnapshot {
+    @Id
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Id
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal balance;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pk implements Serializable {
+        private Long cardId;
+        private Long seq;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/** Прогресс перешифровки карт под ключ targetKeyId (см. CardKeyRotationJob). */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "key_rotation_checkpoints")
+public class KeyRotationCheckpoint {
+    @Id
+    @Column(name = "target_key_id", nullable = false)
+    private Integer targetKeyId;
+
+    /** Все карты с id <= lastCardId уже обработаны. */
+    @Column(name = "last_card_id", nullable = false)
+    private Long lastCardId;
+
+    @Column(nullable = false)
+    private Long rotated;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime finishedAt;
+}
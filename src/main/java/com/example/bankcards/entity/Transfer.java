@@ -14,8 +14,10 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Table(name = "transfers")
 public class Transfer {
+    // pooled-последовательность transfers_seq, как у Card: вставки батчатся
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfers_seq")
+    @SequenceGenerator(name = "transfers_seq", sequenceName = "transfers_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -0,0 +1,39 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/** Idempotency-Key запроса перевода -> созданный перевод (см. TransferService, TransferIdempotencySweeper). */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(TransferIdempotencyKey.Pk.class)
+@Table(name = "transfer_idempotency_keys")
+public class TransferIdempotencyKey {
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Id
+    @Column(name = "idem_key", nullable = false, length = 64)
+    private String idemKey;
+
+    @Column(name = "transfer_id", nullable = false)
+    private Long transferId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pk implements Serializable {
+        private Long userId;
+        private String idemKey;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/** Принятый асинхронный перевод (см. AsyncTransferService); id пользователя и карт — без связей, join не нужен. */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "transfer_submissions")
+public class TransferSubmission {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_submissions_seq")
+    @SequenceGenerator(name = "transfer_submissions_seq", sequenceName = "transfer_submissions_seq", allocationSize = 50)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "from_card_id", nullable = false)
+    private Long fromCardId;
+
+    @Column(name = "to_card_id", nullable = false)
+    private Long toCardId;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private TransferSubmissionStatus status;
+
+    /** Причина REJECTED — то же сообщение, что вернул бы синхронный перевод. */
+    private String reason;
+
+    /** Созданный перевод, когда COMPLETED. */
+    @Column(name = "transfer_id")
+    private Long transferId;
+
+    @Column(name = "idem_key", length = 64)
+    private String idemKey;
+
+    /** Неудачные попытки выполнения (сбой, а не бизнес-отказ); см. AsyncTransferService. */
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+}
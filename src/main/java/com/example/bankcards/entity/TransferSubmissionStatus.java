@@ -0,0 +1,3 @@
+package com.example.bankcards.entity;
+
+public enum TransferSubmissionStatus { PENDING, COMPLETED, REJECTED }
@@ -13,8 +13,10 @@ import java.util.Set;
 @Entity
 @Table(name = "users")
 public class User {
+    // pooled-последовательность users_seq, как у Card: вставки батчатся
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -31,4 +33,9 @@ public class User {
     @Builder.Default
     private Set<Role> roles = new HashSet<>();
 
+    /** Поколение токенов: увеличение делает все ранее выданные JWT недействительными. */
+    @Column(name = "token_epoch", nullable = false)
+    @Builder.Default
+    private int tokenEpoch = 0;
+
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.example.bankcards.exception;
 import com.example.bankcards.dto.error.ApiError;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -43,6 +44,14 @@ public class GlobalExceptionHandler {
                 .body(new ApiError(ex.getMessage(), req.getRequestURI(), OffsetDateTime.now()));
     }
 
+    // 503 — перегрузка (очередь пула переполнена); Retry-After подсказывает клиенту паузу
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ApiError> handleUnavailable(ServiceUnavailableException ex, HttpServletRequest req) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ApiError(ex.getMessage(), req.getRequestURI(), OffsetDateTime.now()));
+    }
+
     // 400 (@Valid)
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ApiError> handleValidation(MethodArgumentNotValidException ex, HttpServletRequest req) {
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception;
+
+//	Бросаем, когда ограниченный ресурс (пул хэширования паролей и т.п.) переполнен — клиенту стоит повторить позже.
+public class ServiceUnavailableException extends RuntimeException{
+    public ServiceUnavailableException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.repository;
+
+import java.math.BigDecimal;
+
+/** Сумма движений по одной карте — результат GROUP BY по карте (входящие остатки выписок). */
+public record CardAmountRow(Long cardId, BigDecimal amount) { }
@@ -0,0 +1,35 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+public interface CardBalanceSnapshotRepository extends JpaRepository<CardBalanceSnapshot, CardBalanceSnapshot.Pk> {
+
+    // последний снимок карты: одна строка с конца диапазона PK (card_id, seq)
+    Optional<CardBalanceSnapshot> findFirstByCardIdOrderBySeqDesc(Long cardId);
+
+    // снимок тех карт, у которых номер проводки кратен every; обычно не вставляет ничего.
+    // Баланс и posting_seq читаются из строк, заблокированных переводом, — снимок ровно после проводки seq
+    @Modifying
+    @Query(value = """
+            insert into card_balance_snapshots (card_id, seq, balance, created_at)
+            select c.id, c.posting_seq, c.balance, :createdAt
+            from cards c where c.id in (:cardIds) and mod(c.posting_seq, :every) = 0""", nativeQuery = true)
+    int checkpoint(@Param("cardIds") Collection<Long> cardIds, @Param("every") int every,
+                   @Param("createdAt") LocalDateTime createdAt);
+
+    // снимок seq 0 при выпуске карты; прямой INSERT: save() с заданным id сначала сделал бы SELECT (merge)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into card_balance_snapshots (card_id, seq, balance, created_at)"
+            + " values (:cardId, 0, :balance, :createdAt)", nativeQuery = true)
+    int insertOpening(@Param("cardId") Long cardId, @Param("balance") BigDecimal balance,
+                      @Param("createdAt") LocalDateTime createdAt);
+}
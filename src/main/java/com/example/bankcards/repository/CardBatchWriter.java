@@ -0,0 +1,44 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Пакетная вставка карт.
+ * id берутся из pooled-последовательности cards_seq (без обращения к БД на каждую строку), поэтому Hibernate
+ * копит INSERT в JDBC batch по hibernate.jdbc.batch_size; с rewriteBatchedStatements=true драйвер MySQL
+ * шлёт batch одним multi-row INSERT. Тот же источник id, что у CardService.create, — без конфликтов.
+ */
+@Repository
+public class CardBatchWriter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /** Вставка порции; транзакцией управляет вызывающий. Контекст очищается — память не растёт от порции к порции. */
+    public void insert(List<CardInsertRow> rows) {
+        for (CardInsertRow r : rows) {
+            Card c = new Card();
+            c.setEncPan(r.encPan());
+            c.setPanHmac(r.panHmac());
+            c.setLast4(r.last4());
+            // владелец по ссылке: только owner_id в INSERT, без SELECT users
+            c.setOwner(em.getReference(User.class, r.ownerId()));
+            c.setExpiryDate(r.expiryDate());
+            c.setStatus(r.status());
+            c.setBalance(r.balance());
+            c.setCreatedAt(r.createdAt());
+            em.persist(c);
+            // начальный снимок журнала (seq 0); id карты уже назначен persist-ом
+            em.persist(new CardBalanceSnapshot(c.getId(), 0L, r.balance(), r.createdAt()));
+        }
+        em.flush();
+        em.clear();
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.bankcards.repository;
+
+/** Шифртекст номера карты без остальных полей — для фоновых проходов по таблице cards. */
+public record CardCipherRow(Long id, byte[] encPan, String encNumber) { }
@@ -0,0 +1,11 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/** Готовая к вставке строка cards: номер уже зашифрован, владелец разрешён в id. */
+public record CardInsertRow(byte[] encPan, byte[] panHmac, String last4, Long ownerId, LocalDate expiryDate,
+                            CardStatus status, BigDecimal balance, LocalDateTime createdAt) { }
@@ -1,33 +1,194 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.card.CardView;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
-import com.example.bankcards.entity.User;
-import org.springframework.data.domain.Page;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface CardRepository extends JpaRepository<Card, Long> {
+public interface CardRepository extends JpaRepository<Card, Long>, CardRepositoryCustom {
 
-    // ВАЖНО: везде подгружаем owner, чтобы не было LazyInitializationException
-    @EntityGraph(attributePaths = "owner")
-    Page<Card> findAll(Pageable pageable);
+    // строки для CardResponse: только нужные колонки, без сущностей User/ролей и без отслеживания в контексте;
+    // users присоединяется по PK ради одного username
+    String VIEW = "select new com.example.bankcards.dto.card.CardView(c.id, c.last4, c.expiryDate, c.status, c.balance, o.username)"
+            + " from Card c join c.owner o ";
 
+    // owner подгружаем для изменения карты (block/activate), чтобы не было LazyInitializationException
     @EntityGraph(attributePaths = "owner")
     Optional<Card> findById(Long id);
 
-    @EntityGraph(attributePaths = "owner")
-    Page<Card> findByOwner(User owner, Pageable pageable);
+    @Query(VIEW + "where c.id = :id")
+    Optional<CardView> findViewById(@Param("id") Long id);
 
-    @EntityGraph(attributePaths = "owner")
-    Page<Card> findByOwnerAndStatus(User owner, CardStatus status, Pageable pageable);
+    @Query(VIEW + "where c.id = :id and c.owner.id = :ownerId")
+    Optional<CardView> findOwnedView(@Param("id") Long id, @Param("ownerId") Long ownerId);
 
-    @EntityGraph(attributePaths = "owner")
-    Page<Card> findByOwnerAndLast4Containing(User owner, String last4, Pageable pageable);
+    // смена статуса одним UPDATE, без чтения сущности; у пользователя владелец — условие того же запроса.
+    // EXPIRED конечен: истёкшую карту не перезаписываем (иначе фильтр status=EXPIRED потеряет её до прохода job).
+    // @Transactional на методе: вне транзакции сервиса каждый вызов (порция bulk) коммитится сам
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = :status where c.id = :id"
+            + " and c.status <> com.example.bankcards.entity.CardStatus.EXPIRED")
+    int updateStatus(@Param("id") Long id, @Param("status") CardStatus status);
 
-    @EntityGraph(attributePaths = "owner")
-    Optional<Card> findByIdAndOwnerId(Long id, Long ownerId);
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = :status where c.id = :id and c.owner.id = :ownerId"
+            + " and c.status <> com.example.bankcards.entity.CardStatus.EXPIRED")
+    int updateStatusOwned(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("status") CardStatus status);
+
+    // bulk: строки, уже имеющие нужный статус, не трогаем — меньше блокировок и честное число изменённых
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = :status where c.id in :ids and c.status <> :status"
+            + " and c.status <> com.example.bankcards.entity.CardStatus.EXPIRED")
+    int updateStatusIn(@Param("ids") Collection<Long> ids, @Param("status") CardStatus status);
+
+    // по владельцу порциями: UPDATE ... LIMIT (MySQL) — каждая порция короткая транзакция
+    @Transactional
+    @Modifying
+    @Query(value = "update cards set status = :status where owner_id = :ownerId and status <> :status"
+            + " and status <> 'EXPIRED' limit :limit", nativeQuery = true)
+    int updateStatusByOwnerChunk(@Param("ownerId") Long ownerId, @Param("status") String status,
+                                 @Param("limit") int limit);
+
+    // активация — те же три формы, но просроченную карту (EXPIRED или срок уже прошёл, а job ещё не дошёл)
+    // условие запроса не трогает: разблокировка не должна возвращать в оборот истёкшую карту
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = com.example.bankcards.entity.CardStatus.ACTIVE where c.id = :id"
+            + " and c.status <> com.example.bankcards.entity.CardStatus.EXPIRED and c.expiryDate >= :today")
+    int activate(@Param("id") Long id, @Param("today") LocalDate today);
+
+    @Transactional
+    @Modifying
+    @Query("update Card c set c.status = com.example.bankcards.entity.CardStatus.ACTIVE where c.id in :ids"
+            + " and c.status = com.example.bankcards.entity.CardStatus.BLOCKED and c.expiryDate >= :today")
+    int activateIn(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update cards set status = 'ACTIVE' where owner_id = :ownerId and status = 'BLOCKED'"
+            + " and expiry_date >= :today limit :limit", nativeQuery = true)
+    int activateByOwnerChunk(@Param("ownerId") Long ownerId, @Param("today") LocalDate today,
+                             @Param("limit") int limit);
+
+    // истечение срока порциями: диапазон по ix_cards_status_expiry, уже EXPIRED не читаются вовсе
+    @Transactional
+    @Modifying
+    @Query(value = "update cards set status = 'EXPIRED' where status in ('ACTIVE', 'BLOCKED')"
+            + " and expiry_date < :today limit :limit", nativeQuery = true)
+    int expireDueChunk(@Param("today") LocalDate today, @Param("limit") int limit);
+
+    // выгрузка всей таблицы: forward-only курсор порциями по fetch size (useCursorFetch в URL), без OFFSET;
+    // проекция не попадает в persistence context — память постоянна
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(VIEW + "order by c.id")
+    Stream<CardView> streamViews();
+
+    // keyset-пагинация по убыванию id: id < курсора, без OFFSET и COUNT. Порядок стабилен, но это порядок id,
+    // а не строго порядок создания: pooled-последовательность раздаёт узлам блоки id (011-id-sequences).
+    // Индексы уже подходят: вторичный индекс InnoDB содержит PK, т.е. ix_cards_owner = (owner_id, id),
+    // ix_cards_owner_status = (owner_id, status, id), ix_cards_status = (status, id); для админа — сам PK.
+    @Query(VIEW + "where c.id < :beforeId order by c.id desc")
+    List<CardView> scrollViews(@Param("beforeId") Long beforeId, Pageable pageable);
+
+    @Query(VIEW + "where c.status = :status and c.id < :beforeId order by c.id desc")
+    List<CardView> scrollViewsByStatus(@Param("status") CardStatus status, @Param("beforeId") Long beforeId,
+                                       Pageable pageable);
+
+    @Query(VIEW + "where c.owner.id = :ownerId and c.id < :beforeId order by c.id desc")
+    List<CardView> scrollViewsByOwner(@Param("ownerId") Long ownerId, @Param("beforeId") Long beforeId,
+                                      Pageable pageable);
+
+    @Query(VIEW + "where c.owner.id = :ownerId and c.status = :status and c.id < :beforeId order by c.id desc")
+    List<CardView> scrollViewsByOwnerAndStatus(@Param("ownerId") Long ownerId, @Param("status") CardStatus status,
+                                               @Param("beforeId") Long beforeId, Pageable pageable);
+
+    // поиск по полному номеру — точное совпадение по уникальному индексу pan_hmac
+    @Query(VIEW + "where c.panHmac = :panHmac")
+    Optional<CardView> findViewByPanHmac(@Param("panHmac") byte[] panHmac);
+
+    // какие из номеров порции импорта уже есть: один IN по уникальному индексу pan_hmac
+    @Query("select c.panHmac from Card c where c.panHmac in :hmacs")
+    List<byte[]> findExistingPanHmacs(@Param("hmacs") Collection<byte[]> hmacs);
+
+    boolean existsByPanHmac(byte[] panHmac);
+
+    // бэкфилл blind index: keyset по id, только шифртексты — без owner и сущностей в контексте
+    @Query("""
+            select new com.example.bankcards.repository.CardCipherRow(c.id, c.encPan, c.encNumber)
+            from Card c where c.panHmac is null and c.id > :afterId order by c.id""")
+    List<CardCipherRow> findWithoutPanHmac(@Param("afterId") Long afterId, Pageable pageable);
+
+    // точечный UPDATE одной колонки: не перезаписывает баланс/статус, изменённые параллельно
+    @Modifying
+    @Query("update Card c set c.panHmac = :panHmac where c.id = :id and c.panHmac is null")
+    int setPanHmac(@Param("id") Long id, @Param("panHmac") byte[] panHmac);
+
+    // ротация ключей: все шифртексты по порядку id, keyset от чекпоинта
+    @Query("""
+            select new com.example.bankcards.repository.CardCipherRow(c.id, c.encPan, c.encNumber)
+            from Card c where c.id > :afterId order by c.id""")
+    List<CardCipherRow> findCipherRows(@Param("afterId") Long afterId, Pageable pageable);
+
+    // compare-and-set: пишем новый шифртекст, только если строка не изменилась с момента чтения
+    @Modifying
+    @Query("update Card c set c.encPan = :newPan where c.id = :id and c.encPan = :oldPan")
+    int replaceEncPan(@Param("id") Long id, @Param("oldPan") byte[] oldPan, @Param("newPan") byte[] newPan);
+
+    // старый текстовый формат переводим в enc_pan тем же compare-and-set
+    @Modifying
+    @Query("""
+            update Card c set c.encPan = :newPan, c.encNumber = null
+            where c.id = :id and c.encPan is null and c.encNumber = :oldNumber""")
+    int replaceLegacyNumber(@Param("id") Long id, @Param("oldNumber") String oldNumber, @Param("newPan") byte[] newPan);
+
+    // перевод: списание и зачисление — по одному условному UPDATE без чтения сущности.
+    // Все проверки (владелец, ACTIVE, срок, достаточность средств) — в WHERE: блокировка строки берётся
+    // самим UPDATE и держится только до коммита, а 0 изменённых строк означает отказ.
+    // Ожидание блокировки ограничено innodb_lock_wait_timeout (connection-init-sql).
+    // posting_seq растёт здесь же: номер проводки карты выдаётся под той же блокировкой строки (см. LedgerService)
+    @Modifying
+    @Query("""
+            update Card c set c.balance = c.balance - :amount, c.postingSeq = c.postingSeq + 1
+            where c.id = :id and c.owner.id = :ownerId
+              and c.status = com.example.bankcards.entity.CardStatus.ACTIVE and c.expiryDate >= :today
+              and c.balance >= :amount""")
+    int debit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") BigDecimal amount,
+              @Param("today") LocalDate today);
+
+    @Modifying
+    @Query("""
+            update Card c set c.balance = c.balance + :amount, c.postingSeq = c.postingSeq + 1
+            where c.id = :id and c.owner.id = :ownerId
+              and c.status = com.example.bankcards.entity.CardStatus.ACTIVE and c.expiryDate >= :today""")
+    int credit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") BigDecimal amount,
+               @Param("today") LocalDate today);
+
+    // пакет переводов: все карты пакета одним SELECT ... FOR UPDATE. InnoDB блокирует строки в порядке PK,
+    // т.е. по возрастанию id — тот же порядок, что у одиночных переводов, взаимоблокировок между ними нет
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids and c.owner.id = :ownerId order by c.id")
+    List<Card> findOwnedForUpdate(@Param("ids") Collection<Long> ids, @Param("ownerId") Long ownerId);
 }
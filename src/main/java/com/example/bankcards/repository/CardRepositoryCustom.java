@@ -0,0 +1,11 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardView;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/** Поиск карт с набором фильтров, собираемым динамически (Criteria API). */
+public interface CardRepositoryCustom {
+    Page<CardView> search(CardSearch filter, Pageable pageable);
+}
@@ -0,0 +1,72 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.util.DateUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реализация CardRepositoryCustom: в WHERE попадают только заданные фильтры, и каждый — в форме,
+ * которую может использовать индекс (равенство, префикс, диапазон). Сортировка по id — стабильная пагинация.
+ */
+class CardRepositoryImpl implements CardRepositoryCustom {
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public Page<CardView> search(CardSearch f, Pageable pageable) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+
+        CriteriaQuery<CardView> q = cb.createQuery(CardView.class);
+        Root<Card> c = q.from(Card.class);
+        Join<Card, User> o = c.join("owner");
+        q.select(cb.construct(CardView.class,
+                        c.get("id"), c.get("last4"), c.get("expiryDate"), c.get("status"), c.get("balance"), o.get("username")))
+                .where(predicates(cb, c, o, f))
+                .orderBy(cb.desc(c.get("id")));
+        List<CardView> rows = em.createQuery(q)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        // COUNT только когда он нужен для total (не на короткой первой странице); join users — только ради фильтра по имени
+        return PageableExecutionUtils.getPage(rows, pageable, () -> {
+            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+            Root<Card> cc = cq.from(Card.class);
+            Join<Card, User> co = f.ownerUsername() != null ? cc.join("owner") : null;
+            cq.select(cb.count(cc)).where(predicates(cb, cc, co, f));
+            return em.createQuery(cq).getSingleResult();
+        });
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Card> c, Join<Card, User> o, CardSearch f) {
+        List<Predicate> p = new ArrayList<>();
+        // owner.id — это сама колонка cards.owner_id, join не нужен
+        if (f.ownerId() != null) p.add(cb.equal(c.get("owner").get("id"), f.ownerId()));
+        if (f.ownerUsername() != null) p.add(cb.equal(o.get("username"), f.ownerUsername()));
+        if (f.status() != null) p.add(cb.equal(c.get("status"), f.status()));
+        if (f.last4() != null) {
+            p.add(f.last4().length() == 4
+                    ? cb.equal(c.get("last4"), f.last4())
+                    : cb.like(c.get("last4"), f.last4() + "%"));
+        }
+        // границы "MM/yy" -> последний день месяца: обычный диапазон по expiry_date
+        if (f.expiryFrom() != null)
+            p.add(cb.greaterThanOrEqualTo(c.get("expiryDate"), DateUtil.parseExpiry(f.expiryFrom())));
+        if (f.expiryTo() != null)
+            p.add(cb.lessThanOrEqualTo(c.get("expiryDate"), DateUtil.parseExpiry(f.expiryTo())));
+        if (f.minBalance() != null) p.add(cb.greaterThanOrEqualTo(c.get("balance"), f.minBalance()));
+        if (f.maxBalance() != null) p.add(cb.lessThanOrEqualTo(c.get("balance"), f.maxBalance()));
+        return p.toArray(Predicate[]::new);
+    }
+}
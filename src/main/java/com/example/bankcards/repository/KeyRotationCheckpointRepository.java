@@ -0,0 +1,7 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.KeyRotationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface KeyRotationCheckpointRepository extends JpaRepository<KeyRotationCheckpoint, Integer> {
+}
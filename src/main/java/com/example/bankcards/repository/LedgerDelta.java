@@ -0,0 +1,10 @@
+package com.example.bankcards.repository;
+
+import java.math.BigDecimal;
+
+/** Проводки карты после снимка: число и сумма (без проводок — 0). */
+public record LedgerDelta(long count, BigDecimal amount) {
+    public LedgerDelta {
+        if (amount == null) amount = BigDecimal.ZERO; // sum() по пустому диапазону — NULL
+    }
+}
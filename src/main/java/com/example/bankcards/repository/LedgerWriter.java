@@ -0,0 +1,25 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.Posting;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Проводки и снимки пакета переводов. persist, а не save(): у строк заданный составной id, и save() сделал бы
+ * merge с SELECT на каждую. INSERT копятся в JDBC batch и уходят при flush транзакции вызывающего вместе с переводами.
+ */
+@Repository
+public class LedgerWriter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public void append(List<Posting> postings, List<CardBalanceSnapshot> snapshots) {
+        for (Posting p : postings) em.persist(p);
+        for (CardBalanceSnapshot s : snapshots) em.persist(s);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.Posting;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public interface PostingRepository extends JpaRepository<Posting, Posting.Pk> {
+
+    // обе проводки одиночного перевода одним INSERT ... SELECT: seq берётся из строк карт, которые условные
+    // UPDATE этой транзакции уже заблокировали и увеличили (CardRepository.debit/credit).
+    // flushAutomatically: строка transfers из того же контекста уже должна быть в БД (внешний ключ)
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            insert into postings (card_id, seq, transfer_id, amount, created_at)
+            select c.id, c.posting_seq, :transferId,
+                   case when c.id = :fromCardId then -:amount else :amount end, :createdAt
+            from cards c where c.id in (:fromCardId, :toCardId)""", nativeQuery = true)
+    int insertTransfer(@Param("transferId") Long transferId, @Param("fromCardId") Long fromCardId,
+                       @Param("toCardId") Long toCardId, @Param("amount") BigDecimal amount,
+                       @Param("createdAt") LocalDateTime createdAt);
+
+    // проводки после снимка: диапазон PK (card_id, seq), не больше app.ledger.snapshot-every строк
+    @Query("select new com.example.bankcards.repository.LedgerDelta(count(p), sum(p.amount)) from Posting p"
+            + " where p.cardId = :cardId and p.seq > :afterSeq")
+    LedgerDelta deltaAfter(@Param("cardId") Long cardId, @Param("afterSeq") long afterSeq);
+}
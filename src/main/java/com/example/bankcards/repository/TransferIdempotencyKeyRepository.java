@@ -0,0 +1,32 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TransferIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface TransferIdempotencyKeyRepository
+        extends JpaRepository<TransferIdempotencyKey, TransferIdempotencyKey.Pk> {
+
+    @Query("select k.transferId from TransferIdempotencyKey k where k.userId = :userId and k.idemKey = :key")
+    Optional<Long> findTransferId(@Param("userId") Long userId, @Param("key") String key);
+
+    // прямой INSERT: save() с заданным id сначала сделал бы SELECT (merge). Повтор ключа — нарушение PK.
+    // flushAutomatically: строка transfers из того же контекста уже должна быть в БД (внешний ключ)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into transfer_idempotency_keys (user_id, idem_key, transfer_id, created_at)"
+            + " values (:userId, :key, :transferId, :createdAt)", nativeQuery = true)
+    int insert(@Param("userId") Long userId, @Param("key") String key, @Param("transferId") Long transferId,
+               @Param("createdAt") LocalDateTime createdAt);
+
+    // устаревшие ключи порциями: диапазон по ix_transfer_idempotency_keys_created, каждая порция — своя транзакция
+    @Transactional
+    @Modifying
+    @Query(value = "delete from transfer_idempotency_keys where created_at < :before limit :limit", nativeQuery = true)
+    int deleteCreatedBeforeChunk(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
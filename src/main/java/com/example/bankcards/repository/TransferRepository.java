@@ -1,8 +1,86 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.transfer.TransferView;
 import com.example.bankcards.entity.Transfer;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface TransferRepository extends JpaRepository<Transfer, Long> {
 
+    // плоская строка перевода: id карт и пользователя берутся из внешних ключей transfers, join на cards/users нет
+    String VIEW = "select new com.example.bankcards.dto.transfer.TransferView(t.id, t.fromCard.id, t.toCard.id,"
+            + " t.user.id, t.amount, t.createdAt) from Transfer t ";
+
+    // keyset «до (beforeTs, beforeId)» в порядке (created_at desc, id desc)
+    String BEFORE_KEY = " and t.createdAt >= :from"
+            + " and (t.createdAt < :beforeTs or (t.createdAt = :beforeTs and t.id < :beforeId))"
+            + " order by t.createdAt desc, t.id desc";
+
+    // выгрузка: forward-only курсор порциями по fetch size (useCursorFetch в URL), проекция — не попадает в контекст
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(VIEW + "order by t.id")
+    Stream<TransferView> streamViews();
+
+    // история пользователя: диапазон по ix_transfers_user_created — вторичный индекс InnoDB содержит PK,
+    // т.е. это (user_id, created_at, id); ни OFFSET, ни COUNT, ни сортировки в памяти
+    @Query(VIEW + "where t.user.id = :userId" + BEFORE_KEY)
+    List<TransferView> scrollByUser(@Param("userId") Long userId, @Param("from") LocalDateTime from,
+                                    @Param("beforeTs") LocalDateTime beforeTs, @Param("beforeId") Long beforeId,
+                                    Pageable pageable);
+
+    // история одной карты — две ветки вместо OR по from/to: каждая идёт диапазоном своего индекса
+    // ix_transfers_from_card_created / ix_transfers_to_card_created, т.е. (карта, created_at, id), уже в порядке
+    // страницы; сливает их TransferHistoryService. user_id — лишь проверка строки внутри диапазона карты
+    @Query(VIEW + "where t.fromCard.id = :cardId and t.user.id = :userId" + BEFORE_KEY)
+    List<TransferView> scrollDebitsByCard(@Param("userId") Long userId, @Param("cardId") Long cardId,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("beforeTs") LocalDateTime beforeTs, @Param("beforeId") Long beforeId,
+                                          Pageable pageable);
+
+    @Query(VIEW + "where t.toCard.id = :cardId and t.user.id = :userId" + BEFORE_KEY)
+    List<TransferView> scrollCreditsByCard(@Param("userId") Long userId, @Param("cardId") Long cardId,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("beforeTs") LocalDateTime beforeTs, @Param("beforeId") Long beforeId,
+                                           Pageable pageable);
+
+    // выписки: движения порции карт за период в порядке (карта, created_at, id) — диапазоны
+    // ix_transfers_from_card_created / ix_transfers_to_card_created без сортировки; курсор, как у выгрузки
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(VIEW + "where t.fromCard.id in :cardIds and t.createdAt >= :from and t.createdAt < :until"
+            + " order by t.fromCard.id, t.createdAt, t.id")
+    Stream<TransferView> streamDebits(@Param("cardIds") Collection<Long> cardIds, @Param("from") LocalDateTime from,
+                                      @Param("until") LocalDateTime until);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(VIEW + "where t.toCard.id in :cardIds and t.createdAt >= :from and t.createdAt < :until"
+            + " order by t.toCard.id, t.createdAt, t.id")
+    Stream<TransferView> streamCredits(@Param("cardIds") Collection<Long> cardIds, @Param("from") LocalDateTime from,
+                                       @Param("until") LocalDateTime until);
+
+    // суммы движений с момента since по тем же индексам: текущий баланс минус они — остаток на since
+    @Query("select new com.example.bankcards.repository.CardAmountRow(t.fromCard.id, sum(t.amount)) from Transfer t"
+            + " where t.fromCard.id in :cardIds and t.createdAt >= :since group by t.fromCard.id")
+    List<CardAmountRow> sumDebitsSince(@Param("cardIds") Collection<Long> cardIds,
+                                       @Param("since") LocalDateTime since);
+
+    @Query("select new com.example.bankcards.repository.CardAmountRow(t.toCard.id, sum(t.amount)) from Transfer t"
+            + " where t.toCard.id in :cardIds and t.createdAt >= :since group by t.toCard.id")
+    List<CardAmountRow> sumCreditsSince(@Param("cardIds") Collection<Long> cardIds,
+                                        @Param("since") LocalDateTime since);
 }
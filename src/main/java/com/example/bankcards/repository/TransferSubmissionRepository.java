@@ -0,0 +1,72 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TransferSubmission;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface TransferSubmissionRepository extends JpaRepository<TransferSubmission, Long> {
+
+    Optional<TransferSubmission> findByIdAndUserId(Long id, Long userId);
+
+    Optional<TransferSubmission> findByUserIdAndIdemKey(Long userId, String idemKey);
+
+    // выполнение заявки: строка блокируется первой, до карт. Заявку, взятую двумя узлами, выполнит один —
+    // второй дождётся коммита и уже не увидит её в PENDING
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from TransferSubmission s where s.id = :id"
+            + " and s.status = com.example.bankcards.entity.TransferSubmissionStatus.PENDING")
+    Optional<TransferSubmission> findPendingForUpdate(@Param("id") Long id);
+
+    // compare-and-set: отклоняем только ещё не завершённую заявку
+    @Transactional
+    @Modifying
+    @Query("""
+            update TransferSubmission s
+            set s.status = com.example.bankcards.entity.TransferSubmissionStatus.REJECTED,
+                s.reason = :reason, s.completedAt = :at
+            where s.id = :id and s.status = com.example.bankcards.entity.TransferSubmissionStatus.PENDING""")
+    int reject(@Param("id") Long id, @Param("reason") String reason, @Param("at") LocalDateTime at);
+
+    // сбой выполнения (не бизнес-отказ): попытка засчитывается, пока заявка не завершена
+    @Transactional
+    @Modifying
+    @Query("update TransferSubmission s set s.attempts = s.attempts + 1"
+            + " where s.id = :id and s.status = com.example.bankcards.entity.TransferSubmissionStatus.PENDING")
+    int countFailedAttempt(@Param("id") Long id);
+
+    // исчерпавшая попытки заявка отклоняется тем же compare-and-set, что и reject
+    @Transactional
+    @Modifying
+    @Query("""
+            update TransferSubmission s
+            set s.status = com.example.bankcards.entity.TransferSubmissionStatus.REJECTED,
+                s.reason = :reason, s.completedAt = :at
+            where s.id = :id and s.status = com.example.bankcards.entity.TransferSubmissionStatus.PENDING
+              and s.attempts >= :maxAttempts""")
+    int rejectExhausted(@Param("id") Long id, @Param("maxAttempts") int maxAttempts, @Param("reason") String reason,
+                        @Param("at") LocalDateTime at);
+
+    // завершённые заявки старше TTL ключа — вместе с их Idempotency-Key; два диапазона ix_..._status_created,
+    // PENDING не трогаем (их ещё выполнит восстановление)
+    @Transactional
+    @Modifying
+    @Query(value = "delete from transfer_submissions where status in ('COMPLETED', 'REJECTED')"
+            + " and created_at < :before limit :limit", nativeQuery = true)
+    int deleteFinishedCreatedBeforeChunk(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    // восстановление: PENDING дольше порога — принявший узел, вероятно, упал; диапазон по ix_..._status_created
+    @Query("select s.id from TransferSubmission s"
+            + " where s.status = com.example.bankcards.entity.TransferSubmissionStatus.PENDING"
+            + " and s.createdAt < :before order by s.createdAt")
+    List<Long> findPendingIdsCreatedBefore(@Param("before") LocalDateTime before, Pageable pageable);
+}
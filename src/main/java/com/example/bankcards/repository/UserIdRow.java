@@ -0,0 +1,4 @@
+package com.example.bankcards.repository;
+
+/** id пользователя по имени — без ролей и пароля (пакетное разрешение владельцев при импорте). */
+public record UserIdRow(Long id, String username) { }
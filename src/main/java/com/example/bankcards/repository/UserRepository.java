@@ -2,11 +2,29 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface  UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
 
+    // пакетное разрешение имён в id (импорт карт): одна выборка на порцию вместо запроса на строку
+    @Query("select new com.example.bankcards.repository.UserIdRow(u.id, u.username) from User u"
+            + " where u.username in :usernames")
+    List<UserIdRow> findIdsByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    // один столбец по PK — без загрузки ролей
+    @Query("select u.tokenEpoch from User u where u.id = :id")
+    Optional<Integer> findTokenEpochById(@Param("id") Long id);
+
+    @Modifying
+    @Query("update User u set u.tokenEpoch = u.tokenEpoch + 1 where u.id = :id")
+    int incrementTokenEpoch(@Param("id") Long id);
+
 }
@@ -0,0 +1,45 @@
+package com.example.bankcards.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Principal приложения: кроме имени и ролей несёт id пользователя и поколение токенов.
+ * Собирается либо из БД (BankUserDetailsService), либо прямо из проверенных claims JWT.
+ * Намеренно не CredentialsContainer: экземпляр неизменяем и может безопасно переиспользоваться.
+ */
+public final class AuthUser implements UserDetails {
+    private final Long id;
+    private final String username;
+    private final String password;
+    private final Set<GrantedAuthority> authorities;
+    private final int tokenEpoch;
+
+    public AuthUser(Long id, String username, String password, Set<GrantedAuthority> authorities, int tokenEpoch) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.authorities = Set.copyOf(authorities);
+        this.tokenEpoch = tokenEpoch;
+    }
+
+    public Long getId() { return id; }
+
+    public int getTokenEpoch() { return tokenEpoch; }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() { return authorities; }
+
+    /** null, если principal собран из токена. */
+    @Override
+    public String getPassword() { return password; }
+
+    @Override
+    public String getUsername() { return username; }
+
+    @Override
+    public String toString() { return "AuthUser[id=" + id + ", username=" + username + "]"; }
+}
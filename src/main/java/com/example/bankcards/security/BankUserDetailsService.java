@@ -1,8 +1,12 @@
 package com.example.bankcards.security;
 
-import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.Role;
 import com.example.bankcards.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -10,22 +14,78 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Загрузка пользователя для логина и DB-режима JwtAuthFilter.
+ * Готовый AuthUser кэшируется (ограничен по размеру и времени) для DB-режима фильтра; UserService сбрасывает запись
+ * при смене пароля или ролей, но только на своём узле. Поэтому:
+ * - логин проверяет пароль по свежей строке (uncached()): BCrypt всё равно дороже одного чтения по индексу,
+ *   а старый пароль не должен работать на узле с устаревшим кэшем;
+ * - закэшированный AuthUser с устаревшим token_epoch (смена пароля/ролей на другом узле) перечитывается —
+ *   отзыв виден так же быстро, как в stateless-режиме (TTL TokenEpochService).
+ * AuthUser неизменяем, поэтому общий экземпляр безопасно отдавать всем потокам.
+ */
 @Service
-@RequiredArgsConstructor
 public class BankUserDetailsService implements UserDetailsService {
     private final UserRepository userRepository;
+    private final TokenEpochService tokenEpochs;
+    private final Cache<String, AuthUser> cache;
+
+    public BankUserDetailsService(UserRepository userRepository, TokenEpochService tokenEpochs,
+                                  @Value("${app.security.user-cache.max-size:10000}") long maxSize,
+                                  @Value("${app.security.user-cache.ttl:5m}") Duration ttl,
+                                  MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.tokenEpochs = tokenEpochs;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "auth.user-details");
+    }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User u = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
-        Set<GrantedAuthority> authorities = u.getRoles().stream()
+        // get(key, loader) блокирует только загрузку того же ключа, а не весь кэш
+        AuthUser u = cache.get(username, this::load);
+        if (u != null && !tokenEpochs.isCurrent(u.getId(), u.getTokenEpoch())) {
+            cache.invalidate(username);
+            u = cache.get(username, this::load);
+        }
+        if (u == null) throw new UsernameNotFoundException("User not found");
+        return u;
+    }
+
+    /** Без кэша — для проверки пароля при логине. */
+    public UserDetailsService uncached() {
+        return username -> {
+            AuthUser u = load(username);
+            if (u == null) throw new UsernameNotFoundException("User not found");
+            return u;
+        };
+    }
+
+    /** Сбросить закэшированного пользователя (смена пароля, ролей, удаление). */
+    public void evict(String username) { cache.invalidate(username); }
+
+    public void evictAll() { cache.invalidateAll(); }
+
+    private AuthUser load(String username) {
+        // null не кэшируется: несуществующее имя каждый раз честно ищется в БД
+        return userRepository.findByUsername(username)
+                .map(u -> new AuthUser(u.getId(), u.getUsername(), u.getPassword(), authorities(u.getRoles()), u.getTokenEpoch()))
+                .orElse(null);
+    }
+
+    static Set<GrantedAuthority> authorities(Collection<Role> roles) {
+        return roles.stream()
                 .map(r -> new SimpleGrantedAuthority("ROLE_" + r.name()))
                 .collect(Collectors.toSet());
-        return new org.springframework.security.core.userdetails.User(u.getUsername(), u.getPassword(), authorities);
     }
 
 }
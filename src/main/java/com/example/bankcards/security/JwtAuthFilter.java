@@ -1,12 +1,15 @@
 package com.example.bankcards.security;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -15,11 +18,20 @@ import java.io.IOException;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
+    // почему: источник деталей без состояния — один экземпляр на весь фильтр
+    private static final WebAuthenticationDetailsSource DETAILS_SOURCE = new WebAuthenticationDetailsSource();
+
     private final JwtService jwtService;
     private final BankUserDetailsService userDetailsService;
+    private final TokenEpochService tokenEpochs;
+    // stateless: principal и роли берутся из claims, БД не трогаем (кроме кэшируемого epoch)
+    private final boolean stateless;
 
-    public JwtAuthFilter(JwtService jwtService, BankUserDetailsService userDetailsService) {
+    public JwtAuthFilter(JwtService jwtService, BankUserDetailsService userDetailsService,
+                         TokenEpochService tokenEpochs,
+                         @Value("${app.security.stateless:false}") boolean stateless) {
         this.jwtService = jwtService; this.userDetailsService = userDetailsService;
+        this.tokenEpochs = tokenEpochs; this.stateless = stateless;
     }
 
     @Override
@@ -28,14 +40,32 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         String header = request.getHeader("Authorization");
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
-            if (jwtService.isValid(token)) {
-                String username = jwtService.extractUsername(token);
-                UserDetails ud = userDetailsService.loadUserByUsername(username);
+            UserDetails ud = authenticate(token);
+            if (ud != null) {
                 var auth = new UsernamePasswordAuthenticationToken(ud, null, ud.getAuthorities());
-                auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                auth.setDetails(DETAILS_SOURCE.buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(auth);
             }
         }
         chain.doFilter(request, response);
     }
+
+    // невалидный или отозванный токен не роняет запрос: он просто остаётся неаутентифицированным
+    private UserDetails authenticate(String token) {
+        try {
+            VerifiedToken verified = jwtService.verify(token);
+            AuthUser fromToken = verified.principal();
+            if (stateless && fromToken != null) {
+                return tokenEpochs.isCurrent(fromToken.getId(), fromToken.getTokenEpoch()) ? fromToken : null;
+            }
+            UserDetails ud = userDetailsService.loadUserByUsername(verified.subject());
+            // epoch сверяем и здесь: смена ролей/блокировка отзывает токен в обоих режимах
+            if (fromToken != null && ud instanceof AuthUser db && db.getTokenEpoch() != fromToken.getTokenEpoch()) {
+                return null;
+            }
+            return ud;
+        } catch (JwtException | IllegalArgumentException | UsernameNotFoundException ex) {
+            return null;
+        }
+    }
 }
@@ -1,46 +1,141 @@
 package com.example.bankcards.security;
 
 import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtService {
+    static final String CLAIM_UID = "uid";
+    static final String CLAIM_ROLES = "roles";
+    static final String CLAIM_EPOCH = "epoch";
+
     private final Key key;
     private final long expMinutes;
+    // почему: парсер потокобезопасен и неизменяем — строим один раз, а не на каждый запрос
+    private final JwtParser parser;
+    // проверенные токены по SHA-256 токена; запись живёт не дольше exp самого токена.
+    // Кэшируется неизменяемый VerifiedToken, а не Claims: один экземпляр получают все параллельные запросы
+    private final Cache<String, VerifiedToken> verified;
 
     public JwtService(@Value("${app.security.jwt-secret}") String secret,
-                      @Value("${app.security.jwt-exp-min}") long expMinutes) {
+                      @Value("${app.security.jwt-exp-min}") long expMinutes,
+                      @Value("${app.security.jwt-cache.max-size:10000}") long cacheMaxSize,
+                      MeterRegistry meterRegistry) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes()); // почему: HS256 требует надёжный ключ
         this.expMinutes = expMinutes;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new UntilTokenExpiry())
+                .recordStats()
+                .build();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size с тегом cache=jwt.verified
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "jwt.verified");
     }
 
-    public String generateToken(String username, Set<Role> roles) {
+    /** Токен самодостаточен: id, роли и поколение токенов позволяют аутентифицировать без БД. */
+    public String generateToken(User user) {
         Instant now = Instant.now();
         return Jwts.builder()
-                .setSubject(username)
-                .claim("roles", roles)
+                .setSubject(user.getUsername())
+                .claim(CLAIM_UID, user.getId())
+                .claim(CLAIM_ROLES, user.getRoles())
+                .claim(CLAIM_EPOCH, user.getTokenEpoch())
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plusSeconds(expMinutes * 60)))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public String extractUsername(String token) { return parse(token).getBody().getSubject(); }
+    /**
+     * Единственная точка проверки токена: подпись и exp проверяются один раз,
+     * повторные запросы с тем же токеном берут из кэша уже собранный principal.
+     * @throws JwtException если токен невалиден или просрочен
+     */
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verified.getIfPresent(digest);
+        if (cached != null) return cached;
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Date exp = claims.getExpiration();
+        VerifiedToken t = new VerifiedToken(claims.getSubject(), principal(claims), exp == null ? null : exp.toInstant());
+        verified.put(digest, t);
+        return t;
+    }
+
+    /**
+     * Principal из проверенных claims. null — токен выпущен до появления uid/epoch,
+     * такой токен аутентифицируется по-старому, через БД.
+     */
+    private static AuthUser principal(Claims claims) {
+        Number uid = claims.get(CLAIM_UID, Number.class);
+        Number epoch = claims.get(CLAIM_EPOCH, Number.class);
+        if (uid == null || epoch == null) return null;
+        Set<Role> roles = EnumSet.noneOf(Role.class);
+        Collection<?> raw = claims.get(CLAIM_ROLES, Collection.class);
+        if (raw != null) raw.forEach(r -> roles.add(Role.valueOf(r.toString())));
+        return new AuthUser(uid.longValue(), claims.getSubject(), null,
+                BankUserDetailsService.authorities(roles), epoch.intValue());
+    }
+
+    public String extractUsername(String token) { return verify(token).subject(); }
 
     public boolean isValid(String token) {
-        try { parse(token); return true; } catch (JwtException ex) { return false; }
+        try { verify(token); return true; } catch (JwtException | IllegalArgumentException ex) { return false; }
     }
 
-    private Jws<Claims> parse(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+    /** Сбрасывает кэш проверенных токенов (например, при смене ключа). */
+    public void invalidateCache() { verified.invalidateAll(); }
+
+    private static String digest(String token) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(h);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 
+    /** TTL записи = время до exp токена; токены без exp не кэшируем дольше минуты. */
+    private static final class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+        private static final long NO_EXP_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+        @Override
+        public long expireAfterCreate(String k, VerifiedToken t, long currentTime) {
+            if (t.expiresAt() == null) return NO_EXP_TTL_NANOS;
+            long millis = t.expiresAt().toEpochMilli() - System.currentTimeMillis();
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String k, VerifiedToken t, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String k, VerifiedToken t, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Отдельный ограниченный пул для операций с BCrypt (логин, регистрация, смена пароля).
+ * Почему: BCrypt(10) — десятки миллисекунд CPU; на потоках Tomcat всплеск логинов
+ * занимает весь пул запросов и тормозит /api/cards. Здесь очередь ограничена,
+ * при переполнении — мгновенный 503, а задача, слишком долго простоявшая в очереди, не выполняется.
+ */
+@Component
+public class PasswordHashingExecutor {
+    private final ThreadPoolExecutor pool;
+    private final long maxQueueWaitNanos;
+    private final Counter rejected;
+    // таймеры операций регистрируются один раз: поиск в реестре на каждый логин не нужен
+    private final Map<String, Timer> latency;
+
+    public PasswordHashingExecutor(@Value("${app.security.hashing.threads:0}") int threads,
+                                   @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+                                   @Value("${app.security.hashing.max-queue-wait:2s}") Duration maxQueueWait,
+                                   MeterRegistry meters) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "pwd-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.rejected = Counter.builder("auth.hashing.rejected")
+                .description("Password hashing tasks rejected because the pool was saturated")
+                .register(meters);
+        this.latency = Map.of("login", latencyTimer("login", meters), "register", latencyTimer("register", meters),
+                "password", latencyTimer("password", meters));
+        meters.gauge("auth.hashing.queue", pool, p -> p.getQueue().size());
+    }
+
+    private static Timer latencyTimer(String operation, MeterRegistry meters) {
+        return Timer.builder("auth.hashing.latency")
+                .description("Queue wait plus execution of password hashing operations")
+                .tag("op", operation)
+                .publishPercentiles(0.5, 0.99)
+                .register(meters);
+    }
+
+    /**
+     * Выполнить операцию в пуле хэширования. Поток запроса не блокируется: контроллер
+     * возвращает CompletableFuture, Spring MVC отпускает поток Tomcat до завершения.
+     * @param operation login, register или password — тег таймера auth.hashing.latency
+     * @throws ServiceUnavailableException если очередь переполнена
+     */
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> task) {
+        Timer timer = latency.get(operation);
+        if (timer == null) throw new IllegalArgumentException("unknown hashing operation: " + operation);
+        long enqueued = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (System.nanoTime() - enqueued > maxQueueWaitNanos) {
+                    rejected.increment();
+                    throw new ServiceUnavailableException("authentication is overloaded, retry later");
+                }
+                try {
+                    return task.get();
+                } finally {
+                    timer.record(System.nanoTime() - enqueued, TimeUnit.NANOSECONDS);
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceUnavailableException("authentication is overloaded, retry later");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() { pool.shutdown(); }
+}
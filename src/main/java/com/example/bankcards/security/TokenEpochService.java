@@ -0,0 +1,57 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Поколение токенов пользователя (users.token_epoch).
+ * В stateless-режиме JWT принимается, только если его claim "epoch" совпадает с текущим значением;
+ * значение кэшируется ненадолго, так что проверка почти никогда не ходит в БД,
+ * а отзыв на других узлах вступает в силу не позже чем через TTL.
+ */
+@Service
+public class TokenEpochService {
+    /** Пользователь удалён — ни один токен не совпадёт. */
+    private static final int NO_USER = -1;
+
+    private final UserRepository userRepository;
+    private final LoadingCache<Long, Integer> epochs;
+
+    public TokenEpochService(UserRepository userRepository,
+                             @Value("${app.security.token-epoch.cache-ttl:30s}") Duration ttl,
+                             @Value("${app.security.token-epoch.cache-max-size:100000}") long maxSize,
+                             MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.epochs = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(id -> userRepository.findTokenEpochById(id).orElse(NO_USER));
+        CaffeineCacheMetrics.monitor(meterRegistry, epochs, "jwt.token-epoch");
+    }
+
+    public boolean isCurrent(Long userId, int tokenEpoch) {
+        return epochs.get(userId) == tokenEpoch;
+    }
+
+    /** Отзывает все выданные пользователю токены (смена ролей, блокировка учётки). */
+    @Transactional
+    public void revokeAll(Long userId) {
+        userRepository.incrementTokenEpoch(userId);
+        // почему: после коммита — иначе параллельный запрос успеет закэшировать старое значение
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() { epochs.invalidate(userId); }
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.security;
+
+import java.time.Instant;
+
+/**
+ * Результат проверки JWT — неизменяемое значение, которое кэш JwtService отдаёт всем запросам с этим токеном
+ * (в отличие от Claims парсера, изменяемой Map).
+ * @param principal null — токен выпущен до появления uid/epoch и аутентифицируется через БД
+ * @param expiresAt null — токен без exp
+ */
+public record VerifiedToken(String subject, AuthUser principal, Instant expiresAt) { }
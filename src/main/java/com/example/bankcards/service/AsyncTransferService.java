@@ -0,0 +1,172 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.transfer.TransferSubmissionResponse;
+import com.example.bankcards.entity.TransferSubmission;
+import com.example.bankcards.entity.TransferSubmissionStatus;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.exception.ForbiddenException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Асинхронные переводы: POST принимает заявку (одна короткая вставка, без блокировок карт) и сразу отвечает 202,
+ * перевод выполняется в фоне, клиент опрашивает статус.
+ * Почему так:
+ * - всплеск переводов и конкуренция за карты не держат потоки Tomcat: ждут дешёвые виртуальные потоки;
+ * - одновременно в БД не больше max-concurrency транзакций — пул соединений остаётся синхронным запросам;
+ * - заявка хранится в БД: статус виден с любого узла, а зависшие PENDING (узел упал) подхватывает восстановление;
+ *   двойное выполнение исключено блокировкой строки заявки (TransferService.executeSubmission);
+ * - сбой выполнения (не бизнес-отказ) засчитывается в attempts: после max-attempts заявка REJECTED —
+ *   «ядовитая» строка не перезапускается восстановлением вечно и не занимает его порции.
+ */
+@Slf4j
+@Service
+public class AsyncTransferService {
+    private static final int RECOVERY_BATCH = 500;
+    static final String FAILED_REASON = "transfer failed, please retry";
+
+    private final TransferService transfers;
+    private final TransferSubmissionRepository submissions;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int queueCapacity;
+    private final Duration staleAfter;
+    private final int maxAttempts;
+    // заявки, принятые к выполнению на этом узле: ограничение очереди и защита от повторной постановки
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final Counter completed;
+    private final Counter rejected;
+    private final Counter overloaded;
+
+    public AsyncTransferService(TransferService transfers, TransferSubmissionRepository submissions, MeterRegistry meters,
+                                @Value("${app.transfers.async.max-concurrency:8}") int maxConcurrency,
+                                @Value("${app.transfers.async.queue-capacity:10000}") int queueCapacity,
+                                @Value("${app.transfers.async.stale-after:1m}") Duration staleAfter,
+                                @Value("${app.transfers.async.max-attempts:5}") int maxAttempts) {
+        this.transfers = transfers;
+        this.submissions = submissions;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("transfer-async-", 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+        this.queueCapacity = queueCapacity;
+        this.staleAfter = staleAfter;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.completed = Counter.builder("transfers.async.completed").register(meters);
+        this.rejected = Counter.builder("transfers.async.rejected").register(meters);
+        this.overloaded = Counter.builder("transfers.async.overloaded")
+                .description("Async transfer submissions refused because the node queue was full")
+                .register(meters);
+        meters.gauge("transfers.async.in-flight", inFlight, Set::size);
+    }
+
+    @PreDestroy
+    void shutdown() { executor.shutdown(); }
+
+    /**
+     * Принимает перевод к выполнению. Входные данные проверяются сразу (400), владение картами, статусы
+     * и баланс — при выполнении (REJECTED с причиной). Повтор с тем же Idempotency-Key возвращает ту же заявку.
+     */
+    public TransferSubmissionResponse submit(Long userId, Long fromCardId, Long toCardId, BigDecimal amount,
+                                             String idempotencyKey) {
+        String invalid = TransferService.validateTransfer(fromCardId, toCardId, amount);
+        if (invalid != null) throw new BadRequestException(invalid);
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > TransferService.MAX_KEY_LENGTH))
+            throw new BadRequestException("Idempotency-Key must be 1.." + TransferService.MAX_KEY_LENGTH + " characters");
+        if (inFlight.size() >= queueCapacity) {
+            overloaded.increment();
+            throw new ServiceUnavailableException("transfer queue is full, retry later");
+        }
+
+        TransferSubmission s;
+        try {
+            s = submissions.save(TransferSubmission.builder()
+                    .userId(userId).fromCardId(fromCardId).toCardId(toCardId).amount(amount)
+                    .status(TransferSubmissionStatus.PENDING).idemKey(idempotencyKey)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // повтор POST с тем же ключом: новая заявка не создаётся
+            if (idempotencyKey == null) throw e;
+            return toResponse(submissions.findByUserIdAndIdemKey(userId, idempotencyKey).orElseThrow(() -> e));
+        }
+        dispatch(s.getId());
+        return toResponse(s);
+    }
+
+    /** Статус своей заявки. */
+    public TransferSubmissionResponse status(Long userId, Long submissionId) {
+        return submissions.findByIdAndUserId(submissionId, userId)
+                .map(AsyncTransferService::toResponse)
+                .orElseThrow(() -> new NotFoundException("transfer submission not found"));
+    }
+
+    /** Зависшие PENDING: принявший узел упал или перевод не дождался карты — выполняем повторно. */
+    @Scheduled(fixedDelayString = "${app.transfers.async.recovery-interval:1m}")
+    public void recover() {
+        LocalDateTime before = LocalDateTime.now().minus(staleAfter);
+        for (Long id : submissions.findPendingIdsCreatedBefore(before, PageRequest.of(0, RECOVERY_BATCH))) dispatch(id);
+    }
+
+    void dispatch(Long id) {
+        if (inFlight.add(id)) executor.execute(() -> run(id));
+    }
+
+    private void run(Long id) {
+        try {
+            permits.acquire();
+            try {
+                if (transfers.executeSubmission(id)) completed.increment();
+            } finally {
+                permits.release();
+            }
+        } catch (BadRequestException | ForbiddenException e) {
+            if (submissions.reject(id, e.getMessage(), LocalDateTime.now()) == 1) rejected.increment();
+        } catch (ServiceUnavailableException e) {
+            // карта занята дольше всех попыток: заявка остаётся PENDING до следующего восстановления
+            log.info("transfer submission {} postponed: {}", id, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failed(id, e);
+        } finally {
+            inFlight.remove(id);
+        }
+    }
+
+    private void failed(Long id, RuntimeException e) {
+        try {
+            submissions.countFailedAttempt(id);
+            if (submissions.rejectExhausted(id, maxAttempts, FAILED_REASON, LocalDateTime.now()) == 1) {
+                rejected.increment();
+                log.error("transfer submission {} rejected after {} failed attempts", id, maxAttempts, e);
+                return;
+            }
+        } catch (RuntimeException counting) {
+            e.addSuppressed(counting); // БД недоступна: попытка не засчитана, заявка останется PENDING
+        }
+        log.warn("transfer submission {} failed, left PENDING: {}", id, e.toString());
+    }
+
+    private static TransferSubmissionResponse toResponse(TransferSubmission s) {
+        return new TransferSubmissionResponse(s.getId(), s.getStatus(), s.getTransferId(), s.getReason(),
+                s.getCreatedAt(), s.getCompletedAt());
+    }
+}
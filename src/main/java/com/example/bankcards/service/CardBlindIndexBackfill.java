@@ -0,0 +1,103 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardCipherRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CryptoUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Заполняет cards.pan_hmac у карт, созданных до появления blind index.
+ * Идёт по таблице keyset-ом по id порциями: каждая порция — короткая транзакция из точечных UPDATE,
+ * поэтому блокировки не копятся и конкурирующие переводы не ждут весь проход.
+ * Запускается один раз после старта в фоне; повторный запуск продолжает с незаполненных строк.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.cards.blind-index-backfill.enabled", havingValue = "true")
+public class CardBlindIndexBackfill {
+    private final CardRepository repo;
+    private final CryptoUtil crypto;
+    private final TransactionTemplate tx;
+    private final TaskExecutor executor;
+    private final int chunkSize;
+
+    public CardBlindIndexBackfill(CardRepository repo, CryptoUtil crypto, TransactionTemplate tx,
+                                  TaskExecutor executor,
+                                  @Value("${app.cards.blind-index-backfill.chunk-size:500}") int chunkSize) {
+        this.repo = repo;
+        this.crypto = crypto;
+        this.tx = tx;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        executor.execute(this::run);
+    }
+
+    /** Один проход по таблице; возвращает число заполненных строк. */
+    public int run() {
+        long afterId = 0;
+        int filled = 0, skipped = 0;
+        List<CardCipherRow> rows;
+        do {
+            rows = repo.findWithoutPanHmac(afterId, PageRequest.of(0, chunkSize));
+            if (rows.isEmpty()) break;
+            afterId = rows.get(rows.size() - 1).id();
+
+            // расшифровка и HMAC — вне транзакции, в транзакции только UPDATE
+            List<Update> updates = new ArrayList<>(rows.size());
+            for (CardCipherRow r : rows) {
+                try {
+                    String pan = r.encPan() != null ? crypto.decrypt(r.encPan()) : crypto.decryptLegacy(r.encNumber());
+                    updates.add(new Update(r.id(), crypto.blindIndex(pan)));
+                } catch (IllegalStateException e) {
+                    skipped++;
+                    log.warn("blind index backfill: card {} cannot be decrypted: {}", r.id(), e.getMessage());
+                }
+            }
+            filled += apply(updates);
+        } while (rows.size() == chunkSize);
+
+        log.info("blind index backfill finished: filled={}, skipped={}", filled, skipped);
+        return filled;
+    }
+
+    private int apply(List<Update> updates) {
+        try {
+            Integer n = tx.execute(s -> {
+                int sum = 0;
+                for (Update u : updates) sum += repo.setPanHmac(u.id(), u.panHmac());
+                return sum;
+            });
+            return n == null ? 0 : n;
+        } catch (DataIntegrityViolationException e) {
+            // в порции есть дубль номера: повторяем построчно, чтобы остальные строки не откатились
+            int sum = 0;
+            for (Update u : updates) {
+                try {
+                    Integer n = tx.execute(s -> repo.setPanHmac(u.id(), u.panHmac()));
+                    sum += n == null ? 0 : n;
+                } catch (DataIntegrityViolationException dup) {
+                    log.warn("blind index backfill: card {} duplicates the number of another card", u.id());
+                }
+            }
+            return sum;
+        }
+    }
+
+    private record Update(Long id, byte[] panHmac) { }
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Переводит карты с истёкшим сроком в сохранённый статус EXPIRED.
+ * Почему так:
+ * - срок меняется только на границе месяца, поэтому job запускается раз в месяц (cron), а не на каждое чтение;
+ * - set-based UPDATE ... LIMIT порциями: каждая порция — отдельная короткая транзакция, блокировки не копятся;
+ * - после старта — догоняющий проход, если узел был выключен в момент cron;
+ * - повторный/параллельный запуск безопасен: уже EXPIRED строки не попадают под условие.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.cards.expiry.enabled", havingValue = "true")
+public class CardExpiryJob {
+    private final CardRepository cards;
+    private final TaskExecutor executor;
+    private final int chunkSize;
+    private final Counter expired;
+
+    public CardExpiryJob(CardRepository cards, TaskExecutor executor, MeterRegistry meters,
+                         @Value("${app.cards.expiry.chunk-size:1000}") int chunkSize) {
+        this.cards = cards;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.expired = Counter.builder("cards.expired").register(meters);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        executor.execute(this::run);
+    }
+
+    @Scheduled(cron = "${app.cards.expiry.cron:0 5 0 1 * *}")
+    public void onSchedule() {
+        run();
+    }
+
+    /** Один проход; возвращает число карт, переведённых в EXPIRED. */
+    public int run() {
+        LocalDate today = LocalDate.now();
+        int total = 0, n;
+        do {
+            n = cards.expireDueChunk(today, chunkSize);
+            total += n;
+            expired.increment(n);
+        } while (n == chunkSize);
+        if (total > 0) log.info("card expiry: {} cards marked EXPIRED", total);
+        return total;
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardImportError;
+import com.example.bankcards.dto.card.CardImportResult;
+import com.example.bankcards.dto.card.CardImportRow;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.CardBatchWriter;
+import com.example.bankcards.repository.CardInsertRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserIdRow;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CryptoUtil;
+import com.example.bankcards.util.DataFormat;
+import com.example.bankcards.util.DateUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пакетный выпуск карт из потока NDJSON/CSV (онбординг корпоративных клиентов).
+ * Почему так:
+ * - вход читается построчно порциями по batch-size: память ограничена порцией, а не размером файла;
+ * - валидация, шифрование и HMAC — CPU-работа, идёт параллельно в отдельном ограниченном пуле;
+ * - владельцы и дубли номеров проверяются одним IN-запросом на порцию, а не запросом на строку;
+ * - вставка — JDBC batch в короткой транзакции на порцию; ошибка строки не отменяет остальные,
+ *   а попадает в отчёт с номером строки.
+ */
+@Slf4j
+@Service
+public class CardImportService {
+    // на один импорт: имена владельцев -> id; при переполнении просто сбрасывается
+    private static final int OWNER_CACHE_SIZE = 10_000;
+
+    private final CardRepository cards;
+    private final UserRepository users;
+    private final CardBatchWriter writer;
+    private final CryptoUtil crypto;
+    private final TransactionTemplate tx;
+    private final ObjectMapper json;
+    private final ExecutorService workers;
+    private final int threads;
+    private final int batchSize;
+    private final int maxErrors;
+
+    public CardImportService(CardRepository cards, UserRepository users, CardBatchWriter writer, CryptoUtil crypto,
+                             TransactionTemplate tx, ObjectMapper json,
+                             @Value("${app.cards.import.threads:0}") int threads,
+                             @Value("${app.cards.import.batch-size:1000}") int batchSize,
+                             @Value("${app.cards.import.max-errors:1000}") int maxErrors) {
+        this.cards = cards;
+        this.users = users;
+        this.writer = writer;
+        this.crypto = crypto;
+        this.tx = tx;
+        this.json = json;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "card-import-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() { workers.shutdown(); }
+
+    /**
+     * Импорт всего потока. Порции коммитятся по мере чтения: если поток оборвётся, уже вставленные карты остаются.
+     * CSV: number,expiry,ownerUsername,initialBalance; строка-заголовок "number,..." пропускается.
+     */
+    public CardImportResult importCards(InputStream in, DataFormat format) {
+        Report report = new Report(maxErrors);
+        Map<String, Long> owners = new HashMap<>();
+        long lineNo = 0;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<Line> batch = new ArrayList<>(batchSize);
+            String s;
+            while ((s = r.readLine()) != null) {
+                lineNo++;
+                if (s.isBlank()) continue;
+                if (format == DataFormat.CSV && lineNo == 1 && s.startsWith("number")) continue;
+                batch.add(new Line(lineNo, s));
+                if (batch.size() == batchSize) {
+                    process(batch, format, owners, report);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) process(batch, format, owners, report);
+        } catch (IOException e) {
+            throw new BadRequestException("upload interrupted after line " + lineNo
+                    + ", " + report.created + " cards were imported");
+        }
+        log.info("card import finished: total={}, created={}, failed={}", report.total, report.created, report.failed);
+        return report.result();
+    }
+
+    private void process(List<Line> batch, DataFormat format, Map<String, Long> owners, Report report) {
+        report.total += batch.size();
+
+        // 1. разбор, валидация, шифрование — параллельно по срезам порции
+        List<Prepared> prepared = prepareParallel(batch, format, report);
+
+        // 2. дубли внутри порции и уже существующие номера — один IN по pan_hmac
+        Map<ByteBuffer, Prepared> byHmac = new LinkedHashMap<>();
+        for (Prepared p : prepared) {
+            if (byHmac.putIfAbsent(ByteBuffer.wrap(p.panHmac()), p) != null)
+                report.error(p.line(), "duplicate card number in upload");
+        }
+        if (byHmac.isEmpty()) return;
+        for (byte[] h : cards.findExistingPanHmacs(byHmac.values().stream().map(Prepared::panHmac).toList())) {
+            Prepared dup = byHmac.remove(ByteBuffer.wrap(h));
+            if (dup != null) report.error(dup.line(), "card number already exists");
+        }
+
+        // 3. владельцы — одна выборка на ещё не известные имена
+        Set<String> unknown = new HashSet<>();
+        for (Prepared p : byHmac.values()) if (!owners.containsKey(p.ownerUsername())) unknown.add(p.ownerUsername());
+        if (!unknown.isEmpty()) {
+            if (owners.size() + unknown.size() > OWNER_CACHE_SIZE) owners.clear();
+            for (UserIdRow u : users.findIdsByUsernameIn(unknown)) owners.put(u.username(), u.id());
+        }
+
+        List<Prepared> ready = new ArrayList<>(byHmac.size());
+        List<CardInsertRow> rows = new ArrayList<>(byHmac.size());
+        for (Prepared p : byHmac.values()) {
+            Long ownerId = owners.get(p.ownerUsername());
+            if (ownerId == null) {
+                report.error(p.line(), "user not found: " + p.ownerUsername());
+                continue;
+            }
+            ready.add(p);
+            rows.add(p.toRow(ownerId));
+        }
+        if (!rows.isEmpty()) insert(ready, rows, report);
+    }
+
+    private void insert(List<Prepared> ready, List<CardInsertRow> rows, Report report) {
+        try {
+            tx.executeWithoutResult(s -> writer.insert(rows));
+            report.created += rows.size();
+        } catch (DataIntegrityViolationException e) {
+            // тот же номер успели выпустить параллельно: повторяем построчно, чтобы остальные строки не откатились
+            for (int i = 0; i < rows.size(); i++) {
+                List<CardInsertRow> one = List.of(rows.get(i));
+                try {
+                    tx.executeWithoutResult(s -> writer.insert(one));
+                    report.created++;
+                } catch (DataIntegrityViolationException dup) {
+                    report.error(ready.get(i).line(), "card number already exists");
+                }
+            }
+        }
+    }
+
+    private List<Prepared> prepareParallel(List<Line> batch, DataFormat format, Report report) {
+        int slice = Math.max(1, (batch.size() + threads - 1) / threads);
+        List<CompletableFuture<List<Object>>> parts = new ArrayList<>();
+        for (int from = 0; from < batch.size(); from += slice) {
+            List<Line> part = batch.subList(from, Math.min(from + slice, batch.size()));
+            parts.add(CompletableFuture.supplyAsync(() -> part.stream().map(l -> prepare(l, format)).toList(), workers));
+        }
+        // результаты собираются в исходном порядке строк; ошибки — в отчёт из одного потока
+        List<Prepared> prepared = new ArrayList<>(batch.size());
+        for (CompletableFuture<List<Object>> part : parts) {
+            for (Object o : part.join()) {
+                if (o instanceof Prepared p) prepared.add(p);
+                else report.add((CardImportError) o);
+            }
+        }
+        return prepared;
+    }
+
+    /** Одна строка: Prepared или CardImportError. */
+    private Object prepare(Line l, DataFormat format) {
+        try {
+            CardImportRow row = format == DataFormat.NDJSON ? json.readValue(l.text(), CardImportRow.class) : csv(l.text());
+            if (row == null) throw new BadRequestException("row required"); // строка NDJSON «null»
+            CardService.validateCardNumber(row.number());
+            CardService.validateExpiry(row.expiry());
+            CardService.validateInitialBalance(row.initialBalance());
+            if (row.ownerUsername() == null || row.ownerUsername().isBlank())
+                throw new BadRequestException("ownerUsername required");
+            LocalDate expiry = DateUtil.parseExpiry(row.expiry());
+            return new Prepared(l.no(), crypto.encrypt(row.number()), crypto.blindIndex(row.number()),
+                    row.number().substring(12), row.ownerUsername().trim(), expiry, row.initialBalance());
+        } catch (BadRequestException e) {
+            return new CardImportError(l.no(), e.getMessage());
+        } catch (JsonProcessingException e) {
+            return new CardImportError(l.no(), "invalid JSON");
+        }
+    }
+
+    private static CardImportRow csv(String line) {
+        String[] f = line.split(",", -1);
+        if (f.length != 4) throw new BadRequestException("expected 4 fields: number,expiry,ownerUsername,initialBalance");
+        BigDecimal balance;
+        try {
+            balance = new BigDecimal(f[3].trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("initialBalance must be a number");
+        }
+        return new CardImportRow(f[0].trim(), f[1].trim(), f[2].trim(), balance);
+    }
+
+    private record Line(long no, String text) { }
+
+    private record Prepared(long line, byte[] encPan, byte[] panHmac, String last4, String ownerUsername,
+                            LocalDate expiryDate, BigDecimal balance) {
+        CardInsertRow toRow(Long ownerId) {
+            return new CardInsertRow(encPan, panHmac, last4, ownerId, expiryDate,
+                    CardService.initialStatus(expiryDate), balance, LocalDateTime.now());
+        }
+    }
+
+    /** Счётчики и ограниченный список ошибок одного импорта. */
+    private static final class Report {
+        private final int maxErrors;
+        private final List<CardImportError> errors = new ArrayList<>();
+        private long total, created, failed;
+
+        Report(int maxErrors) { this.maxErrors = maxErrors; }
+
+        void error(long line, String message) { add(new CardImportError(line, message)); }
+
+        void add(CardImportError e) {
+            failed++;
+            if (errors.size() < maxErrors) errors.add(e);
+        }
+
+        CardImportResult result() {
+            errors.sort(Comparator.comparingLong(CardImportError::line));
+            return new CardImportResult(total, created, failed, errors, failed > errors.size());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.KeyRotationCheckpoint;
+import com.example.bankcards.repository.CardCipherRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.KeyRotationCheckpointRepository;
+import com.example.bankcards.util.CryptoUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Онлайн-перешифровка номеров карт активным ключом (app.crypto.active-key-id).
+ * Почему так:
+ * - порции по id (keyset) и отдельная короткая транзакция на порцию — никаких долгих блокировок на живой таблице;
+ * - расшифровка/шифрование вне транзакции, в транзакции только UPDATE ... WHERE enc_pan = старое значение
+ *   (compare-and-set), поэтому параллельные переводы не ждут job и не теряют изменения баланса;
+ * - чекпоинт (key_rotation_checkpoints) пишется в той же транзакции, что и порция: после рестарта продолжаем с него;
+ * - пауза между порциями ограничивает нагрузку на БД.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.crypto.rotation.enabled", havingValue = "true")
+public class CardKeyRotationJob {
+    private final CardRepository cards;
+    private final KeyRotationCheckpointRepository checkpoints;
+    private final CryptoUtil crypto;
+    private final TransactionTemplate tx;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final Duration pause;
+    private final Counter rotated;
+    private final Counter conflicts;
+    private final Counter failed;
+    private volatile boolean stopped;
+
+    public CardKeyRotationJob(CardRepository cards, KeyRotationCheckpointRepository checkpoints, CryptoUtil crypto,
+                              TransactionTemplate tx, TaskExecutor executor, MeterRegistry meters,
+                              @Value("${app.crypto.rotation.batch-size:200}") int batchSize,
+                              @Value("${app.crypto.rotation.pause:100ms}") Duration pause) {
+        this.cards = cards;
+        this.checkpoints = checkpoints;
+        this.crypto = crypto;
+        this.tx = tx;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.rotated = Counter.builder("crypto.rotation.rows").tag("result", "rotated").register(meters);
+        this.conflicts = Counter.builder("crypto.rotation.rows").tag("result", "conflict").register(meters);
+        this.failed = Counter.builder("crypto.rotation.rows").tag("result", "failed").register(meters);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        executor.execute(this::run);
+    }
+
+    @PreDestroy
+    void stop() { stopped = true; }
+
+    /** Проход до конца таблицы (или до остановки). Повторный вызов после завершения ничего не делает. */
+    public void run() {
+        int keyId = crypto.activeKeyId();
+        KeyRotationCheckpoint cp = checkpoints.findById(keyId).orElseGet(() -> KeyRotationCheckpoint.builder()
+                .targetKeyId(keyId).lastCardId(0L).rotated(0L).build());
+        if (cp.getFinishedAt() != null) return;
+        log.info("key rotation to key {} started from card id {}", keyId, cp.getLastCardId());
+
+        List<CardCipherRow> rows;
+        do {
+            if (stopped) {
+                log.info("key rotation to key {} paused at card id {}", keyId, cp.getLastCardId());
+                return;
+            }
+            rows = cards.findCipherRows(cp.getLastCardId(), PageRequest.of(0, batchSize));
+            if (rows.isEmpty()) break;
+
+            List<Rotation> batch = new ArrayList<>(rows.size());
+            for (CardCipherRow r : rows) {
+                if (crypto.isCurrent(r.encPan())) continue;
+                try {
+                    String pan = r.encPan() != null ? crypto.decrypt(r.encPan()) : crypto.decryptLegacy(r.encNumber());
+                    batch.add(new Rotation(r, crypto.encrypt(pan)));
+                } catch (IllegalStateException e) {
+                    failed.increment();
+                    log.warn("key rotation: card {} cannot be decrypted: {}", r.id(), e.getMessage());
+                }
+            }
+            cp = apply(cp, batch, rows.get(rows.size() - 1).id());
+            sleep();
+        } while (rows.size() == batchSize);
+
+        KeyRotationCheckpoint done = cp;
+        done.setFinishedAt(LocalDateTime.now());
+        done.setUpdatedAt(done.getFinishedAt());
+        tx.executeWithoutResult(s -> checkpoints.save(done));
+        log.info("key rotation to key {} finished: rotated={}", keyId, done.getRotated());
+    }
+
+    private KeyRotationCheckpoint apply(KeyRotationCheckpoint cp, List<Rotation> batch, Long lastId) {
+        return tx.execute(s -> {
+            int n = 0;
+            for (Rotation r : batch) {
+                CardCipherRow row = r.row();
+                int updated = row.encPan() != null
+                        ? cards.replaceEncPan(row.id(), row.encPan(), r.encPan())
+                        : cards.replaceLegacyNumber(row.id(), row.encNumber(), r.encPan());
+                // 0 строк: карту удалили или её уже перешифровал другой узел — пропускаем
+                if (updated == 0) conflicts.increment();
+                n += updated;
+            }
+            rotated.increment(n);
+            cp.setLastCardId(lastId);
+            cp.setRotated(cp.getRotated() + n);
+            cp.setUpdatedAt(LocalDateTime.now());
+            return checkpoints.save(cp);
+        });
+    }
+
+    private void sleep() {
+        if (pause.isZero()) return;
+        try {
+            Thread.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+
+    private record Rotation(CardCipherRow row, byte[] encPan) { }
+}
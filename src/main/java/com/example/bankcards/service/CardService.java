@@ -1,117 +1,287 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardView;
 import com.example.bankcards.entity.*;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.util.CryptoUtil;
 import com.example.bankcards.util.DateUtil;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
 
 
 @Service
 public class CardService {
+    // порция bulk UPDATE: IN-список и число блокируемых строк за одну транзакцию
+    static final int STATUS_CHUNK = 1000;
+    static final int MAX_BULK_IDS = 100_000;
+
     private final CardRepository repo;
     private final UserService userService;
     private final CryptoUtil crypto;
+    private final CardBalanceSnapshotRepository snapshots;
 
-    public CardService(CardRepository repo, UserService userService, CryptoUtil crypto) {
+    public CardService(CardRepository repo, UserService userService, CryptoUtil crypto,
+                       CardBalanceSnapshotRepository snapshots) {
         this.repo = repo;
         this.userService = userService;
         this.crypto = crypto;
+        this.snapshots = snapshots;
     }
 
-    /** Создание карты: валидации, шифрование номера, сохранение last4. */
+    /** Создание карты: валидации, шифрование номера, blind index, сохранение last4. */
     @Transactional
     public Card create(String number16, String expiryMmYy, String ownerUsername, BigDecimal initialBalance) {
         validateCardNumber(number16);
         validateExpiry(expiryMmYy);
-        if (initialBalance == null || initialBalance.compareTo(BigDecimal.ZERO) < 0)
-            throw new BadRequestException("initialBalance must be >= 0");
+        validateInitialBalance(initialBalance);
+
+        byte[] panHmac = crypto.blindIndex(number16);
+        if (repo.existsByPanHmac(panHmac)) throw new BadRequestException("card number already exists");
 
         User owner = userService.byUsername(ownerUsername);
         Card c = new Card();
-        c.setEncNumber(crypto.encrypt(number16));
+        c.setEncPan(crypto.encrypt(number16));
+        c.setPanHmac(panHmac);
         c.setLast4(number16.substring(number16.length()-4));
         c.setOwner(owner);
-        c.setExpiry(expiryMmYy);
-        c.setStatus(CardStatus.ACTIVE);
+        c.setExpiryDate(DateUtil.parseExpiry(expiryMmYy));
+        c.setStatus(initialStatus(c.getExpiryDate()));
         c.setBalance(initialBalance);
         c.setCreatedAt(LocalDateTime.now());
-        return repo.save(c);
+        try {
+            // flush сразу: гонку двух одинаковых номеров ловит уникальный индекс, а не коммит снаружи
+            repo.saveAndFlush(c);
+        } catch (DataIntegrityViolationException e) {
+            throw new BadRequestException("card number already exists");
+        }
+        // начальный снимок журнала (seq 0): от него считается баланс по проводкам, см. LedgerService
+        snapshots.insertOpening(c.getId(), c.getBalance(), c.getCreatedAt());
+        return c;
+    }
+
+    /** Поиск карты по полному номеру (для администратора): один lookup по pan_hmac, без расшифровки. */
+    @Transactional(readOnly = true)
+    public CardView findByNumber(String number16) {
+        validateCardNumber(number16);
+        return repo.findViewByPanHmac(crypto.blindIndex(number16))
+                .orElseThrow(() -> new NotFoundException("Card not found"));
     }
-    /** Получение своей карты по id. */
-    public Card getOwned(Long cardId, String username) {
-        User u = userService.byUsername(username);
-        return repo.findByIdAndOwnerId(cardId, u.getId())
+    /** Получение своей карты по id: владелец проверяется в том же запросе. */
+    @Transactional(readOnly = true)
+    public CardView getOwned(Long cardId, Long ownerId) {
+        return repo.findOwnedView(cardId, ownerId)
                 .orElseThrow(() -> new NotFoundException("Card not found"));
     }
 
-    /** Список карт пользователя с фильтрами. */
-    public Page<Card> listOwned(String username, CardStatus status, String last4, int page, int size) {
-        User u = userService.byUsername(username);
-        Pageable p = PageRequest.of(safePage(page), safeSize(size));
-        if (status != null) return repo.findByOwnerAndStatus(u, status, p);
-        if (last4 != null && !last4.isBlank()) return repo.findByOwnerAndLast4Containing(u, last4, p);
-        return repo.findByOwner(u, p);
+    /** Любая карта по id (для администратора). */
+    @Transactional(readOnly = true)
+    public CardView getView(Long id) {
+        return repo.findViewById(id).orElseThrow(() -> new NotFoundException("Card not found"));
+    }
+
+    /**
+     * Поиск карт: все заданные фильтры применяются вместе (раньше last4 молча игнорировался при status).
+     * Для пользователя фильтр ограничивается его картами на уровне контроллера (CardSearch.restrictedTo).
+     */
+    @Transactional(readOnly = true)
+    public Page<CardView> search(CardSearch filter, int page, int size) {
+        return repo.search(normalize(filter), PageRequest.of(safePage(page), safeSize(size)));
     }
 
-    /** Список всех карт (для администратора). */
-    public Page<Card> listAll(int page, int size) {
-        return repo.findAll(PageRequest.of(safePage(page), safeSize(size)));
+    /**
+     * Карты пользователя keyset-ом: следующая порция после карты beforeId (null — с начала).
+     * Цена страницы не зависит от глубины: индексный диапазон по id вместо OFFSET, без COUNT.
+     */
+    @Transactional(readOnly = true)
+    public Slice<CardView> scrollOwned(Long ownerId, CardStatus status, Long beforeId, int size) {
+        int s = safeSize(size);
+        Pageable p = PageRequest.of(0, s + 1); // +1 строка — чтобы узнать, есть ли следующая страница
+        long before = beforeId == null ? Long.MAX_VALUE : beforeId;
+        List<CardView> rows = status != null
+                ? repo.scrollViewsByOwnerAndStatus(ownerId, status, before, p)
+                : repo.scrollViewsByOwner(ownerId, before, p);
+        return slice(rows, s);
     }
 
+    /** Все карты keyset-ом (для администратора), при status — только с этим статусом. */
+    @Transactional(readOnly = true)
+    public Slice<CardView> scrollAll(CardStatus status, Long beforeId, int size) {
+        int s = safeSize(size);
+        Pageable p = PageRequest.of(0, s + 1);
+        long before = beforeId == null ? Long.MAX_VALUE : beforeId;
+        List<CardView> rows = status != null
+                ? repo.scrollViewsByStatus(status, before, p)
+                : repo.scrollViews(before, p);
+        return slice(rows, s);
+    }
+
+    /**
+     * Смена статуса любой карты (администратор): один UPDATE и одно чтение проекции для ответа.
+     * Истёкшая карта остаётся EXPIRED: 0 строк у существующей карты — 400.
+     */
+    @Transactional
+    public CardView changeStatus(Long id, CardStatus status) {
+        if (status == CardStatus.ACTIVE) return activate(id);
+        if (repo.updateStatus(id, status) == 0) throw unchanged(repo.findViewById(id));
+        return repo.findViewById(id).orElseThrow(() -> new NotFoundException("card not found"));
+    }
+
+    /** Смена статуса своей карты: чужая или несуществующая — 0 строк и 404, без отдельной проверки владельца. */
     @Transactional
-    public Card block(Long id) {
-        Card c = repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("card not found"));
-        c.setStatus(CardStatus.BLOCKED);
-        repo.save(c);
-        // перечитываем уже с подгруженным owner
-        return repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("card not found"));
+    public CardView changeOwnedStatus(Long id, Long ownerId, CardStatus status) {
+        if (repo.updateStatusOwned(id, ownerId, status) == 0) throw unchanged(repo.findOwnedView(id, ownerId));
+        return repo.findOwnedView(id, ownerId).orElseThrow(() -> new NotFoundException("card not found"));
+    }
+
+    // UPDATE не тронул строку: карты нет (или чужая) — 404, есть — значит, она EXPIRED
+    private static RuntimeException unchanged(Optional<CardView> card) {
+        return card.isPresent()
+                ? new BadRequestException("expired card status cannot be changed")
+                : new NotFoundException("card not found");
     }
 
     @Transactional
-    public Card activate(Long id) {
-        Card c = repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("card not found"));
-        c.setStatus(CardStatus.ACTIVE);
-        repo.save(c);
-        return repo.findById(id)
-                .orElseThrow(() -> new NotFoundException("card not found"));
+    public CardView block(Long id) { return changeStatus(id, CardStatus.BLOCKED); }
+
+    /** Активация: просроченная карта не активируется (400); 0 строк у существующей карты — значит, она истекла. */
+    @Transactional
+    public CardView activate(Long id) {
+        if (repo.activate(id, LocalDate.now()) == 0) {
+            repo.findViewById(id).orElseThrow(() -> new NotFoundException("card not found"));
+            throw new BadRequestException("expired card cannot be activated");
+        }
+        return repo.findViewById(id).orElseThrow(() -> new NotFoundException("card not found"));
+    }
+
+    /**
+     * Массовая смена статуса по списку id: set-based UPDATE ... WHERE id IN порциями по STATUS_CHUNK.
+     * Намеренно без общей транзакции: каждая порция коммитится сразу, блокировки держатся миллисекунды,
+     * а уже заблокированные карты остаются заблокированными, даже если поздняя порция упадёт.
+     * Карты EXPIRED (а при ACTIVE — и просроченные по дате) пропускаются и в результат не входят.
+     * @return число карт, у которых статус действительно изменился
+     */
+    public int changeStatusBulk(Collection<Long> ids, CardStatus status) {
+        validateBulkStatus(status);
+        if (ids == null || ids.isEmpty()) throw new BadRequestException("ids required");
+        if (ids.size() > MAX_BULK_IDS) throw new BadRequestException("at most " + MAX_BULK_IDS + " ids per request");
+        List<Long> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        LocalDate today = LocalDate.now();
+        int affected = 0;
+        for (int from = 0; from < unique.size(); from += STATUS_CHUNK) {
+            List<Long> chunk = unique.subList(from, Math.min(from + STATUS_CHUNK, unique.size()));
+            affected += status == CardStatus.ACTIVE ? repo.activateIn(chunk, today) : repo.updateStatusIn(chunk, status);
+        }
+        return affected;
+    }
+
+    /** Массовая смена статуса всех карт владельца: UPDATE ... LIMIT, пока есть что менять; просроченные не активируются. */
+    public int changeStatusByOwner(String ownerUsername, CardStatus status) {
+        validateBulkStatus(status);
+        Long ownerId = userService.byUsername(ownerUsername).getId();
+        LocalDate today = LocalDate.now();
+        int affected = 0, n;
+        do {
+            n = status == CardStatus.ACTIVE
+                    ? repo.activateByOwnerChunk(ownerId, today, STATUS_CHUNK)
+                    : repo.updateStatusByOwnerChunk(ownerId, status.name(), STATUS_CHUNK);
+            affected += n;
+        } while (n == STATUS_CHUNK);
+        return affected;
     }
 
     @Transactional
     public void delete(Long id) { repo.deleteById(id); }
 
-    /** Вычисляет «эффективный» статус: если срок истёк — EXPIRED. */
+    /**
+     * «Эффективный» статус: если срок истёк — EXPIRED.
+     * Сохранённый статус переводит в EXPIRED CardExpiryJob; сравнение дат здесь лишь закрывает окно
+     * между концом месяца и проходом job (без разбора строки — expiry уже DATE).
+     */
     public CardStatus effectiveStatus(Card c) {
-        return DateUtil.isExpired(c.getExpiry()) ? CardStatus.EXPIRED : c.getStatus();
+        return effectiveStatus(c.getExpiryDate(), c.getStatus());
+    }
+
+    public CardStatus effectiveStatus(LocalDate expiryDate, CardStatus stored) {
+        if (stored == CardStatus.EXPIRED) return stored;
+        return DateUtil.isExpired(expiryDate, LocalDate.now()) ? CardStatus.EXPIRED : stored;
+    }
+
+    /** Полный номер карты: бинарный формат, а для старых строк — Base64 из enc_number. */
+    public String revealNumber(Card c) {
+        return c.getEncPan() != null ? crypto.decrypt(c.getEncPan()) : crypto.decryptLegacy(c.getEncNumber());
     }
 
     /** Маска номера по last4: **** **** **** 1234. */
-    public String masked(Card c) { return "**** **** **** " + c.getLast4(); }
+    public String masked(Card c) { return masked(c.getLast4()); }
+
+    public String masked(String last4) { return "**** **** **** " + last4; }
+
+    private static void validateBulkStatus(CardStatus status) {
+        // EXPIRED выставляется по сроку, вручную — только блокировка/разблокировка
+        if (status != CardStatus.BLOCKED && status != CardStatus.ACTIVE)
+            throw new BadRequestException("status must be BLOCKED or ACTIVE");
+    }
+
+    private static CardSearch normalize(CardSearch f) {
+        String last4 = blankToNull(f.last4());
+        if (last4 != null && !last4.matches("\\d{1,4}"))
+            throw new BadRequestException("last4 must be 1-4 digits (exact or prefix)");
+        String owner = blankToNull(f.ownerUsername());
+        String from = blankToNull(f.expiryFrom());
+        String to = blankToNull(f.expiryTo());
+        if (from != null) validateExpiry(from);
+        if (to != null) validateExpiry(to);
+        if (from != null && to != null && DateUtil.parseExpiry(from).isAfter(DateUtil.parseExpiry(to)))
+            throw new BadRequestException("expiryFrom must be <= expiryTo");
+        if (f.minBalance() != null && f.maxBalance() != null && f.minBalance().compareTo(f.maxBalance()) > 0)
+            throw new BadRequestException("minBalance must be <= maxBalance");
+        return new CardSearch(f.ownerId(), owner, last4, f.status(), from, to, f.minBalance(), f.maxBalance());
+    }
+
+    private static String blankToNull(String s) { return s == null || s.isBlank() ? null : s.trim(); }
+
+    private static <T> Slice<T> slice(List<T> rows, int size) {
+        boolean more = rows.size() > size;
+        return new SliceImpl<>(more ? rows.subList(0, size) : rows, PageRequest.of(0, size), more);
+    }
 
     private int safePage(int p) { return p < 0 ? 0 : p; }
     private int safeSize(int s) { return (s < 1 || s > 100) ? 10 : s; }
 
-    private void validateCardNumber(String number) {
+    // валидации общие с CardImportService — одни и те же правила для одиночного и пакетного выпуска
+    static void validateCardNumber(String number) {
         if (number == null || !number.matches("\\d{16}"))
             throw new BadRequestException("card number must be 16 digits");
     }
-    private void validateExpiry(String expiry) {
+    static void validateInitialBalance(BigDecimal initialBalance) {
+        if (initialBalance == null || initialBalance.compareTo(BigDecimal.ZERO) < 0)
+            throw new BadRequestException("initialBalance must be >= 0");
+    }
+    /** Уже просроченная карта сразу хранится как EXPIRED: фильтр по статусу не должен показывать её как ACTIVE. */
+    static CardStatus initialStatus(LocalDate expiryDate) {
+        return DateUtil.isExpired(expiryDate, LocalDate.now()) ? CardStatus.EXPIRED : CardStatus.ACTIVE;
+    }
+    static void validateExpiry(String expiry) {
         if (expiry == null || !expiry.matches("(0[1-9]|1[0-2])\\/\\d{2}"))
             throw new BadRequestException("expiry must be MM/yy");
     }
-    public Card findByIdOr404(Long id) {
-        return repo.findById(id).orElseThrow(() -> new NotFoundException("Card not found"));
-    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.DataFormat;
+import com.example.bankcards.util.DateUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Полная выгрузка карт и переводов (сверка с core banking).
+ * Почему так:
+ * - строки читаются потоком из forward-only курсора (fetch size в CardRepository/TransferRepository)
+ *   и сразу пишутся в ответ: память не зависит от размера таблицы, нет OFFSET-страниц и COUNT;
+ * - одна read-only транзакция на выгрузку — согласованный снимок на момент начала;
+ * - номер карты не выгружается, только last4.
+ */
+@Slf4j
+@Service
+public class ExportService {
+    static final String[] CARD_COLUMNS = {"id", "last4", "expiry", "status", "balance", "owner"};
+    static final String[] TRANSFER_COLUMNS = {"id", "fromCardId", "toCardId", "userId", "amount", "createdAt"};
+
+    private final CardRepository cards;
+    private final TransferRepository transfers;
+    private final CardService cardService;
+    private final ObjectMapper json;
+
+    public ExportService(CardRepository cards, TransferRepository transfers, CardService cardService,
+                         ObjectMapper json) {
+        this.cards = cards;
+        this.transfers = transfers;
+        this.cardService = cardService;
+        this.json = json;
+    }
+
+    /** Пишет все карты в out (поток не закрывается); возвращает число строк. */
+    @Transactional(readOnly = true)
+    public long exportCards(OutputStream out, DataFormat format) throws IOException {
+        try (Stream<CardView> rows = cards.streamViews()) {
+            RowWriter w = new RowWriter(out, format, CARD_COLUMNS, json);
+            for (Iterator<CardView> it = rows.iterator(); it.hasNext(); ) {
+                CardView v = it.next();
+                w.row(v.id(), v.last4(), DateUtil.formatExpiry(v.expiryDate()),
+                        cardService.effectiveStatus(v.expiryDate(), v.status()).name(), v.balance(), v.ownerUsername());
+            }
+            long n = w.finish();
+            log.info("cards export finished: {} rows", n);
+            return n;
+        }
+    }
+
+    /** Пишет все переводы в out (поток не закрывается); возвращает число строк. */
+    @Transactional(readOnly = true)
+    public long exportTransfers(OutputStream out, DataFormat format) throws IOException {
+        try (Stream<TransferView> rows = transfers.streamViews()) {
+            RowWriter w = new RowWriter(out, format, TRANSFER_COLUMNS, json);
+            for (Iterator<TransferView> it = rows.iterator(); it.hasNext(); ) {
+                TransferView t = it.next();
+                w.row(t.id(), t.fromCardId(), t.toCardId(), t.userId(), t.amount(), t.createdAt());
+            }
+            long n = w.finish();
+            log.info("transfers export finished: {} rows", n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.card.LedgerBalanceResponse;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.Posting;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerDelta;
+import com.example.bankcards.repository.LedgerWriter;
+import com.example.bankcards.repository.PostingRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Журнал проводок по картам (append-only) и контрольные снимки балансов.
+ * Почему так:
+ * - перевод — две проводки (списание и зачисление, в сумме 0); строки только добавляются;
+ * - номер проводки карты (cards.posting_seq) растёт в том же UPDATE, что и баланс, под той же блокировкой строки:
+ *   порядок проводок карты совпадает с порядком коммитов, глобальный счётчик не нужен;
+ * - каждые app.ledger.snapshot-every проводок карты пишется снимок (seq, balance); баланс по журналу —
+ *   последний снимок + проводки после него, т.е. сверка читает ограниченный хвост, а не всю историю;
+ * - cards.balance остаётся рабочим значением для условного UPDATE (проверка средств без чтения), журнал — его аудит.
+ * На одиночный перевод — один INSERT проводок и один INSERT снимков (обычно пустой) сверх самого перевода.
+ */
+@Service
+public class LedgerService {
+    private final PostingRepository postings;
+    private final CardBalanceSnapshotRepository snapshots;
+    private final LedgerWriter writer;
+    private final CardRepository cards;
+    private final int snapshotEvery;
+    private final Counter posted;
+
+    public LedgerService(PostingRepository postings, CardBalanceSnapshotRepository snapshots, LedgerWriter writer,
+                         CardRepository cards, MeterRegistry meters,
+                         @Value("${app.ledger.snapshot-every:100}") int snapshotEvery) {
+        this.postings = postings;
+        this.snapshots = snapshots;
+        this.writer = writer;
+        this.cards = cards;
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.posted = Counter.builder("ledger.postings")
+                .description("Ledger postings appended (two per transfer)")
+                .register(meters);
+    }
+
+    /**
+     * Проводки одиночного перевода. Строки обеих карт уже изменены условными UPDATE этой транзакции
+     * (баланс и posting_seq), перевод сохранён: seq и баланс для снимка читаются из заблокированных строк.
+     */
+    public void post(Long transferId, Long fromCardId, Long toCardId, BigDecimal amount, LocalDateTime at) {
+        postings.insertTransfer(transferId, fromCardId, toCardId, amount, at);
+        snapshots.checkpoint(List.of(fromCardId, toCardId), snapshotEvery, at);
+        posted.increment(2);
+    }
+
+    /** Пакет переводов по картам, загруженным FOR UPDATE: seq и снимки считаются в памяти, запись — при flush. */
+    public Batch batch() { return new Batch(); }
+
+    /** Баланс карты по журналу и сверка с cards.balance — в одном снимке read-only транзакции. */
+    @Transactional(readOnly = true)
+    public LedgerBalanceResponse balance(Long cardId) {
+        CardView card = cards.findViewById(cardId).orElseThrow(() -> new NotFoundException("Card not found"));
+        CardBalanceSnapshot s = snapshots.findFirstByCardIdOrderBySeqDesc(cardId)
+                .orElseThrow(() -> new NotFoundException("Ledger snapshot not found"));
+        LedgerDelta d = postings.deltaAfter(cardId, s.getSeq());
+        BigDecimal ledger = s.getBalance().add(d.amount());
+        return new LedgerBalanceResponse(cardId, s.getSeq(), s.getBalance(), d.count(), ledger, card.balance(),
+                ledger.compareTo(card.balance()) == 0);
+    }
+
+    /** Проводки и снимки одного пакета переводов. */
+    public final class Batch {
+        private final List<Posting> entries = new ArrayList<>();
+        private final List<CardBalanceSnapshot> checkpoints = new ArrayList<>();
+
+        private Batch() { }
+
+        /** Проводка по карте; баланс карты в памяти уже изменён на amount. */
+        public void add(Card card, Transfer t, BigDecimal amount) {
+            card.setPostingSeq(card.getPostingSeq() + 1);
+            entries.add(new Posting(card.getId(), card.getPostingSeq(), t, amount, t.getCreatedAt()));
+            if (card.getPostingSeq() % snapshotEvery == 0)
+                checkpoints.add(new CardBalanceSnapshot(card.getId(), card.getPostingSeq(), card.getBalance(),
+                        t.getCreatedAt()));
+        }
+
+        /** После сохранения переводов: у проводок должен быть id перевода. */
+        public void write() {
+            if (entries.isEmpty()) return;
+            writer.append(entries, checkpoints);
+            posted.increment(entries.size());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.DataFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/** Построчная запись NDJSON (объект на строку) или CSV (заголовок + строки) с буфером, без накопления строк. */
+final class RowWriter {
+    private final Writer out;
+    private final DataFormat format;
+    private final String[] columns;
+    private final JsonGenerator gen;
+    private long count;
+
+    RowWriter(OutputStream os, DataFormat format, String[] columns, ObjectMapper json) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+        this.format = format;
+        this.columns = columns;
+        if (format == DataFormat.NDJSON) {
+            this.gen = json.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setRootValueSeparator(null); // разделитель объектов — только '\n', без пробела Jackson
+        } else {
+            this.gen = null;
+            out.write(String.join(",", columns));
+            out.write('\n');
+        }
+    }
+
+    void row(Object... values) throws IOException {
+        if (format == DataFormat.NDJSON) {
+            gen.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                gen.writeFieldName(columns[i]);
+                Object v = values[i];
+                if (v == null) gen.writeNull();
+                else if (v instanceof Long l) gen.writeNumber(l);
+                else if (v instanceof BigDecimal b) gen.writeNumber(b);
+                else gen.writeString(v.toString());
+            }
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                if (values[i] != null) out.write(csv(values[i].toString()));
+            }
+            out.write('\n');
+        }
+        count++;
+    }
+
+    long finish() throws IOException {
+        if (gen != null) gen.flush();
+        out.flush();
+        return count;
+    }
+
+    private static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.CardAmountRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.DataFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Выписки по картам: входящий остаток, списания и зачисления за период с остатком после каждой строки, исходящий остаток.
+ * Почему так:
+ * - движения читаются двумя курсорами по индексам (from_card_id, created_at) и (to_card_id, created_at)
+ *   и сливаются по (created_at, id) в один проход: без OR по двум колонкам, сортировки в БД и накопления строк;
+ * - входящий остаток = текущий баланс минус движения с начала периода (две агрегации по тем же индексам),
+ *   всё в одной read-only транзакции — баланс и переводы из одного снимка;
+ * - месячные выписки по всем картам идут порциями карт: на порцию — четыре запроса, а не четыре на карту.
+ */
+@Slf4j
+@Service
+public class StatementService {
+    static final String[] COLUMNS = {"cardId", "entry", "transferId", "counterpartyCardId", "createdAt", "amount",
+            "balance"};
+
+    // порядок строк выписки внутри карты — тот же, что у индексов
+    private static final Comparator<TransferView> ORDER =
+            Comparator.comparing(TransferView::createdAt).thenComparing(TransferView::id);
+
+    private final CardRepository cards;
+    private final TransferRepository transfers;
+    private final CardService cardService;
+    private final ObjectMapper json;
+    private final int chunkSize;
+
+    public StatementService(CardRepository cards, TransferRepository transfers, CardService cardService,
+                            ObjectMapper json, @Value("${app.statements.chunk-size:500}") int chunkSize) {
+        this.cards = cards;
+        this.transfers = transfers;
+        this.cardService = cardService;
+        this.json = json;
+        this.chunkSize = chunkSize;
+    }
+
+    /** Выписка по своей карте за [from, to] (даты включительно) в out (поток не закрывается); возвращает число строк. */
+    @Transactional(readOnly = true)
+    public long exportCardStatement(Long ownerId, Long cardId, LocalDate from, LocalDate to, OutputStream out,
+                                    DataFormat format) throws IOException {
+        if (from.isAfter(to)) throw new BadRequestException("from must be <= to");
+        CardView card = cardService.getOwned(cardId, ownerId);
+        RowWriter w = new RowWriter(out, format, COLUMNS, json);
+        writeChunk(List.of(card), from.atStartOfDay(), to.plusDays(1).atStartOfDay(), w);
+        return w.finish();
+    }
+
+    /** Выписки всех карт за месяц одним потоком (карты по возрастанию id); возвращает число строк. */
+    @Transactional(readOnly = true)
+    public long exportMonthlyStatements(YearMonth month, OutputStream out, DataFormat format) throws IOException {
+        LocalDateTime start = month.atDay(1).atStartOfDay();
+        LocalDateTime until = month.plusMonths(1).atDay(1).atStartOfDay();
+        long started = System.nanoTime();
+        long cardCount = 0;
+        RowWriter w = new RowWriter(out, format, COLUMNS, json);
+        try (Stream<CardView> all = cards.streamViews()) {
+            List<CardView> chunk = new ArrayList<>(chunkSize);
+            for (Iterator<CardView> it = all.iterator(); it.hasNext(); ) {
+                chunk.add(it.next());
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, start, until, w);
+                    cardCount += chunk.size();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, start, until, w);
+                cardCount += chunk.size();
+            }
+        }
+        long n = w.finish();
+        log.info("monthly statements {} finished: {} cards, {} rows in {} ms", month, cardCount, n,
+                (System.nanoTime() - started) / 1_000_000);
+        return n;
+    }
+
+    // порция карт по возрастанию id; курсоры движений упорядочены по той же карте, поэтому идут вместе с порцией
+    private void writeChunk(List<CardView> chunk, LocalDateTime start, LocalDateTime until, RowWriter w)
+            throws IOException {
+        List<Long> ids = chunk.stream().map(CardView::id).toList();
+        Map<Long, BigDecimal> sinceStart = new HashMap<>(); // зачисления минус списания с начала периода до сейчас
+        for (CardAmountRow r : transfers.sumDebitsSince(ids, start))
+            sinceStart.merge(r.cardId(), r.amount().negate(), BigDecimal::add);
+        for (CardAmountRow r : transfers.sumCreditsSince(ids, start))
+            sinceStart.merge(r.cardId(), r.amount(), BigDecimal::add);
+
+        try (Stream<TransferView> d = transfers.streamDebits(ids, start, until);
+             Stream<TransferView> c = transfers.streamCredits(ids, start, until)) {
+            Head debits = new Head(d.iterator(), TransferView::fromCardId);
+            Head credits = new Head(c.iterator(), TransferView::toCardId);
+            for (CardView card : chunk) {
+                Long id = card.id();
+                BigDecimal balance = card.balance().subtract(sinceStart.getOrDefault(id, BigDecimal.ZERO));
+                w.row(id, "OPENING", null, null, start, null, balance);
+                while (true) {
+                    TransferView dv = debits.peek(id);
+                    TransferView cv = credits.peek(id);
+                    if (dv == null && cv == null) break;
+                    boolean debit = cv == null || (dv != null && ORDER.compare(dv, cv) <= 0);
+                    TransferView t = debit ? debits.take() : credits.take();
+                    BigDecimal amount = debit ? t.amount().negate() : t.amount();
+                    balance = balance.add(amount);
+                    w.row(id, debit ? "DEBIT" : "CREDIT", t.id(), debit ? t.toCardId() : t.fromCardId(),
+                            t.createdAt(), amount, balance);
+                }
+                w.row(id, "CLOSING", null, null, until, null, balance);
+            }
+        }
+    }
+
+    /** Текущая строка курсора движений: отдаётся, пока относится к запрошенной карте. */
+    private static final class Head {
+        private final Iterator<TransferView> rows;
+        private final Function<TransferView, Long> card;
+        private TransferView head;
+
+        Head(Iterator<TransferView> rows, Function<TransferView, Long> card) {
+            this.rows = rows;
+            this.card = card;
+            this.head = rows.hasNext() ? rows.next() : null;
+        }
+
+        TransferView peek(Long cardId) {
+            return head != null && card.apply(head).equals(cardId) ? head : null;
+        }
+
+        TransferView take() {
+            TransferView t = head;
+            head = rows.hasNext() ? rows.next() : null;
+            return t;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.CursorUtil;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * История переводов пользователя (и по одной карте), новые сверху.
+ * Почему так:
+ * - keyset по (created_at, id) вместо OFFSET: цена страницы не зависит от глубины, COUNT не считается;
+ * - даты и курсор сводятся к одному диапазону индекса ix_transfers_user_created;
+ * - по карте — два диапазона (списания и зачисления) по индексам карты, по size+1 строк каждый,
+ *   слитые в памяти по (created_at, id): OR по двум колонкам не дал бы использовать ни один из них;
+ * - строки — проекция TransferView из самой таблицы transfers: карты и пользователи не читаются.
+ */
+@Service
+public class TransferHistoryService {
+    // границы DATETIME в MySQL: без фильтра по датам диапазон просто «весь»
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1000, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final Comparator<TransferView> NEWEST_FIRST =
+            Comparator.comparing(TransferView::createdAt).thenComparing(TransferView::id).reversed();
+
+    private final TransferRepository transfers;
+
+    public TransferHistoryService(TransferRepository transfers) {
+        this.transfers = transfers;
+    }
+
+    /**
+     * Переводы пользователя, новые сверху: from/to — даты включительно (null — без границы),
+     * before — ключ последней строки предыдущей страницы (null — с начала); cardId != null — только эта карта.
+     */
+    @Transactional(readOnly = true)
+    public Slice<TransferView> scroll(Long userId, Long cardId, LocalDate from, LocalDate to,
+                                      CursorUtil.TimeKey before, int size) {
+        if (from != null && to != null && from.isAfter(to)) throw new BadRequestException("from must be <= to");
+        int s = (size < 1 || size > 100) ? 10 : size;
+        LocalDateTime lower = from != null ? from.atStartOfDay() : MIN_TIME;
+        LocalDateTime beforeTs;
+        long beforeId;
+        if (before != null) {
+            beforeTs = before.time();
+            beforeId = before.id();
+        } else {
+            // верхняя граница исключающая: начало следующего дня, id 0 — строки с этим временем не берутся
+            beforeTs = to != null ? to.plusDays(1).atStartOfDay() : MAX_TIME;
+            beforeId = to != null ? 0 : Long.MAX_VALUE;
+        }
+
+        Pageable p = PageRequest.of(0, s + 1); // +1 строка — чтобы узнать, есть ли следующая страница
+        List<TransferView> rows = cardId != null
+                ? merge(transfers.scrollDebitsByCard(userId, cardId, lower, beforeTs, beforeId, p),
+                        transfers.scrollCreditsByCard(userId, cardId, lower, beforeTs, beforeId, p), s + 1)
+                : transfers.scrollByUser(userId, lower, beforeTs, beforeId, p);
+        boolean more = rows.size() > s;
+        return new SliceImpl<>(more ? rows.subList(0, s) : rows, PageRequest.of(0, s), more);
+    }
+
+    // две ветки уже упорядочены по (created_at desc, id desc); перевод с карты на неё же невозможен — дублей нет
+    private static List<TransferView> merge(List<TransferView> debits, List<TransferView> credits, int limit) {
+        List<TransferView> out = new ArrayList<>(Math.min(limit, debits.size() + credits.size()));
+        int i = 0, j = 0;
+        while (out.size() < limit && (i < debits.size() || j < credits.size())) {
+            boolean debit = j == credits.size()
+                    || (i < debits.size() && NEWEST_FIRST.compare(debits.get(i), credits.get(j)) <= 0);
+            out.add(debit ? debits.get(i++) : credits.get(j++));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет Idempotency-Key переводов старше app.transfers.idempotency.ttl, а также завершённые асинхронные
+ * заявки того же возраста (их ключ живёт в самой заявке): ключ ведёт себя одинаково для синхронного
+ * и асинхронного POST, а transfer_submissions не растёт без предела.
+ * Почему так:
+ * - ключ нужен только на время повторов клиента, без очистки таблица растёт вместе с transfers;
+ * - статус заявки после TTL уже не опрашивают: результат остаётся в transfers (история, выписки);
+ * - DELETE ... LIMIT порциями по индексу created_at: короткие транзакции, переводы не ждут блокировок;
+ * - параллельный запуск на нескольких узлах безопасен — порции просто делят работу.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.transfers.idempotency.sweep-enabled", havingValue = "true")
+public class TransferIdempotencySweeper {
+    private final TransferIdempotencyKeyRepository keys;
+    private final TransferSubmissionRepository submissions;
+    private final Duration ttl;
+    private final int chunkSize;
+    private final Counter swept;
+    private final Counter sweptSubmissions;
+
+    public TransferIdempotencySweeper(TransferIdempotencyKeyRepository keys, TransferSubmissionRepository submissions,
+                                      MeterRegistry meters,
+                                      @Value("${app.transfers.idempotency.ttl:24h}") Duration ttl,
+                                      @Value("${app.transfers.idempotency.chunk-size:1000}") int chunkSize) {
+        this.keys = keys;
+        this.submissions = submissions;
+        this.ttl = ttl;
+        this.chunkSize = chunkSize;
+        this.swept = Counter.builder("transfers.idempotency.swept").register(meters);
+        this.sweptSubmissions = Counter.builder("transfers.async.swept").register(meters);
+    }
+
+    @Scheduled(fixedDelayString = "${app.transfers.idempotency.sweep-interval:10m}")
+    public void onSchedule() {
+        run();
+    }
+
+    /** Один проход; возвращает число удалённых ключей и заявок. */
+    public int run() {
+        LocalDateTime before = LocalDateTime.now().minus(ttl);
+        int total = 0, n;
+        do {
+            n = keys.deleteCreatedBeforeChunk(before, chunkSize);
+            total += n;
+            swept.increment(n);
+        } while (n == chunkSize);
+        if (total > 0) log.info("transfer idempotency keys: {} expired keys removed", total);
+
+        int finished = 0;
+        do {
+            n = submissions.deleteFinishedCreatedBeforeChunk(before, chunkSize);
+            finished += n;
+            sweptSubmissions.increment(n);
+        } while (n == chunkSize);
+        if (finished > 0) log.info("transfer submissions: {} finished submissions removed", finished);
+        return total + finished;
+    }
+}
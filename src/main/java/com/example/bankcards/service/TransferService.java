@@ -1,57 +1,347 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferBatchItemResult;
+import com.example.bankcards.dto.transfer.TransferBatchMode;
+import com.example.bankcards.dto.transfer.TransferBatchResponse;
+import com.example.bankcards.dto.transfer.TransferRequest;
 import com.example.bankcards.entity.*;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ForbiddenException;
+import com.example.bankcards.exception.ServiceUnavailableException;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
 import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 public class TransferService {
+    static final int MAX_KEY_LENGTH = 64;
+    static final int MAX_BATCH_ITEMS = 500;
+
     private final TransferRepository transferRepo;
     private final CardRepository cardRepo;
     private final UserService userService;
     private final CardService cardService;
+    private final TransferIdempotencyKeyRepository idempotencyKeys;
+    private final TransferSubmissionRepository submissions;
+    private final TransferStripes stripes;
+    private final LedgerService ledger;
+    private final TransactionTemplate tx;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Counter retries;
+    private final Counter replays;
+    // недавние ключи этого узла -> id перевода: повтор клиента отвечается без запроса в БД
+    private final Cache<IdempotencyKey, Long> recentKeys;
 
-    public TransferService(TransferRepository transferRepo, CardRepository cardRepo, UserService userService, CardService cardService) {
+    public TransferService(TransferRepository transferRepo, CardRepository cardRepo, UserService userService,
+                           CardService cardService, TransferIdempotencyKeyRepository idempotencyKeys,
+                           TransferSubmissionRepository submissions, TransferStripes stripes,
+                           LedgerService ledger, TransactionTemplate tx, MeterRegistry meters,
+                           @Value("${app.transfers.retry.max-attempts:3}") int maxAttempts,
+                           @Value("${app.transfers.retry.backoff:20ms}") Duration backoff,
+                           @Value("${app.transfers.idempotency.ttl:24h}") Duration idempotencyTtl,
+                           @Value("${app.transfers.idempotency.cache-max-size:100000}") long idempotencyCacheSize) {
         this.transferRepo = transferRepo; this.cardRepo = cardRepo; this.userService = userService; this.cardService = cardService;
+        this.idempotencyKeys = idempotencyKeys;
+        this.submissions = submissions;
+        this.stripes = stripes;
+        this.ledger = ledger;
+        this.tx = tx;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.retries = Counter.builder("transfers.retries")
+                .description("Transfer transactions retried after a deadlock or lock wait timeout")
+                .register(meters);
+        this.replays = Counter.builder("transfers.idempotent.replays")
+                .description("Transfer requests answered with the result of an earlier request with the same key")
+                .register(meters);
+        // TTL кэша = TTL ключа в БД: узел не отвечает повтором дольше, чем ключ защищён в таблице.
+        // Поэтому в кэш кладёт только запрос, вставивший ключ (запись начинается вместе со строкой в БД);
+        // повторы его не перезаписывают — иначе периодический повтор продлевал бы запись после очистки таблицы
+
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(idempotencyCacheSize)
+                .expireAfterWrite(idempotencyTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meters, recentKeys, "transfers.idempotency");
+    }
+
+    /** Перевод без Idempotency-Key. */
+    public Long transfer(Long userId, Long fromCardId, Long toCardId, BigDecimal amount) {
+        return transfer(userId, fromCardId, toCardId, amount, null);
     }
 
     /**
      * Перевод между картами одного пользователя.
      * Валидации: разные карты, обе принадлежат пользователю, статусы ACTIVE и не EXPIRED, сумма > 0, достаточно средств.
+     * Каждая попытка — отдельная транзакция: после deadlock/таймаута блокировки откаченная транзакция
+     * повторяется целиком, не больше app.transfers.retry.max-attempts раз.
+     * С idempotencyKey повтор запроса тем же пользователем возвращает id уже созданного перевода:
+     * из кэша узла, иначе — чтением ключа в транзакции до списания; гонку с ещё не закоммиченным исходным
+     * запросом разрешает нарушение PK ключа или повторная проверка ключа после отказа (400/403).
+     * Ключ сохраняется только вместе с успешным переводом: после отказа повтор выполняется заново.
      */
-    @Transactional
-    public Long transfer(String username, Long fromCardId, Long toCardId, BigDecimal amount) {
-        if (fromCardId == null || toCardId == null) throw new BadRequestException("card ids required");
-        if (fromCardId.equals(toCardId)) throw new BadRequestException("from and to must differ");
-        if (amount == null || amount.compareTo(new BigDecimal("0.01")) < 0)
-            throw new BadRequestException("amount must be >= 0.01");
-
-        var user = userService.byUsername(username);
-        Card from = cardRepo.findByIdAndOwnerId(fromCardId, user.getId())
-                .orElseThrow(() -> new ForbiddenException("not your source card"));
-        Card to = cardRepo.findByIdAndOwnerId(toCardId, user.getId())
-                .orElseThrow(() -> new ForbiddenException("not your target card"));
+    public Long transfer(Long userId, Long fromCardId, Long toCardId, BigDecimal amount, String idempotencyKey) {
+        String invalid = validateTransfer(fromCardId, toCardId, amount);
+        if (invalid != null) throw new BadRequestException(invalid);
 
+        IdempotencyKey key = null;
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH)
+                throw new BadRequestException("Idempotency-Key must be 1.." + MAX_KEY_LENGTH + " characters");
+            key = new IdempotencyKey(userId, idempotencyKey);
+            Long done = recentKeys.getIfPresent(key);
+            if (done != null) {
+                replays.increment();
+                return done;
+            }
+        }
+
+        try {
+            Outcome r = stripes.withCards(List.of(fromCardId, toCardId),
+                    () -> inTransaction(() -> executeOnce(userId, fromCardId, toCardId, amount, idempotencyKey)));
+            if (r.replay()) replays.increment();
+            else if (key != null) recentKeys.put(key, r.transferId()); // после коммита: только сохранённые ключи
+            return r.transferId();
+        } catch (DataIntegrityViolationException e) {
+            // ключ уже сохранён другим запросом (другой узел или параллельный повтор)
+            if (key == null) throw e;
+            return replayOrThrow(key, e);
+        } catch (BadRequestException | ForbiddenException e) {
+            // повтор ждал блокировки карт, пока исходный запрос коммитился, и увидел уже списанный баланс:
+            // если ключ теперь сохранён — это повтор, ответ — исходный перевод, а не ошибка
+            if (key == null) throw e;
+            return replayOrThrow(key, e);
+        }
+    }
+
+    private Long replayOrThrow(IdempotencyKey key, RuntimeException e) {
+        Long done = idempotencyKeys.findTransferId(key.userId(), key.key()).orElseThrow(() -> e);
+        replays.increment();
+        return done;
+    }
+
+    // промах кэша узла (другой узел, вытеснение): ключ проверяется в БД до UPDATE карт —
+    // повтор не трогает строки карт и не получает отказ из-за уже списанных исходным запросом денег
+    private Outcome executeOnce(Long userId, Long fromCardId, Long toCardId, BigDecimal amount, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            Optional<Long> done = idempotencyKeys.findTransferId(userId, idempotencyKey);
+            if (done.isPresent()) return new Outcome(done.get(), true);
+        }
+        return new Outcome(execute(userId, fromCardId, toCardId, amount, idempotencyKey), false);
+    }
+
+    /**
+     * Пакет переводов между картами пользователя в одной транзакции.
+     * Все карты пакета блокируются одним SELECT ... FOR UPDATE (по возрастанию id), переводы применяются
+     * по порядку к балансам в памяти, затем изменённые карты и все Transfer пишутся JDBC batch-ами при flush:
+     * N переводов — 1 SELECT + несколько batch UPDATE/INSERT вместо 3N запросов.
+     * ALL_OR_NOTHING: первая ошибка ("item i: ...") откатывает весь пакет; PER_ITEM: ошибка — в результате элемента.
+     */
+    public TransferBatchResponse transferBatch(Long userId, List<TransferRequest> items, TransferBatchMode mode) {
+        if (items == null || items.isEmpty()) throw new BadRequestException("items required");
+        if (items.size() > MAX_BATCH_ITEMS) throw new BadRequestException("at most " + MAX_BATCH_ITEMS + " items per batch");
+        boolean atomic = mode != TransferBatchMode.PER_ITEM;
+
+        String[] invalid = new String[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            TransferRequest r = items.get(i);
+            invalid[i] = r == null ? "item required" : validateTransfer(r.fromCardId(), r.toCardId(), r.amount());
+            if (invalid[i] != null && atomic) throw new BadRequestException("item " + i + ": " + invalid[i]);
+        }
+        // каждая попытка начинает с ошибок входных данных: ошибки откаченной попытки не переносятся
+        SortedSet<Long> cardIds = new TreeSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (invalid[i] != null) continue;
+            cardIds.add(items.get(i).fromCardId());
+            cardIds.add(items.get(i).toCardId());
+        }
+        return stripes.withCards(cardIds,
+                () -> inTransaction(() -> executeBatch(userId, items, cardIds, invalid.clone(), atomic)));
+    }
+
+    private TransferBatchResponse executeBatch(Long userId, List<TransferRequest> items, SortedSet<Long> cardIds,
+                                               String[] errors, boolean atomic) {
+        Map<Long, Card> cards = new HashMap<>();
+        if (!cardIds.isEmpty()) for (Card c : cardRepo.findOwnedForUpdate(cardIds, userId)) cards.put(c.getId(), c);
+
+        User user = userService.reference(userId);
+        LocalDateTime now = LocalDateTime.now();
+        Transfer[] created = new Transfer[items.size()];
+        LedgerService.Batch entries = ledger.batch();
+        for (int i = 0; i < items.size(); i++) {
+            if (errors[i] != null) continue;
+            TransferRequest r = items.get(i);
+            Card from = cards.get(r.fromCardId()), to = cards.get(r.toCardId());
+            String error = itemError(from, to, r.amount());
+            if (error != null) {
+                if (!atomic) {
+                    errors[i] = error;
+                    continue;
+                }
+                String message = "item " + i + ": " + error;
+                throw from == null || to == null ? new ForbiddenException(message) : new BadRequestException(message);
+            }
+            // баланс в памяти: следующие элементы пакета видят результат предыдущих
+            from.setBalance(from.getBalance().subtract(r.amount()));
+            to.setBalance(to.getBalance().add(r.amount()));
+            created[i] = Transfer.builder()
+                    .fromCard(from).toCard(to).user(user)
+                    .amount(r.amount()).createdAt(now)
+                    .build();
+            entries.add(from, created[i], r.amount().negate());
+            entries.add(to, created[i], r.amount());
+        }
+        // id из pooled-последовательности назначаются при persist; сами INSERT уходят batch-ами при коммите
+        transferRepo.saveAll(Arrays.stream(created).filter(Objects::nonNull).toList());
+        entries.write();
+
+        List<TransferBatchItemResult> results = new ArrayList<>(items.size());
+        int succeeded = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (created[i] != null) succeeded++;
+            results.add(new TransferBatchItemResult(i, created[i] != null ? created[i].getId() : null, errors[i]));
+        }
+        return new TransferBatchResponse(succeeded, items.size() - succeeded, results);
+    }
+
+    // те же проверки и сообщения, что у одиночного перевода; from/to == null — карта не найдена среди своих
+    private String itemError(Card from, Card to, BigDecimal amount) {
+        if (from == null) return "not your source card";
+        if (to == null) return "not your target card";
         if (cardService.effectiveStatus(from) != CardStatus.ACTIVE || cardService.effectiveStatus(to) != CardStatus.ACTIVE)
-            throw new BadRequestException("cards must be ACTIVE");
-        if (from.getBalance().compareTo(amount) < 0)
-            throw new BadRequestException("insufficient funds");
+            return "cards must be ACTIVE";
+        if (from.getBalance().compareTo(amount) < 0) return "insufficient funds";
+        return null;
+    }
+
+    /**
+     * Выполняет принятую асинхронную заявку (см. AsyncTransferService). Строка заявки блокируется первой,
+     * перевод и статус COMPLETED коммитятся вместе. Бизнес-ошибки пробрасываются — заявку отклоняет вызывающий.
+     * false — заявка уже не PENDING (выполнена или отклонена другим узлом).
+     */
+    public boolean executeSubmission(Long submissionId) {
+        TransferSubmission s = submissions.findById(submissionId).orElse(null);
+        if (s == null || s.getStatus() != TransferSubmissionStatus.PENDING) return false;
+        return stripes.withCards(List.of(s.getFromCardId(), s.getToCardId()), () -> inTransaction(() -> {
+            TransferSubmission locked = submissions.findPendingForUpdate(submissionId).orElse(null);
+            if (locked == null) return false;
+            Long transferId = execute(locked.getUserId(), locked.getFromCardId(), locked.getToCardId(),
+                    locked.getAmount(), null);
+            locked.setStatus(TransferSubmissionStatus.COMPLETED);
+            locked.setTransferId(transferId);
+            locked.setCompletedAt(LocalDateTime.now());
+            return true;
+        }));
+    }
+
+    /** Проверки входных данных перевода; null — всё корректно. */
+    static String validateTransfer(Long fromCardId, Long toCardId, BigDecimal amount) {
+        if (fromCardId == null || toCardId == null) return "card ids required";
+        if (fromCardId.equals(toCardId)) return "from and to must differ";
+        if (amount == null || amount.compareTo(new BigDecimal("0.01")) < 0) return "amount must be >= 0.01";
+        return null;
+    }
 
-        from.setBalance(from.getBalance().subtract(amount));
-        to.setBalance(to.getBalance().add(amount));
+    /**
+     * Выполняет action в отдельной транзакции; после deadlock/таймаута блокировки откаченная транзакция
+     * повторяется целиком, не больше app.transfers.retry.max-attempts раз, затем — 503.
+     */
+    private <T> T inTransaction(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.execute(s -> action.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("transfer failed after {} attempts: {}", attempt, e.getMessage());
+                    throw new ServiceUnavailableException("transfer is contended, retry later");
+                }
+                retries.increment();
+                pause(attempt);
+            }
+        }
+    }
 
+    /**
+     * Одна попытка внутри транзакции: списание и зачисление — условные UPDATE (см. CardRepository.debit/credit),
+     * сущности карт не загружаются. UPDATE идут по возрастанию id: встречные переводы A->B и B->A
+     * ждут друг друга, а не взаимоблокируются. Если одна из сторон не прошла, исключение откатывает и другую.
+     */
+    private Long execute(Long userId, Long fromCardId, Long toCardId, BigDecimal amount, String idempotencyKey) {
+        LocalDate today = LocalDate.now();
+        if (fromCardId < toCardId) {
+            debit(userId, fromCardId, amount, today);
+            credit(userId, toCardId, amount, today);
+        } else {
+            credit(userId, toCardId, amount, today);
+            debit(userId, fromCardId, amount, today);
+        }
+
+        // карты и пользователь — прокси без SELECT, нужны только их id для внешних ключей
         Transfer t = Transfer.builder()
-                .fromCard(from).toCard(to).user(user)
+                .fromCard(cardRepo.getReferenceById(fromCardId)).toCard(cardRepo.getReferenceById(toCardId))
+                .user(userService.reference(userId))
                 .amount(amount).createdAt(LocalDateTime.now())
                 .build();
         transferRepo.save(t);
+        ledger.post(t.getId(), fromCardId, toCardId, amount, t.getCreatedAt());
+        // последним: параллельный повтор с тем же ключом ждёт блокировки строки ключа и получает нарушение PK
+        if (idempotencyKey != null) idempotencyKeys.insert(userId, idempotencyKey, t.getId(), t.getCreatedAt());
         return t.getId();
     }
+
+    private void debit(Long userId, Long cardId, BigDecimal amount, LocalDate today) {
+        if (cardRepo.debit(cardId, userId, amount, today) == 1) return;
+        // отказ — редкий путь: одно чтение, чтобы ответить, какое условие не выполнено
+        CardView c = cardRepo.findOwnedView(cardId, userId)
+                .orElseThrow(() -> new ForbiddenException("not your source card"));
+        if (cardService.effectiveStatus(c.expiryDate(), c.status()) != CardStatus.ACTIVE)
+            throw new BadRequestException("cards must be ACTIVE");
+        throw new BadRequestException("insufficient funds");
+    }
+
+    private void credit(Long userId, Long cardId, BigDecimal amount, LocalDate today) {
+        if (cardRepo.credit(cardId, userId, amount, today) == 1) return;
+        if (cardRepo.findOwnedView(cardId, userId).isEmpty()) throw new ForbiddenException("not your target card");
+        throw new BadRequestException("cards must be ACTIVE");
+    }
+
+    // линейный рост + случайная добавка: повторы конфликтующих переводов не совпадают по времени
+    private void pause(int attempt) {
+        long base = backoff.toMillis() * attempt;
+        if (base <= 0) return;
+        try {
+            Thread.sleep(base + ThreadLocalRandom.current().nextLong(base));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("transfer interrupted, retry later");
+        }
+    }
+
+    private record IdempotencyKey(Long userId, String key) { }
+
+    private record Outcome(Long transferId, boolean replay) { }
 }
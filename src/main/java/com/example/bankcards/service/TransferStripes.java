@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Опциональная сериализация переводов на узле: карты разбиты на полосы (stripe = id mod N),
+ * в каждой полосе одновременно выполняется не больше одной транзакции перевода этого узла.
+ * Почему так:
+ * - переводы по «горячей» карте ждут в памяти, а не в очереди блокировок InnoDB: не держат соединение из пула,
+ *   не упираются в innodb_lock_wait_timeout и не уходят в повторы;
+ * - полосы перевода берутся по возрастанию номера — встречные переводы и пакеты не взаимоблокируются;
+ * - источник истины остаётся в БД (узлов несколько, карты меняют и другие пути), поэтому это только
+ *   очередь перед транзакцией, а не хранение балансов в памяти; между узлами порядок по-прежнему даёт InnoDB.
+ */
+@Component
+public class TransferStripes {
+    private final boolean enabled;
+    private final ReentrantLock[] stripes;
+    private final long maxWaitNanos;
+    private final Counter timeouts;
+
+    public TransferStripes(MeterRegistry meters,
+                           @Value("${app.transfers.stripes.enabled:false}") boolean enabled,
+                           @Value("${app.transfers.stripes.count:1024}") int count,
+                           @Value("${app.transfers.stripes.max-wait:2s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.stripes = new ReentrantLock[enabled ? count : 0];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.timeouts = Counter.builder("transfers.stripes.timeouts")
+                .description("Transfers rejected after waiting too long for a busy card stripe")
+                .register(meters);
+    }
+
+    /**
+     * Выполняет action, удерживая полосы всех карт; блокировки снимаются после возврата — т.е. после коммита,
+     * следующий перевод по той же карте видит уже сохранённый баланс. Не дождались за max-wait — 503.
+     */
+    public <T> T withCards(Collection<Long> cardIds, Supplier<T> action) {
+        if (!enabled) return action.get();
+        SortedSet<Integer> indexes = new TreeSet<>();
+        for (Long id : cardIds) indexes.add(Math.floorMod(id, stripes.length));
+
+        ReentrantLock[] held = new ReentrantLock[indexes.size()];
+        int n = 0;
+        long deadline = System.nanoTime() + maxWaitNanos;
+        try {
+            for (int i : indexes) {
+                ReentrantLock lock = stripes[i];
+                if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    timeouts.increment();
+                    throw new ServiceUnavailableException("transfer is contended, retry later");
+                }
+                held[n++] = lock;
+            }
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("transfer interrupted, retry later");
+        } finally {
+            while (n > 0) held[--n].unlock();
+        }
+    }
+}
@@ -5,19 +5,30 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.NotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetailsService;
+import com.example.bankcards.security.TokenEpochService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.HashSet;
 import java.util.Set;
 
 @Service
 public class UserService {
     private final UserRepository repo;
     private final PasswordEncoder encoder;
+    private final BankUserDetailsService userDetails;
+    private final TokenEpochService tokenEpochs;
 
-    public UserService(UserRepository repo, PasswordEncoder encoder) {
+    public UserService(UserRepository repo, PasswordEncoder encoder,
+                       BankUserDetailsService userDetails, TokenEpochService tokenEpochs) {
         this.repo = repo;
         this.encoder = encoder;
+        this.userDetails = userDetails;
+        this.tokenEpochs = tokenEpochs;
     }
     /** Регистрация обычного пользователя (ROLE_USER). */
     public User register(String username, String rawPassword){
@@ -31,8 +42,49 @@ public class UserService {
         return repo.save(u);
     }
 
+    /** Смена пароля: старые токены отзываются, кэш UserDetails сбрасывается. */
+    @Transactional
+    public void changePassword(Long userId, String rawPassword) {
+        if (rawPassword == null || rawPassword.length() < 6) throw new BadRequestException("Password too short");
+        User u = byId(userId);
+        u.setPassword(encoder.encode(rawPassword));
+        afterChange(u);
+    }
+
+    /** Смена ролей: токены со старыми ролями перестают приниматься. */
+    @Transactional
+    public void changeRoles(Long userId, Set<Role> roles) {
+        if (roles == null || roles.isEmpty()) throw new BadRequestException("roles required");
+        User u = byId(userId);
+        u.setRoles(new HashSet<>(roles));
+        afterChange(u);
+    }
+
+    /** Ссылка на пользователя по id без SELECT — для внешних ключей (transfers.user_id). */
+    public User reference(Long id) {
+        return repo.getReferenceById(id);
+    }
+
     /** Поиск пользователя по имени. */
     public User byUsername(String username) {
         return repo.findByUsername(username).orElseThrow(() -> new NotFoundException("User not found"));
     }
-}
\ No newline at end of file
+
+    private User byId(Long id) {
+        return repo.findById(id).orElseThrow(() -> new NotFoundException("User not found"));
+    }
+
+    private void afterChange(User u) {
+        tokenEpochs.revokeAll(u.getId());
+        String username = u.getUsername();
+        // сбрасываем после коммита, чтобы параллельный логин не закэшировал старые данные
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { userDetails.evict(username); }
+            });
+        } else {
+            userDetails.evict(username);
+        }
+    }
+}
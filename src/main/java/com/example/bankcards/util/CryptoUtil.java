@@ -1,16 +1,31 @@
 package com.example.bankcards.util;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.example.bankcards.config.CryptoProperties;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.security.SecureRandom;
 
+/**
+ * AES-GCM для номеров карт с keyring: каждый шифртекст помнит id ключа, поэтому ключ можно сменить
+ * без остановки — новые записи идут активным ключом, старые читаются прежним, пока их не перешифрует
+ * CardKeyRotationJob.
+ * Бинарный формат (cards.enc_pan, VARBINARY): v2 — [2][id ключа 1 байт][IV 12 байт][шифртекст + тег 16 байт];
+ * v1 — [1][IV][шифртекст + тег], всегда ключ 0. Только читается.
+ * Старый текстовый формат "base64(iv):base64(cipher)" (cards.enc_number, ключ 0) только читается — см. decryptLegacy.
+ * Blind index (cards.pan_hmac): HMAC-SHA256 номера отдельным ключом — детерминирован, поэтому
+ * позволяет искать карту по полному номеру индексом, не расшифровывая строки.
+ */
 @Component
 public class CryptoUtil {
 
@@ -18,53 +33,161 @@ public class CryptoUtil {
     private static final String TRANSFORM = "AES/GCM/NoPadding";
     private static final int GCM_TAG_LENGTH = 128; // bits
     private static final int IV_LEN = 12;          // bytes for GCM (96 bits)
+    private static final String HMAC = "HmacSHA256";
+    static final byte FORMAT_V1 = 1;
+    static final byte FORMAT_V2 = 2;
+    static final int LEGACY_KEY_ID = 0;
 
-    private final SecretKey key;
-    private final SecureRandom random = new SecureRandom();
+    // почему: Cipher.getInstance — поиск провайдера на каждый вызов; Cipher не потокобезопасен,
+    // поэтому держим по экземпляру на поток и только переинициализируем его новым IV
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TRANSFORM + " is not available", e);
+        }
+    });
+    // один общий SecureRandom — точка конкуренции при массовом шифровании; по генератору на поток
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private final Map<Integer, SecretKey> keyring;
+    private final int activeKeyId;
+    private final SecretKey activeKey;
+    // Mac инициализирован ключом один раз на поток; doFinal сбрасывает его для следующего вызова
+    private final ThreadLocal<Mac> macs;
 
-    public CryptoUtil(@Value("${app.crypto.aes-key-base64}") String base64Key) {
-        if (base64Key == null || base64Key.isBlank()) {
-            throw new IllegalStateException("app.crypto.aes-key-base64 is empty: provide Base64 of 16/24/32 bytes");
+    public CryptoUtil(CryptoProperties props) {
+        Map<Integer, SecretKey> ring = new HashMap<>();
+        ring.put(LEGACY_KEY_ID, aesKey("app.crypto.aes-key-base64", props.aesKeyBase64()));
+        if (props.keys() != null) {
+            props.keys().forEach((id, base64) -> {
+                if (id == null || id < 1 || id > 255)
+                    throw new IllegalStateException("app.crypto.keys: key id must be 1..255, got " + id);
+                ring.put(id, aesKey("app.crypto.keys." + id, base64));
+            });
         }
-        byte[] k;
-        try {
-            k = Base64.getDecoder().decode(base64Key);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException("app.crypto.aes-key-base64 is not valid Base64", e);
+        this.keyring = Map.copyOf(ring);
+        this.activeKeyId = props.activeKeyId();
+        this.activeKey = keyring.get(activeKeyId);
+        if (activeKey == null) {
+            throw new IllegalStateException("app.crypto.active-key-id=" + activeKeyId + " is not in the keyring");
         }
-        int len = k.length;
-        if (len != 16 && len != 24 && len != 32) {
-            throw new IllegalStateException("Invalid AES key length: " + len + " bytes (need 16/24/32)");
+
+        byte[] hk = decodeKey("app.crypto.hmac-key-base64", props.hmacKeyBase64());
+        if (hk.length < 32) {
+            throw new IllegalStateException("Invalid HMAC key length: " + hk.length + " bytes (need >= 32)");
         }
-        this.key = new SecretKeySpec(k, ALG);
+        SecretKeySpec hmacKey = new SecretKeySpec(hk, HMAC);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC);
+                mac.init(hmacKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(HMAC + " is not available", e);
+            }
+        });
     }
 
-    public String encrypt(String plain) {
+    /** Blind index номера карты: 32 байта HMAC-SHA256, одинаковые для одинаковых номеров. */
+    public byte[] blindIndex(String number) {
+        return macs.get().doFinal(number.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Шифрует активным ключом в компактный бинарный формат v2. */
+    public byte[] encrypt(String plain) {
         try {
+            byte[] plainBytes = plain.getBytes(StandardCharsets.UTF_8);
+            byte[] out = new byte[2 + IV_LEN + plainBytes.length + GCM_TAG_LENGTH / 8];
+            out[0] = FORMAT_V2;
+            out[1] = (byte) activeKeyId;
             byte[] iv = new byte[IV_LEN];
-            random.nextBytes(iv);
-            Cipher cipher = Cipher.getInstance(TRANSFORM);
-            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
-            byte[] enc = cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(enc);
+            RANDOM.get().nextBytes(iv);
+            System.arraycopy(iv, 0, out, 2, IV_LEN);
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, activeKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            cipher.doFinal(plainBytes, 0, plainBytes.length, out, 2 + IV_LEN);
+            return out;
         } catch (Exception e) {
             throw new IllegalStateException("Encrypt failed: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
         }
     }
 
-    public String decrypt(String token) {
+    public String decrypt(byte[] blob) {
+        try {
+            int header = header(blob);
+            if (blob.length < header + IV_LEN + GCM_TAG_LENGTH / 8)
+                throw new IllegalArgumentException("cipher blob is too short");
+            int keyId = keyId(blob);
+            SecretKey key = keyring.get(keyId);
+            if (key == null) throw new IllegalArgumentException("key " + keyId + " is not in the keyring");
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, blob, header, IV_LEN));
+            ByteBuffer in = ByteBuffer.wrap(blob, header + IV_LEN, blob.length - header - IV_LEN);
+            ByteBuffer dec = ByteBuffer.allocate(cipher.getOutputSize(in.remaining()));
+            cipher.doFinal(in, dec);
+            return new String(dec.array(), 0, dec.position(), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new IllegalStateException("Decrypt failed: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Id ключа, которым зашифрован blob (v1 — всегда ключ 0). */
+    public int keyId(byte[] blob) {
+        return header(blob) == 1 ? LEGACY_KEY_ID : blob[1] & 0xFF;
+    }
+
+    /** true, если blob уже в формате v2 под активным ключом и перешифровывать его не нужно. */
+    public boolean isCurrent(byte[] blob) {
+        return blob != null && blob.length > 1 && blob[0] == FORMAT_V2 && (blob[1] & 0xFF) == activeKeyId;
+    }
+
+    public int activeKeyId() { return activeKeyId; }
+
+    /** Чтение строк, записанных до перехода на бинарный формат ("base64(iv):base64(cipher)"). */
+    public String decryptLegacy(String token) {
         try {
             String[] parts = token.split(":", 2);
             if (parts.length != 2) throw new IllegalArgumentException("cipher token has no IV separator ':'");
             byte[] iv = Base64.getDecoder().decode(parts[0]);
             if (iv.length != IV_LEN) throw new IllegalArgumentException("IV length is " + iv.length + " (need " + IV_LEN + ")");
             byte[] cipherBytes = Base64.getDecoder().decode(parts[1]);
-            Cipher cipher = Cipher.getInstance(TRANSFORM);
-            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, keyring.get(LEGACY_KEY_ID), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
             byte[] dec = cipher.doFinal(cipherBytes);
             return new String(dec, StandardCharsets.UTF_8);
         } catch (Exception e) {
             throw new IllegalStateException("Decrypt failed: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /** Длина заголовка перед IV: v1 — только версия, v2 — версия и id ключа. */
+    private static int header(byte[] blob) {
+        if (blob == null || blob.length < 2) throw new IllegalArgumentException("cipher blob is too short");
+        return switch (blob[0]) {
+            case FORMAT_V1 -> 1;
+            case FORMAT_V2 -> 2;
+            default -> throw new IllegalArgumentException("unknown cipher format version " + blob[0]);
+        };
+    }
+
+    private static SecretKey aesKey(String property, String base64) {
+        byte[] k = decodeKey(property, base64);
+        int len = k.length;
+        if (len != 16 && len != 24 && len != 32) {
+            throw new IllegalStateException("Invalid AES key length: " + len + " bytes (need 16/24/32)");
+        }
+        return new SecretKeySpec(k, ALG);
+    }
+
+    private static byte[] decodeKey(String property, String base64) {
+        if (base64 == null || base64.isBlank()) {
+            throw new IllegalStateException(property + " is empty: provide a Base64 encoded key");
+        }
+        try {
+            return Base64.getDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(property + " is not valid Base64", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.BadRequestException;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор keyset-пагинации: Base64URL от [версия][ключ последней строки].
+ * Версия 1 — id (списки карт), версия 2 — (время, id) для лент по времени (история переводов).
+ * Клиент не должен разбирать курсор — формат можно поменять, подняв версию.
+ */
+public class CursorUtil {
+    private static final byte VERSION = 1;
+    private static final byte TIME_VERSION = 2;
+
+    /** Ключ строки ленты по времени: время (UTC-секунды + наносекунды в курсоре) и id как разрешение равенства. */
+    public record TimeKey(LocalDateTime time, long id) { }
+
+    public static String encode(long lastId) {
+        byte[] raw = ByteBuffer.allocate(1 + Long.BYTES).put(VERSION).putLong(lastId).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    public static String encode(LocalDateTime time, long lastId) {
+        byte[] raw = ByteBuffer.allocate(1 + Long.BYTES + Integer.BYTES + Long.BYTES).put(TIME_VERSION)
+                .putLong(time.toEpochSecond(ZoneOffset.UTC)).putInt(time.getNano()).putLong(lastId).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    /** id из курсора; null, если курсора нет (первая страница). */
+    public static Long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        ByteBuffer buf = open(cursor, VERSION, Long.BYTES);
+        return buf.getLong();
+    }
+
+    /** (время, id) из курсора; null, если курсора нет (первая страница). */
+    public static TimeKey decodeTimeKey(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        ByteBuffer buf = open(cursor, TIME_VERSION, Long.BYTES + Integer.BYTES + Long.BYTES);
+        long seconds = buf.getLong();
+        int nanos = buf.getInt();
+        long id = buf.getLong();
+        if (nanos < 0 || nanos > 999_999_999) throw new BadRequestException("invalid cursor");
+        try {
+            return new TimeKey(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC), id);
+        } catch (java.time.DateTimeException e) {
+            throw new BadRequestException("invalid cursor");
+        }
+    }
+
+    private static ByteBuffer open(String cursor, byte version, int payload) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            if (buf.remaining() != 1 + payload || buf.get() != version) throw new IllegalArgumentException();
+            return buf;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("invalid cursor");
+        }
+    }
+}
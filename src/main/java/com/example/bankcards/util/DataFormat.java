@@ -0,0 +1,34 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.BadRequestException;
+import org.springframework.http.MediaType;
+
+/** Построчные форматы обмена данными (импорт/экспорт): NDJSON — объект на строку, CSV — с заголовком. */
+public enum DataFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+    CSV(MediaType.parseMediaType("text/csv"), "csv");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    DataFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType mediaType() { return mediaType; }
+
+    public String extension() { return extension; }
+
+    /** По Content-Type загрузки. */
+    public static DataFormat of(MediaType type) {
+        for (DataFormat f : values()) if (type.isCompatibleWith(f.mediaType)) return f;
+        throw new BadRequestException("content type must be application/x-ndjson or text/csv");
+    }
+
+    /** По параметру запроса: ndjson | csv. */
+    public static DataFormat of(String name) {
+        for (DataFormat f : values()) if (f.extension.equalsIgnoreCase(name)) return f;
+        throw new BadRequestException("format must be ndjson or csv");
+    }
+}
@@ -1,13 +1,26 @@
 package com.example.bankcards.util;
 
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 
+/**
+ * Срок карты: в API — "MM/yy", в БД — DATE последнего дня месяца (cards.expiry_date).
+ * Строка разбирается только на входе (создание, фильтры), при выдаче — форматируется из даты.
+ */
 public class DateUtil {
     private static final DateTimeFormatter FMT = DateTimeFormatter.ofPattern("MM/yy");
 
-    public static Boolean isExpired(String mmYY){
-        YearMonth ym = YearMonth.parse(mmYY, FMT);
-        return ym.isBefore(YearMonth.now());
+    /** "12/29" -> 2029-12-31: карта действует до конца месяца включительно. */
+    public static LocalDate parseExpiry(String mmYY) {
+        return YearMonth.parse(mmYY, FMT).atEndOfMonth();
+    }
+
+    public static String formatExpiry(LocalDate expiryDate) {
+        return expiryDate.format(FMT);
+    }
+
+    public static boolean isExpired(LocalDate expiryDate, LocalDate today) {
+        return expiryDate.isBefore(today);
     }
 }
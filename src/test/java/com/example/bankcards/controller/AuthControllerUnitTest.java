@@ -6,6 +6,7 @@ import com.example.bankcards.dto.auth.RegisterRequest;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.security.JwtService;
+import com.example.bankcards.security.PasswordHashingExecutor;
 import com.example.bankcards.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,6 +21,9 @@ import org.springframework.security.core.Authentication;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -32,6 +36,7 @@ class AuthControllerUnitTest {
     @Mock private UserService userService;
     @Mock private AuthenticationManager authenticationManager;
     @Mock private JwtService jwtService;
+    @Mock private PasswordHashingExecutor hashing;
 
     @InjectMocks private AuthController controller;
 
@@ -43,22 +48,27 @@ class AuthControllerUnitTest {
     }
 
     @BeforeEach
-    void resetMocks() { Mockito.reset(userService, authenticationManager, jwtService); }
+    void resetMocks() {
+        Mockito.reset(userService, authenticationManager, jwtService, hashing);
+        // пул хэширования в тестах выполняет задачу в текущем потоке
+        when(hashing.submit(anyString(), any())).thenAnswer(inv ->
+                CompletableFuture.supplyAsync((Supplier<?>) inv.getArgument(1), Runnable::run));
+    }
 
     @Test
     void register_returnsJwtAnd200_andCallsDependenciesWithExactArgs() {
         // given
         String username = "alice";
         String rawPwd   = "p@ss";
-        Set<Role> roles = new HashSet<>(); // можно оставить пустым — важна передача ровно того же Set
+        Set<Role> roles = new HashSet<>(); // можно оставить пустым — важна передача ровно того же User
         User saved = mkUser(username, roles);
 
         when(userService.register(username, rawPwd)).thenReturn(saved);
-        when(jwtService.generateToken(username, roles)).thenReturn("JWT-123");
+        when(jwtService.generateToken(saved)).thenReturn("JWT-123");
 
         // when
         ResponseEntity<AuthResponse> resp =
-                controller.register(new RegisterRequest(username, rawPwd));
+                controller.register(new RegisterRequest(username, rawPwd)).join();
 
         // then
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
@@ -68,9 +78,10 @@ class AuthControllerUnitTest {
         // verify exact calls / order
         InOrder inOrder = inOrder(userService, jwtService);
         inOrder.verify(userService).register(eq(username), eq(rawPwd));
-        inOrder.verify(jwtService).generateToken(eq(username), same(roles)); // тот же Set-объект
+        inOrder.verify(jwtService).generateToken(same(saved)); // тот же User — в токен уйдут его id, роли и epoch
         inOrder.verifyNoMoreInteractions();
         verifyNoInteractions(authenticationManager);
+        verify(hashing).submit(eq("register"), any());
     }
 
     @Test
@@ -88,11 +99,11 @@ class AuthControllerUnitTest {
         when(authenticationManager.authenticate(any(Authentication.class)))
                 .thenReturn(returnedAuth);
         when(userService.byUsername(username)).thenReturn(found);
-        when(jwtService.generateToken(username, roles)).thenReturn("JWT-OK");
+        when(jwtService.generateToken(found)).thenReturn("JWT-OK");
 
         // when
         ResponseEntity<AuthResponse> resp =
-                controller.login(new LoginRequest(username, rawPwd));
+                controller.login(new LoginRequest(username, rawPwd)).join();
 
         // then
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
@@ -110,7 +121,7 @@ class AuthControllerUnitTest {
         InOrder order = inOrder(authenticationManager, userService, jwtService);
         order.verify(authenticationManager).authenticate(any(Authentication.class));
         order.verify(userService).byUsername(eq(username));
-        order.verify(jwtService).generateToken(eq(username), same(roles));
+        order.verify(jwtService).generateToken(same(found));
         order.verifyNoMoreInteractions();
     }
 
@@ -120,9 +131,10 @@ class AuthControllerUnitTest {
         when(authenticationManager.authenticate(any(Authentication.class)))
                 .thenThrow(new BadCredentialsException("bad creds"));
 
-        // when/then
-        assertThrows(BadCredentialsException.class,
-                () -> controller.login(new LoginRequest("x", "y")));
+        // when/then: ошибка приходит через future, Spring MVC разворачивает CompletionException
+        CompletionException ex = assertThrows(CompletionException.class,
+                () -> controller.login(new LoginRequest("x", "y")).join());
+        assertThat(ex.getCause()).isInstanceOf(BadCredentialsException.class);
 
         verify(authenticationManager).authenticate(any(Authentication.class));
         verifyNoInteractions(userService, jwtService);
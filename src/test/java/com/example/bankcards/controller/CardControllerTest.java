@@ -1,11 +1,24 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.card.CardCreateRequest;
+import com.example.bankcards.dto.card.CardImportResult;
+import com.example.bankcards.dto.card.CardLookupRequest;
 import com.example.bankcards.dto.card.CardResponse;
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardStatusBulkRequest;
+import com.example.bankcards.dto.card.CardStatusBulkResponse;
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.page.CursorPage;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.CardImportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.StatementService;
+import com.example.bankcards.util.CursorUtil;
+import com.example.bankcards.util.DataFormat;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,14 +30,19 @@ import org.mockito.quality.Strictness;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.util.Collections;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,23 +53,39 @@ class CardControllerTest {
     private CardService cardService;
 
     @Mock
-    private UserDetails userDetails;
+    private CardImportService cardImportService;
 
     @Mock
-    private UserDetails adminUserDetails;
+    private StatementService statementService;
+
+    private static final Long USER_ID = 10L;
+    private static final LocalDate EXP = LocalDate.of(2025, 12, 31); // "12/25" в API
+
+    // principal как его строит JwtAuthFilter: id пользователя уже внутри
+    private final AuthUser userDetails =
+            new AuthUser(USER_ID, "testUser", null, Set.of(new SimpleGrantedAuthority("ROLE_USER")), 0);
+
+    private final AuthUser adminUserDetails =
+            new AuthUser(1L, "admin", null, Set.of(new SimpleGrantedAuthority("ROLE_ADMIN")), 0);
 
     @InjectMocks
     private CardController cardController;
 
     private Card testCard;
 
+    // строка списка/чтения — проекция, без сущностей Card и User
+    private final CardView testView =
+            new CardView(1L, "5678", EXP, CardStatus.ACTIVE, new BigDecimal("1000.00"), "testUser");
+
     @BeforeEach
     void setUp() {
         testCard = mock(Card.class);
         when(testCard.getId()).thenReturn(1L);
-        when(testCard.getExpiry()).thenReturn("12/25");
+        when(testCard.getExpiryDate()).thenReturn(EXP);
         when(testCard.getBalance()).thenReturn(new BigDecimal("1000.00"));
         when(testCard.getStatus()).thenReturn(CardStatus.ACTIVE);
+        when(cardService.masked("5678")).thenReturn("****5678");
+        when(cardService.effectiveStatus(EXP, CardStatus.ACTIVE)).thenReturn(CardStatus.ACTIVE);
     }
 
     @Test
@@ -83,6 +117,7 @@ class CardControllerTest {
         assertNotNull(response);
         assertEquals(1L, response.id());
         assertEquals("****5678", response.maskedNumber());
+        assertEquals("12/25", response.expiry()); // DATE из БД обратно в формат API
         assertEquals(CardStatus.ACTIVE, response.status());
 
         verify(cardService).create(
@@ -93,30 +128,83 @@ class CardControllerTest {
         );
     }
 
+    @Test
+    void importCards_ShouldPassBodyStreamAndFormat() {
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+        CardImportResult result = new CardImportResult(0, 0, 0, List.of(), false);
+        when(cardImportService.importCards(body, DataFormat.CSV)).thenReturn(result);
+
+        assertSame(result, cardController.importCards("text/csv; charset=UTF-8", body));
+        verify(cardImportService).importCards(body, DataFormat.CSV);
+    }
+
+    @Test
+    void lookup_ByFullNumber_ShouldReturnCardResponse() {
+        when(cardService.findByNumber("1234567812345678")).thenReturn(testView);
+
+        CardResponse response = cardController.lookup(new CardLookupRequest("1234567812345678"));
+
+        assertEquals(1L, response.id());
+        assertEquals("****5678", response.maskedNumber());
+        assertEquals("testUser", response.owner());
+        verify(cardService).findByNumber("1234567812345678");
+    }
+
     @Test
     void list_ForAdminUser_ShouldReturnAllCards() {
         // Arrange
         int page = 0;
         int size = 10;
-        Page<Card> cardPage = new PageImpl<>(List.of(testCard), PageRequest.of(page, size), 1);
+        Page<CardView> cardPage = new PageImpl<>(List.of(testView), PageRequest.of(page, size), 1);
 
-        when(adminUserDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
-
-        when(cardService.listAll(page, size)).thenReturn(cardPage);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.search(any(CardSearch.class), eq(page), eq(size))).thenReturn(cardPage);
 
         // Act
-        Page<CardResponse> response = cardController.list(adminUserDetails, null, null, page, size);
+        Page<CardResponse> response = cardController.list(adminUserDetails, CardStatus.ACTIVE, "56", "testUser",
+                "01/25", "12/27", new BigDecimal("10"), null, page, size);
 
-        // Assert
+        // Assert: администратор ищет по всем картам, фильтр владельца по имени проходит как есть
         assertNotNull(response);
         assertEquals(1, response.getTotalElements());
-        verify(cardService).listAll(page, size);
-        verify(cardService, never()).listOwned(any(), any(), any(), anyInt(), anyInt());
+        verify(cardService).search(new CardSearch(null, "testUser", "56", CardStatus.ACTIVE, "01/25", "12/27",
+                new BigDecimal("10"), null), page, size);
+    }
+
+    @Test
+    void scroll_ReturnsCursorOfLastRow_WhenMorePagesExist() {
+        when(cardService.scrollOwned(USER_ID, null, null, 1))
+                .thenReturn(new SliceImpl<>(List.of(testView), PageRequest.of(0, 1), true));
+
+        CursorPage<CardResponse> first = cardController.scroll(userDetails, null, null, 1);
+
+        assertEquals(1, first.items().size());
+        assertEquals(CursorUtil.encode(1L), first.next());
+
+        when(cardService.scrollOwned(USER_ID, null, 1L, 1))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 1), false));
+        CursorPage<CardResponse> last = cardController.scroll(userDetails, null, first.next(), 1);
+
+        assertTrue(last.items().isEmpty());
+        assertNull(last.next());
+        verify(cardService, never()).scrollAll(any(), any(), anyInt());
+    }
+
+    @Test
+    void scroll_ForAdmin_PassesStatusFilter() {
+        when(cardService.scrollAll(CardStatus.BLOCKED, null, 10))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 10), false));
+
+        CursorPage<CardResponse> page = cardController.scroll(adminUserDetails, CardStatus.BLOCKED, null, 10);
+
+        assertTrue(page.items().isEmpty());
+        verify(cardService).scrollAll(CardStatus.BLOCKED, null, 10);
+        verify(cardService, never()).scrollOwned(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void scroll_WithMalformedCursor_ShouldThrowBadRequest() {
+        assertThrows(BadRequestException.class, () -> cardController.scroll(userDetails, null, "not-a-cursor", 10));
+        verifyNoInteractions(cardService);
     }
 
     @Test
@@ -124,52 +212,35 @@ class CardControllerTest {
         // Arrange
         int page = 0;
         int size = 10;
-        String username = "testUser";
         CardStatus status = CardStatus.ACTIVE;
         String last4 = "5678";
-        Page<Card> cardPage = new PageImpl<>(List.of(testCard), PageRequest.of(page, size), 1);
+        Page<CardView> cardPage = new PageImpl<>(List.of(testView), PageRequest.of(page, size), 1);
 
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-        when(userDetails.getUsername()).thenReturn(username);
+        when(cardService.search(any(CardSearch.class), eq(page), eq(size))).thenReturn(cardPage);
 
-        when(cardService.listOwned(username, status, last4, page, size)).thenReturn(cardPage);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
-
-        // Act
-        Page<CardResponse> response = cardController.list(userDetails, status, last4, page, size);
+        // Act: чужой owner от пользователя игнорируется — поиск только по своим картам
+        Page<CardResponse> response = cardController.list(userDetails, status, last4, "someoneElse", null, null, null, null, page, size);
 
         // Assert
         assertNotNull(response);
         assertEquals(1, response.getTotalElements());
-        verify(cardService).listOwned(username, status, last4, page, size);
-        verify(cardService, never()).listAll(anyInt(), anyInt());
+        assertEquals("testUser", response.getContent().get(0).owner());
+        verify(cardService).search(new CardSearch(USER_ID, null, last4, status, null, null, null, null), page, size);
     }
 
     @Test
     void list_WithNegativePage_ShouldThrowBadRequestException() {
-        // Arrange
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-
         // Act & Assert
         assertThrows(BadRequestException.class, () -> {
-            cardController.list(userDetails, null, null, -1, 10);
+            cardController.list(userDetails, null, null, null, null, null, null, null, -1, 10);
         });
     }
 
     @Test
     void list_WithInvalidSize_ShouldThrowBadRequestException() {
-        // Arrange
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-
         // Act & Assert
         assertThrows(BadRequestException.class, () -> {
-            cardController.list(userDetails, null, null, 0, 0);
+            cardController.list(userDetails, null, null, null, null, null, null, null, 0, 0);
         });
     }
 
@@ -178,14 +249,7 @@ class CardControllerTest {
         // Arrange
         Long cardId = 1L;
 
-        when(adminUserDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
-
-        when(cardService.findByIdOr404(cardId)).thenReturn(testCard);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.getView(cardId)).thenReturn(testView);
 
         // Act
         CardResponse response = cardController.get(cardId, adminUserDetails);
@@ -193,25 +257,16 @@ class CardControllerTest {
         // Assert
         assertNotNull(response);
         assertEquals(1L, response.id());
-        verify(cardService).findByIdOr404(cardId);
-        verify(cardService, never()).getOwned(anyLong(), anyString());
+        verify(cardService).getView(cardId);
+        verify(cardService, never()).getOwned(anyLong(), anyLong());
     }
 
     @Test
     void get_ForRegularUser_ShouldReturnOwnedCard() {
         // Arrange
         Long cardId = 1L;
-        String username = "testUser";
 
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-        when(userDetails.getUsername()).thenReturn(username);
-
-        when(cardService.getOwned(cardId, username)).thenReturn(testCard);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.getOwned(cardId, USER_ID)).thenReturn(testView);
 
         // Act
         CardResponse response = cardController.get(cardId, userDetails);
@@ -219,87 +274,90 @@ class CardControllerTest {
         // Assert
         assertNotNull(response);
         assertEquals(1L, response.id());
-        verify(cardService).getOwned(cardId, username);
-        verify(cardService, never()).findByIdOr404(anyLong());
+        verify(cardService).getOwned(cardId, USER_ID);
+        verify(cardService, never()).getView(anyLong());
     }
 
     @Test
     void block_ForAdminUser_ShouldBlockAnyCard() {
         // Arrange
         Long cardId = 1L;
-        Card blockedCard = mock(Card.class);
-        when(blockedCard.getId()).thenReturn(cardId);
-        when(blockedCard.getStatus()).thenReturn(CardStatus.BLOCKED);
-
-        when(adminUserDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
-
-        when(cardService.block(cardId)).thenReturn(blockedCard);
-        when(cardService.masked(blockedCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(blockedCard)).thenReturn(CardStatus.BLOCKED);
-        when(blockedCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(blockedCard.getOwner().getUsername()).thenReturn("testUser");
+        CardView blocked = new CardView(cardId, "5678", EXP, CardStatus.BLOCKED, new BigDecimal("1000.00"), "testUser");
+        when(cardService.block(cardId)).thenReturn(blocked);
+        when(cardService.effectiveStatus(EXP, CardStatus.BLOCKED)).thenReturn(CardStatus.BLOCKED);
 
         // Act
         CardResponse response = cardController.block(cardId, adminUserDetails);
 
         // Assert
-        assertNotNull(response);
+        assertEquals(CardStatus.BLOCKED, response.status());
         verify(cardService).block(cardId);
-        verify(cardService, never()).getOwned(anyLong(), anyString());
+        verify(cardService, never()).changeOwnedStatus(anyLong(), anyLong(), any());
     }
 
     @Test
     void block_ForRegularUser_ShouldBlockOwnedCard() {
         // Arrange
         Long cardId = 1L;
-        String username = "testUser";
-        Card blockedCard = mock(Card.class);
-        when(blockedCard.getId()).thenReturn(cardId);
-        when(blockedCard.getStatus()).thenReturn(CardStatus.BLOCKED);
-
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-        when(userDetails.getUsername()).thenReturn(username);
-
-        when(cardService.getOwned(cardId, username)).thenReturn(testCard);
-        when(cardService.block(cardId)).thenReturn(blockedCard);
-        when(cardService.masked(blockedCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(blockedCard)).thenReturn(CardStatus.BLOCKED);
-        when(blockedCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(blockedCard.getOwner().getUsername()).thenReturn("testUser");
+        CardView blocked = new CardView(cardId, "5678", EXP, CardStatus.BLOCKED, new BigDecimal("1000.00"), "testUser");
+        when(cardService.changeOwnedStatus(cardId, USER_ID, CardStatus.BLOCKED)).thenReturn(blocked);
+        when(cardService.effectiveStatus(EXP, CardStatus.BLOCKED)).thenReturn(CardStatus.BLOCKED);
 
         // Act
         CardResponse response = cardController.block(cardId, userDetails);
 
-        // Assert
-        assertNotNull(response);
-        verify(cardService).getOwned(cardId, username);
-        verify(cardService).block(cardId);
+        // Assert: проверка владельца — внутри того же UPDATE, отдельного чтения нет
+        assertEquals(CardStatus.BLOCKED, response.status());
+        verify(cardService).changeOwnedStatus(cardId, USER_ID, CardStatus.BLOCKED);
+        verify(cardService, never()).getOwned(anyLong(), anyLong());
+        verify(cardService, never()).block(anyLong());
     }
 
     @Test
     void activate_AsAdmin_ShouldActivateCard() {
         // Arrange
         Long cardId = 1L;
-        Card activatedCard = mock(Card.class);
-        when(activatedCard.getId()).thenReturn(cardId);
-        when(activatedCard.getStatus()).thenReturn(CardStatus.ACTIVE);
-
-        when(cardService.activate(cardId)).thenReturn(activatedCard);
-        when(cardService.masked(activatedCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(activatedCard)).thenReturn(CardStatus.ACTIVE);
-        when(activatedCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(activatedCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.activate(cardId)).thenReturn(testView);
 
         // Act
         CardResponse response = cardController.activate(cardId);
 
         // Assert
-        assertNotNull(response);
+        assertEquals(CardStatus.ACTIVE, response.status());
         verify(cardService).activate(cardId);
     }
 
+    @Test
+    void changeStatusBulk_ByIds_ShouldUseIdList() {
+        when(cardService.changeStatusBulk(List.of(1L, 2L), CardStatus.BLOCKED)).thenReturn(2);
+
+        CardStatusBulkResponse response = cardController.changeStatusBulk(
+                new CardStatusBulkRequest(List.of(1L, 2L), null, CardStatus.BLOCKED));
+
+        assertEquals(2, response.affected());
+        verify(cardService, never()).changeStatusByOwner(any(), any());
+    }
+
+    @Test
+    void changeStatusBulk_ByOwner_ShouldUseOwnerPath() {
+        when(cardService.changeStatusByOwner("bob", CardStatus.ACTIVE)).thenReturn(5);
+
+        CardStatusBulkResponse response = cardController.changeStatusBulk(
+                new CardStatusBulkRequest(null, "bob", CardStatus.ACTIVE));
+
+        assertEquals(5, response.affected());
+        verify(cardService, never()).changeStatusBulk(any(), any());
+    }
+
+    @Test
+    void changeStatusBulk_BothOrNeitherSelector_ShouldThrowBadRequest() {
+        assertThrows(BadRequestException.class, () -> cardController.changeStatusBulk(
+                new CardStatusBulkRequest(List.of(1L), "bob", CardStatus.BLOCKED)));
+        assertThrows(BadRequestException.class, () -> cardController.changeStatusBulk(
+                new CardStatusBulkRequest(null, null, CardStatus.BLOCKED)));
+        verifyNoInteractions(cardService);
+    }
+
     @Test
     void delete_AsAdmin_ShouldDeleteCard() {
         // Arrange
@@ -313,50 +371,57 @@ class CardControllerTest {
     }
 
     @Test
-    void list_ForAdminUser_ShouldCallListAll() {
+    void list_ForAdminUser_ShouldSearchAllCards() {
         // Arrange
         int page = 0;
         int size = 10;
-        Page<Card> cardPage = new PageImpl<>(List.of(testCard), PageRequest.of(page, size), 1);
+        Page<CardView> cardPage = new PageImpl<>(List.of(testView), PageRequest.of(page, size), 1);
 
-        when(adminUserDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
-
-        when(cardService.listAll(page, size)).thenReturn(cardPage);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.search(any(CardSearch.class), eq(page), eq(size))).thenReturn(cardPage);
 
         // Act
-        Page<CardResponse> response = cardController.list(adminUserDetails, null, null, page, size);
+        Page<CardResponse> response = cardController.list(adminUserDetails, null, null, null, null, null, null, null, page, size);
 
-        // Assert - проверяем, что вызвался listAll, что означает, что isAdmin вернул true
-        verify(cardService).listAll(page, size);
+        // Assert - без ограничения владельцем, что означает, что isAdmin вернул true
+        verify(cardService).search(new CardSearch(null, null, null, null, null, null, null, null), page, size);
     }
 
     @Test
-    void list_ForRegularUser_ShouldCallListOwned() {
+    void list_ForRegularUser_ShouldSearchOwnedCards() {
         // Arrange
         int page = 0;
         int size = 10;
-        String username = "testUser";
-        Page<Card> cardPage = new PageImpl<>(List.of(testCard), PageRequest.of(page, size), 1);
-
-        when(userDetails.getAuthorities()).thenAnswer(invocation ->
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-        when(userDetails.getUsername()).thenReturn(username);
+        Page<CardView> cardPage = new PageImpl<>(List.of(testView), PageRequest.of(page, size), 1);
 
-        when(cardService.listOwned(username, null, null, page, size)).thenReturn(cardPage);
-        when(cardService.masked(testCard)).thenReturn("****5678");
-        when(cardService.effectiveStatus(testCard)).thenReturn(CardStatus.ACTIVE);
-        when(testCard.getOwner()).thenReturn(mock(com.example.bankcards.entity.User.class));
-        when(testCard.getOwner().getUsername()).thenReturn("testUser");
+        when(cardService.search(any(CardSearch.class), eq(page), eq(size))).thenReturn(cardPage);
 
         // Act
-        Page<CardResponse> response = cardController.list(userDetails, null, null, page, size);
+        Page<CardResponse> response = cardController.list(userDetails, null, null, null, null, null, null, null, page, size);
+
+        // Assert - поиск ограничен картами пользователя, что означает, что isAdmin вернул false
+        verify(cardService).search(CardSearch.ofOwner(USER_ID, null, null), page, size);
+    }
 
-        // Assert - проверяем, что вызвался listOwned, что означает, что isAdmin вернул false
-        verify(cardService).listOwned(username, null, null, page, size);
+    @Test
+    void statement_ShouldStreamOwnCardStatement() throws Exception {
+        LocalDate from = LocalDate.of(2026, 5, 1);
+        LocalDate to = LocalDate.of(2026, 5, 31);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        cardController.statement(1L, userDetails, from, to, "csv", null, response);
+
+        assertTrue(response.getHeader("Content-Disposition").contains("statement-1-"));
+        verify(statementService).exportCardStatement(eq(USER_ID), eq(1L), eq(from), eq(to), any(), eq(DataFormat.CSV));
+    }
+
+    @Test
+    void statement_ForeignCard_ShouldFailBeforeHeaders() {
+        when(cardService.getOwned(2L, USER_ID)).thenThrow(new NotFoundException("Card not found"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThrows(NotFoundException.class, () -> cardController.statement(2L, userDetails,
+                LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), "csv", "gzip", response));
+        assertNull(response.getHeader("Content-Encoding"));
+        verifyNoInteractions(statementService);
     }
-}
\ No newline at end of file
+}
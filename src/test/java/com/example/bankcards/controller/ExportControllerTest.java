@@ -0,0 +1,90 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.service.ExportService;
+import com.example.bankcards.service.StatementService;
+import com.example.bankcards.util.DataFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ExportController: заголовки ответа, gzip по Accept-Encoding, неизвестный формат — 400 до начала записи,
+ * месячные выписки.
+ */
+@ExtendWith(MockitoExtension.class)
+class ExportControllerTest {
+
+    @Mock
+    private ExportService exportService;
+
+    @Mock
+    private StatementService statementService;
+
+    @InjectMocks
+    private ExportController controller;
+
+    @Test
+    void cards_csv_plain() throws Exception {
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(0).write("id\n".getBytes(StandardCharsets.UTF_8));
+            return 0L;
+        }).when(exportService).exportCards(any(), eq(DataFormat.CSV));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.cards("csv", null, response);
+
+        assertTrue(response.getContentType().startsWith("text/csv"));
+        assertTrue(response.getHeader("Content-Disposition").contains(".csv"));
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("id\n", response.getContentAsString());
+    }
+
+    @Test
+    void transfers_gzip_when_accepted() throws Exception {
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(0).write("{}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(exportService).exportTransfers(any(), eq(DataFormat.NDJSON));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.transfers("ndjson", "gzip, deflate", response);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals("{}\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void monthly_statements_named_by_month() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.statements(YearMonth.of(2026, 9), "csv", null, response);
+
+        assertTrue(response.getHeader("Content-Disposition").contains("statements-2026-09-"));
+        verify(statementService).exportMonthlyStatements(eq(YearMonth.of(2026, 9)), any(), eq(DataFormat.CSV));
+    }
+
+    @Test
+    void unknown_format_is_rejected_before_writing() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThrows(BadRequestException.class, () -> controller.cards("xml", null, response));
+        assertFalse(response.isCommitted());
+        verifyNoInteractions(exportService);
+    }
+}
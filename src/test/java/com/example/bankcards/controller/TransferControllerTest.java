@@ -1,17 +1,34 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.page.CursorPage;
+import com.example.bankcards.dto.transfer.TransferBatchItemResult;
+import com.example.bankcards.dto.transfer.TransferBatchMode;
+import com.example.bankcards.dto.transfer.TransferBatchRequest;
+import com.example.bankcards.dto.transfer.TransferBatchResponse;
 import com.example.bankcards.dto.transfer.TransferRequest;
+import com.example.bankcards.dto.transfer.TransferSubmissionResponse;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.entity.TransferSubmissionStatus;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.TransferHistoryService;
 import com.example.bankcards.service.TransferService;
+import com.example.bankcards.util.CursorUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,7 +40,15 @@ class TransferControllerTest {
     private TransferService transferService;
 
     @Mock
-    private UserDetails userDetails;
+    private AsyncTransferService asyncTransferService;
+
+    @Mock
+    private TransferHistoryService historyService;
+
+    private static final Long USER_ID = 10L;
+
+    private final AuthUser userDetails =
+            new AuthUser(USER_ID, "testUser", null, Set.of(new SimpleGrantedAuthority("ROLE_USER")), 0);
 
     @InjectMocks
     private TransferController transferController;
@@ -38,126 +63,187 @@ class TransferControllerTest {
     @Test
     void transfer_WithValidRequest_ShouldReturnOkWithTransactionId() {
         // Arrange
-        String username = "testUser";
         Long expectedTransactionId = 123L;
 
-        when(userDetails.getUsername()).thenReturn(username);
-        when(transferService.transfer(username, validTransferRequest.fromCardId(),
-                validTransferRequest.toCardId(), validTransferRequest.amount()))
+        when(transferService.transfer(USER_ID, validTransferRequest.fromCardId(),
+                validTransferRequest.toCardId(), validTransferRequest.amount(), null))
                 .thenReturn(expectedTransactionId);
 
         // Act
-        ResponseEntity<Long> response = transferController.transfer(userDetails, validTransferRequest);
+        ResponseEntity<Long> response = transferController.transfer(userDetails, validTransferRequest, null);
 
         // Assert
         assertNotNull(response);
         assertEquals(200, response.getStatusCodeValue());
         assertEquals(expectedTransactionId, response.getBody());
 
-        verify(userDetails).getUsername();
-        verify(transferService).transfer(username, validTransferRequest.fromCardId(),
-                validTransferRequest.toCardId(), validTransferRequest.amount());
+        verify(transferService).transfer(USER_ID, validTransferRequest.fromCardId(),
+                validTransferRequest.toCardId(), validTransferRequest.amount(), null);
         verifyNoMoreInteractions(transferService);
     }
 
     @Test
     void transfer_ShouldCallServiceWithCorrectParameters() {
         // Arrange
-        String username = "john.doe";
         Long fromCardId = 1L;
         Long toCardId = 2L;
         BigDecimal amount = new BigDecimal("500.50");
 
         TransferRequest request = new TransferRequest(fromCardId, toCardId, amount);
 
-        when(userDetails.getUsername()).thenReturn(username);
-        when(transferService.transfer(username, fromCardId, toCardId, amount))
+        when(transferService.transfer(USER_ID, fromCardId, toCardId, amount, null))
                 .thenReturn(456L);
 
         // Act
-        transferController.transfer(userDetails, request);
+        transferController.transfer(userDetails, request, null);
 
         // Assert
-        verify(transferService).transfer(username, fromCardId, toCardId, amount);
+        verify(transferService).transfer(USER_ID, fromCardId, toCardId, amount, null);
     }
 
     @Test
     void transfer_WithMinimumAmount_ShouldCallService() {
         // Arrange
-        String username = "testUser";
         BigDecimal minimumAmount = new BigDecimal("0.01");
         TransferRequest request = new TransferRequest(1L, 2L, minimumAmount);
 
-        when(userDetails.getUsername()).thenReturn(username);
-        when(transferService.transfer(username, 1L, 2L, minimumAmount)).thenReturn(789L);
+        when(transferService.transfer(USER_ID, 1L, 2L, minimumAmount, null)).thenReturn(789L);
 
         // Act
-        ResponseEntity<Long> response = transferController.transfer(userDetails, request);
+        ResponseEntity<Long> response = transferController.transfer(userDetails, request, null);
 
         // Assert
         assertNotNull(response);
         assertEquals(200, response.getStatusCodeValue());
-        verify(transferService).transfer(username, 1L, 2L, minimumAmount);
+        verify(transferService).transfer(USER_ID, 1L, 2L, minimumAmount, null);
     }
 
     @Test
     void transfer_WithLargeAmount_ShouldCallService() {
         // Arrange
-        String username = "testUser";
         BigDecimal largeAmount = new BigDecimal("1000000.99");
         TransferRequest request = new TransferRequest(1L, 2L, largeAmount);
 
-        when(userDetails.getUsername()).thenReturn(username);
-        when(transferService.transfer(username, 1L, 2L, largeAmount)).thenReturn(999L);
+        when(transferService.transfer(USER_ID, 1L, 2L, largeAmount, null)).thenReturn(999L);
 
         // Act
-        ResponseEntity<Long> response = transferController.transfer(userDetails, request);
+        ResponseEntity<Long> response = transferController.transfer(userDetails, request, null);
 
         // Assert
         assertNotNull(response);
         assertEquals(200, response.getStatusCodeValue());
-        verify(transferService).transfer(username, 1L, 2L, largeAmount);
+        verify(transferService).transfer(USER_ID, 1L, 2L, largeAmount, null);
     }
 
     @Test
     void transfer_WithPreciseDecimalAmount_ShouldCallService() {
         // Arrange
-        String username = "testUser";
         BigDecimal preciseAmount = new BigDecimal("123.4567");
         TransferRequest request = new TransferRequest(1L, 2L, preciseAmount);
 
-        when(userDetails.getUsername()).thenReturn(username);
-        when(transferService.transfer(username, 1L, 2L, preciseAmount)).thenReturn(111L);
+        when(transferService.transfer(USER_ID, 1L, 2L, preciseAmount, null)).thenReturn(111L);
 
         // Act
-        ResponseEntity<Long> response = transferController.transfer(userDetails, request);
+        ResponseEntity<Long> response = transferController.transfer(userDetails, request, null);
 
         // Assert
         assertNotNull(response);
         assertEquals(200, response.getStatusCodeValue());
-        verify(transferService).transfer(username, 1L, 2L, preciseAmount);
+        verify(transferService).transfer(USER_ID, 1L, 2L, preciseAmount, null);
     }
 
     @Test
-    void transfer_ShouldExtractUsernameFromUserDetails() {
+    void transfer_ShouldTakeUserIdFromPrincipal() {
         // Arrange
-        String expectedUsername = "specificUser";
-        when(userDetails.getUsername()).thenReturn(expectedUsername);
-        when(transferService.transfer(expectedUsername, 1L, 2L, new BigDecimal("100.00"))).thenReturn(111L);
+        AuthUser specific = new AuthUser(77L, "specificUser", null, Set.of(new SimpleGrantedAuthority("ROLE_USER")), 0);
+        when(transferService.transfer(77L, 1L, 2L, new BigDecimal("100.00"), null)).thenReturn(111L);
 
         // Act
-        transferController.transfer(userDetails, validTransferRequest);
+        transferController.transfer(specific, validTransferRequest, null);
 
         // Assert
-        verify(userDetails).getUsername();
-        verify(transferService).transfer(expectedUsername, 1L, 2L, new BigDecimal("100.00"));
+        verify(transferService).transfer(77L, 1L, 2L, new BigDecimal("100.00"), null);
+    }
+
+    @Test
+    void transfer_ShouldPassIdempotencyKeyToService() {
+        when(transferService.transfer(USER_ID, 1L, 2L, new BigDecimal("100.00"), "k-1")).thenReturn(42L);
+
+        ResponseEntity<Long> response = transferController.transfer(userDetails, validTransferRequest, "k-1");
+
+        assertEquals(42L, response.getBody());
+        verify(transferService).transfer(USER_ID, 1L, 2L, new BigDecimal("100.00"), "k-1");
+    }
+
+    @Test
+    void transferBatch_ShouldPassItemsAndModeToService() {
+        List<TransferRequest> items = List.of(validTransferRequest);
+        TransferBatchResponse expected = new TransferBatchResponse(1, 0, List.of(new TransferBatchItemResult(0, 5L, null)));
+        when(transferService.transferBatch(USER_ID, items, TransferBatchMode.PER_ITEM)).thenReturn(expected);
+
+        TransferBatchResponse response = transferController.transferBatch(userDetails,
+                new TransferBatchRequest(items, TransferBatchMode.PER_ITEM));
+
+        assertSame(expected, response);
+    }
+
+    @Test
+    void submit_ShouldReturnAcceptedWithStatusLocation() {
+        TransferSubmissionResponse pending = new TransferSubmissionResponse(
+                7L, TransferSubmissionStatus.PENDING, null, null, LocalDateTime.now(), null);
+        when(asyncTransferService.submit(USER_ID, 1L, 2L, new BigDecimal("100.00"), "k-1")).thenReturn(pending);
+
+        ResponseEntity<TransferSubmissionResponse> response =
+                transferController.submit(userDetails, validTransferRequest, "k-1");
+
+        assertEquals(202, response.getStatusCode().value());
+        assertEquals("/api/transfers/submissions/7", response.getHeaders().getLocation().toString());
+        assertSame(pending, response.getBody());
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void submission_ShouldReturnStatusOfOwnSubmission() {
+        TransferSubmissionResponse done = new TransferSubmissionResponse(
+                7L, TransferSubmissionStatus.COMPLETED, 99L, null, LocalDateTime.now(), LocalDateTime.now());
+        when(asyncTransferService.status(USER_ID, 7L)).thenReturn(done);
+
+        assertSame(done, transferController.submission(userDetails, 7L));
+    }
+
+    @Test
+    void history_ShouldReturnNextCursorFromLastRowWhenMoreRowsExist() {
+        LocalDateTime at = LocalDateTime.of(2026, 5, 1, 9, 30);
+        TransferView a = new TransferView(9L, 1L, 2L, USER_ID, BigDecimal.TEN, at.plusMinutes(1));
+        TransferView b = new TransferView(8L, 1L, 2L, USER_ID, BigDecimal.TEN, at);
+        when(historyService.scroll(USER_ID, 1L, null, null, null, 2))
+                .thenReturn(new SliceImpl<>(List.of(a, b), PageRequest.of(0, 2), true));
+
+        CursorPage<TransferView> page = transferController.history(userDetails, 1L, null, null, null, 2);
+
+        assertEquals(List.of(a, b), page.items());
+        assertEquals(new CursorUtil.TimeKey(at, 8L), CursorUtil.decodeTimeKey(page.next()));
+    }
+
+    @Test
+    void history_ShouldPassDecodedCursorAndReturnNoNextOnLastPage() {
+        LocalDateTime at = LocalDateTime.of(2026, 5, 1, 9, 30);
+        String after = CursorUtil.encode(at, 8L);
+        when(historyService.scroll(USER_ID, null, null, null, new CursorUtil.TimeKey(at, 8L), 10))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 10), false));
+
+        CursorPage<TransferView> page = transferController.history(userDetails, null, null, null, after, 10);
+
+        assertTrue(page.items().isEmpty());
+        assertNull(page.next());
     }
 
     @Test
     void constructor_ShouldInitializeTransferService() {
         // This test verifies that the constructor properly sets the dependency
         TransferService mockService = mock(TransferService.class);
-        TransferController controller = new TransferController(mockService);
+        TransferController controller = new TransferController(mockService, mock(AsyncTransferService.class),
+                mock(TransferHistoryService.class));
 
         assertNotNull(controller);
     }
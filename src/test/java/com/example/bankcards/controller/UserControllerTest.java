@@ -0,0 +1,69 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.user.PasswordChangeRequest;
+import com.example.bankcards.dto.user.RolesChangeRequest;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.security.PasswordHashingExecutor;
+import com.example.bankcards.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserController:
+ * - смена пароля выполняется в пуле хэширования (операция password) и отвечает 204
+ * - смена ролей передаёт набор целиком и отвечает 204; ошибки сервиса не глотаются
+ */
+@ExtendWith(MockitoExtension.class)
+class UserControllerTest {
+
+    @Mock private UserService userService;
+    @Mock private PasswordHashingExecutor hashing;
+
+    @InjectMocks private UserController controller;
+
+    @Test
+    void changePassword_runsInHashingPoolAndReturns204() {
+        when(hashing.submit(eq("password"), any())).thenAnswer(inv ->
+                CompletableFuture.supplyAsync((Supplier<?>) inv.getArgument(1), Runnable::run));
+
+        ResponseEntity<Void> res = controller.changePassword(7L, new PasswordChangeRequest("newSecret")).join();
+
+        assertThat(res.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(userService).changePassword(7L, "newSecret");
+    }
+
+    @Test
+    void changePassword_unknownUserPropagates() {
+        when(hashing.submit(eq("password"), any())).thenAnswer(inv ->
+                CompletableFuture.supplyAsync((Supplier<?>) inv.getArgument(1), Runnable::run));
+        doThrow(new NotFoundException("User not found")).when(userService).changePassword(99L, "newSecret");
+
+        assertThatThrownBy(() -> controller.changePassword(99L, new PasswordChangeRequest("newSecret")).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void changeRoles_replacesSetAndReturns204() {
+        ResponseEntity<Void> res = controller.changeRoles(8L, new RolesChangeRequest(Set.of(Role.ADMIN)));
+
+        assertThat(res.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(userService).changeRoles(8L, Set.of(Role.ADMIN));
+        verifyNoInteractions(hashing);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CardBatchWriter: persist всех строк порции (карта + снимок журнала seq 0), затем один flush (batch) и clear;
+ * владелец — ссылка по id, без загрузки пользователя.
+ */
+@ExtendWith(MockitoExtension.class)
+class CardBatchWriterTest {
+
+    @Mock EntityManager em;
+    @InjectMocks CardBatchWriter writer;
+
+    @Test
+    void persists_batch_then_flushes_once_and_clears() {
+        User owner = new User();
+        when(em.getReference(User.class, 10L)).thenReturn(owner);
+        CardInsertRow row = new CardInsertRow(new byte[]{2}, new byte[]{1}, "4444", 10L,
+                LocalDate.of(2029, 12, 31), CardStatus.ACTIVE, BigDecimal.TEN, LocalDateTime.now());
+
+        writer.insert(List.of(row, row));
+
+        ArgumentCaptor<Card> cards = ArgumentCaptor.forClass(Card.class);
+        InOrder order = inOrder(em);
+        order.verify(em, times(2)).persist(cards.capture());
+        order.verify(em).flush();
+        order.verify(em).clear();
+        assertThat(cards.getValue().getOwner()).isSameAs(owner);
+        assertThat(cards.getValue().getExpiryDate()).isEqualTo(LocalDate.of(2029, 12, 31));
+        // начальный снимок журнала на каждую карту — в том же batch-е
+        verify(em, times(2)).persist(argThat(o -> o instanceof CardBalanceSnapshot s
+                && s.getSeq() == 0L && s.getBalance().equals(BigDecimal.TEN)));
+        verify(em, never()).find(any(), any());
+    }
+}
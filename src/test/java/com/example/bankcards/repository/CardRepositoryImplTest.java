@@ -0,0 +1,109 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * CardRepositoryImpl.search на встроенной БД (схема — из сущностей, без Liquibase):
+ * - фильтры складываются через AND: префикс last4 + статус + владелец (по id и по имени)
+ * - каждый фильтр действительно отсекает строки — на каждый есть карта, которая отличается только им
+ * - 4 цифры last4 — точное совпадение, total считается с теми же условиями
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"})
+class CardRepositoryImplTest {
+
+    @Autowired private TestEntityManager em;
+    @Autowired private CardRepository cards;
+
+    private User bob;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        bob = em.persist(user("bob"));
+        alice = em.persist(user("alice"));
+        card(bob, "1234", CardStatus.ACTIVE);   // подходит под все фильтры
+        card(bob, "1299", CardStatus.ACTIVE);   // подходит под все фильтры
+        card(bob, "1234", CardStatus.BLOCKED);  // другой статус
+        card(bob, "5123", CardStatus.ACTIVE);   // "12" не в начале last4
+        card(alice, "1234", CardStatus.ACTIVE); // другой владелец
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void last4_prefix_status_and_owner_id_are_all_applied() {
+        Page<CardView> res = cards.search(new CardSearch(bob.getId(), null, "12", CardStatus.ACTIVE,
+                null, null, null, null), PageRequest.of(0, 10));
+
+        assertThat(res.getContent()).extracting(CardView::last4).containsExactlyInAnyOrder("1234", "1299");
+        assertThat(res.getContent()).extracting(CardView::ownerUsername).containsOnly("bob");
+        assertThat(res.getContent()).extracting(CardView::status).containsOnly(CardStatus.ACTIVE);
+    }
+
+    @Test
+    void owner_username_filter_joins_users() {
+        Page<CardView> res = cards.search(new CardSearch(null, "alice", "12", CardStatus.ACTIVE,
+                null, null, null, null), PageRequest.of(0, 10));
+
+        assertThat(res.getContent()).extracting(CardView::ownerUsername).containsExactly("alice");
+    }
+
+    @Test
+    void four_digits_match_exactly_and_total_uses_same_filters() {
+        // страница меньше результата: total считается отдельным COUNT с теми же условиями
+        Page<CardView> res = cards.search(new CardSearch(null, "bob", "1234", null,
+                null, null, null, null), PageRequest.of(0, 1));
+
+        assertThat(res.getContent()).hasSize(1);
+        assertThat(res.getTotalElements()).isEqualTo(2); // ACTIVE и BLOCKED карты bob с 1234
+    }
+
+    @Test
+    void no_filters_returns_all_newest_first() {
+        Page<CardView> res = cards.search(new CardSearch(null, null, null, null, null, null, null, null),
+                PageRequest.of(0, 10));
+
+        assertThat(res.getTotalElements()).isEqualTo(5);
+        assertThat(res.getContent()).extracting(CardView::id).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+    }
+
+    private static User user(String username) {
+        User u = new User();
+        u.setUsername(username);
+        u.setPassword("hash");
+        u.setRoles(Set.of(Role.USER));
+        return u;
+    }
+
+    private void card(User owner, String last4, CardStatus status) {
+        Card c = new Card();
+        c.setOwner(owner);
+        c.setLast4(last4);
+        c.setStatus(status);
+        c.setExpiryDate(LocalDate.of(2029, 12, 31));
+        c.setBalance(BigDecimal.TEN);
+        c.setCreatedAt(LocalDateTime.now());
+        em.persist(c);
+    }
+}
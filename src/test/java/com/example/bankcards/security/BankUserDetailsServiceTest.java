@@ -0,0 +1,145 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BankUserDetailsService:
+ * - повторная загрузка того же пользователя идёт из кэша, без запроса в БД
+ * - evict заставляет перечитать пользователя; запись с устаревшим token_epoch перечитывается сама
+ * - несуществующий пользователь не кэшируется
+ * - логин проверяет пароль мимо кэша: смена пароля на одном узле сразу действует на другом
+ */
+@ExtendWith(MockitoExtension.class)
+class BankUserDetailsServiceTest {
+
+    @Mock UserRepository repo;
+    @Mock TokenEpochService tokenEpochs;
+
+    private SimpleMeterRegistry meters;
+    private BankUserDetailsService service;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        service = new BankUserDetailsService(repo, tokenEpochs, 100, Duration.ofMinutes(5), meters);
+        lenient().when(tokenEpochs.isCurrent(any(), anyInt())).thenReturn(true);
+    }
+
+    @Test
+    void second_load_is_served_from_cache() {
+        when(repo.findByUsername("alice")).thenReturn(Optional.of(user(1L, "alice", Role.USER)));
+
+        UserDetails first = service.loadUserByUsername("alice");
+        UserDetails second = service.loadUserByUsername("alice");
+
+        assertThat(second).isSameAs(first);
+        assertThat(((AuthUser) first).getId()).isEqualTo(1L);
+        assertThat(first.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+        verify(repo, times(1)).findByUsername("alice");
+        assertThat(meters.get("cache.gets").tag("cache", "auth.user-details").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void evict_forces_reload() {
+        when(repo.findByUsername("alice"))
+                .thenReturn(Optional.of(user(1L, "alice", Role.USER)))
+                .thenReturn(Optional.of(user(1L, "alice", Role.ADMIN)));
+
+        service.loadUserByUsername("alice");
+        service.evict("alice");
+        UserDetails reloaded = service.loadUserByUsername("alice");
+
+        assertThat(reloaded.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_ADMIN");
+        verify(repo, times(2)).findByUsername("alice");
+    }
+
+    @Test
+    void cached_user_with_stale_epoch_is_reloaded() {
+        // роли сменили на другом узле: локальный evict не случился, но epoch в БД уже другой
+        User changed = user(1L, "alice", Role.ADMIN);
+        changed.setTokenEpoch(1);
+        when(repo.findByUsername("alice"))
+                .thenReturn(Optional.of(user(1L, "alice", Role.USER)))
+                .thenReturn(Optional.of(changed));
+        service.loadUserByUsername("alice");
+        when(tokenEpochs.isCurrent(1L, 0)).thenReturn(false);
+
+        AuthUser reloaded = (AuthUser) service.loadUserByUsername("alice");
+
+        assertThat(reloaded.getTokenEpoch()).isEqualTo(1);
+        assertThat(reloaded.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void unknown_user_is_not_cached() {
+        when(repo.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.loadUserByUsername("ghost")).isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> service.loadUserByUsername("ghost")).isInstanceOf(UsernameNotFoundException.class);
+
+        verify(repo, times(2)).findByUsername("ghost");
+    }
+
+    @Test
+    void old_password_fails_on_another_node_after_change() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        // общая БД двух узлов
+        User stored = user(1L, "alice", Role.USER);
+        stored.setPassword(encoder.encode("oldSecret"));
+        AtomicReference<User> row = new AtomicReference<>(stored);
+        when(repo.findByUsername("alice")).thenAnswer(inv -> Optional.of(row.get()));
+
+        BankUserDetailsService nodeB =
+                new BankUserDetailsService(repo, tokenEpochs, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        DaoAuthenticationProvider loginB = new DaoAuthenticationProvider();
+        loginB.setUserDetailsService(nodeB.uncached());
+        loginB.setPasswordEncoder(encoder);
+        loginB.authenticate(new UsernamePasswordAuthenticationToken("alice", "oldSecret"));
+        nodeB.loadUserByUsername("alice"); // кэш узла B прогрет старым хэшем
+
+        // смена пароля на узле A: evict только там
+        User changed = user(1L, "alice", Role.USER);
+        changed.setPassword(encoder.encode("newSecret"));
+        changed.setTokenEpoch(1);
+        row.set(changed);
+        service.evict("alice");
+
+        assertThatThrownBy(() -> loginB.authenticate(new UsernamePasswordAuthenticationToken("alice", "oldSecret")))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(loginB.authenticate(new UsernamePasswordAuthenticationToken("alice", "newSecret"))
+                .isAuthenticated()).isTrue();
+    }
+
+    private static User user(Long id, String username, Role role) {
+        User u = new User();
+        u.setId(id);
+        u.setUsername(username);
+        u.setPassword("hash");
+        u.setRoles(Set.of(role));
+        return u;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * JwtAuthFilter:
+ * - stateless: principal из claims, без обращения к BankUserDetailsService
+ * - устаревший epoch (роли сменились / токены отозваны) — запрос остаётся анонимным
+ * - stateful: пользователь грузится из БД, epoch сверяется с загруженным
+ */
+@ExtendWith(MockitoExtension.class)
+class JwtAuthFilterTest {
+
+    @Mock BankUserDetailsService userDetailsService;
+    @Mock TokenEpochService tokenEpochs;
+
+    private JwtService jwt;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        jwt = new JwtService("test-secret-test-secret-test-secret-42", 5, 100, new SimpleMeterRegistry());
+        alice = new User();
+        alice.setId(10L);
+        alice.setUsername("alice");
+        alice.setRoles(Set.of(Role.USER));
+        alice.setTokenEpoch(2);
+    }
+
+    @AfterEach
+    void clearContext() { SecurityContextHolder.clearContext(); }
+
+    @Test
+    void stateless_builds_principal_from_token_without_user_lookup() throws Exception {
+        when(tokenEpochs.isCurrent(10L, 2)).thenReturn(true);
+
+        Authentication auth = run(new JwtAuthFilter(jwt, userDetailsService, tokenEpochs, true), jwt.generateToken(alice));
+
+        assertThat(auth).isNotNull();
+        AuthUser p = (AuthUser) auth.getPrincipal();
+        assertThat(p.getId()).isEqualTo(10L);
+        assertThat(auth.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void stateless_rejects_token_from_previous_epoch() throws Exception {
+        when(tokenEpochs.isCurrent(10L, 2)).thenReturn(false);
+
+        Authentication auth = run(new JwtAuthFilter(jwt, userDetailsService, tokenEpochs, true), jwt.generateToken(alice));
+
+        assertThat(auth).isNull();
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void stateful_loads_user_and_checks_epoch() throws Exception {
+        String token = jwt.generateToken(alice);
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(
+                new AuthUser(10L, "alice", "hash", BankUserDetailsService.authorities(Set.of(Role.USER)), 3));
+
+        Authentication auth = run(new JwtAuthFilter(jwt, userDetailsService, tokenEpochs, false), token);
+
+        assertThat(auth).isNull(); // в БД epoch уже 3, токен выпущен с 2
+        verifyNoInteractions(tokenEpochs);
+    }
+
+    @Test
+    void invalid_token_leaves_request_anonymous() throws Exception {
+        Authentication auth = run(new JwtAuthFilter(jwt, userDetailsService, tokenEpochs, true), "not.a.jwt");
+
+        assertThat(auth).isNull();
+        verifyNoInteractions(userDetailsService, tokenEpochs);
+    }
+
+    private static Authentication run(JwtAuthFilter filter, String token) throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/cards");
+        req.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(req, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Юнит-тесты JwtService:
+ * - verify: подпись проверяется один раз, повтор берётся из кэша (метрики hit/miss)
+ * - невалидные и чужие токены отклоняются и не попадают в кэш
+ * - principal: id, роли и epoch восстанавливаются из claims; кэш отдаёт неизменяемое значение, а не Claims
+ */
+class JwtServiceTest {
+
+    private static final String SECRET = "test-secret-test-secret-test-secret-42";
+
+    private SimpleMeterRegistry meters;
+    private JwtService jwt;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        jwt = new JwtService(SECRET, 5, 100, meters);
+    }
+
+    @Test
+    void verify_returns_claims_and_caches_them() {
+        String token = jwt.generateToken(user(1L, "alice", Role.USER));
+
+        VerifiedToken first = jwt.verify(token);
+        VerifiedToken second = jwt.verify(token);
+
+        assertThat(first.subject()).isEqualTo("alice");
+        assertThat(first.expiresAt()).isAfter(Instant.now());
+        assertThat(second).isSameAs(first);
+        assertThat(gets("miss")).isEqualTo(1.0);
+        assertThat(gets("hit")).isEqualTo(1.0);
+    }
+
+    @Test
+    void verify_rejects_tampered_token() {
+        String token = jwt.generateToken(user(1L, "alice", Role.USER));
+        String tampered = token.substring(0, token.length() - 2) + "xx";
+
+        assertThatThrownBy(() -> jwt.verify(tampered)).isInstanceOf(JwtException.class);
+        assertThat(jwt.isValid(tampered)).isFalse();
+    }
+
+    @Test
+    void verify_rejects_token_signed_with_other_key() {
+        JwtService other = new JwtService("other-secret-other-secret-other-secret", 5, 100, new SimpleMeterRegistry());
+        String foreign = other.generateToken(user(2L, "mallory", Role.ADMIN));
+
+        assertThat(jwt.isValid(foreign)).isFalse();
+        assertThat(jwt.isValid(foreign)).isFalse(); // отказ не кэшируется — каждый раз честная проверка
+        assertThat(gets("hit")).isZero();
+    }
+
+    @Test
+    void extractUsername_uses_single_verification() {
+        String token = jwt.generateToken(user(3L, "bob", Role.ADMIN));
+
+        assertThat(jwt.isValid(token)).isTrue();
+        assertThat(jwt.extractUsername(token)).isEqualTo("bob");
+        assertThat(gets("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void principal_is_built_from_claims_without_database() {
+        User u = user(7L, "carol", Role.ADMIN);
+        u.setTokenEpoch(3);
+
+        AuthUser p = jwt.verify(jwt.generateToken(u)).principal();
+
+        assertThat(p.getId()).isEqualTo(7L);
+        assertThat(p.getUsername()).isEqualTo("carol");
+        assertThat(p.getTokenEpoch()).isEqualTo(3);
+        assertThat(p.getPassword()).isNull();
+        assertThat(p.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void cached_principal_is_immutable() {
+        AuthUser p = jwt.verify(jwt.generateToken(user(7L, "carol", Role.USER))).principal();
+
+        assertThatThrownBy(() -> p.getAuthorities().clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private static User user(Long id, String username, Role role) {
+        User u = new User();
+        u.setId(id);
+        u.setUsername(username);
+        u.setRoles(Set.of(role));
+        return u;
+    }
+
+    private double gets(String result) {
+        return meters.get("cache.gets").tag("cache", "jwt.verified").tag("result", result)
+                .functionCounter().count();
+    }
+}
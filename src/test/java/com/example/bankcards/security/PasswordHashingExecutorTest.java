@@ -0,0 +1,82 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * PasswordHashingExecutor:
+ * - задача выполняется в пуле, латентность пишется в таймер по операции
+ * - при переполненной очереди — мгновенный ServiceUnavailableException (503)
+ * - задача, простоявшая в очереди дольше лимита, не выполняется
+ */
+class PasswordHashingExecutorTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private PasswordHashingExecutor executor;
+
+    @AfterEach
+    void tearDown() { if (executor != null) executor.shutdown(); }
+
+    @Test
+    void runs_task_off_caller_thread_and_records_latency() {
+        executor = new PasswordHashingExecutor(1, 4, Duration.ofSeconds(5), meters);
+        Thread caller = Thread.currentThread();
+
+        Thread worker = executor.submit("login", Thread::currentThread).join();
+
+        assertThat(worker).isNotSameAs(caller);
+        assertThat(worker.getName()).startsWith("pwd-hash-");
+        assertThat(meters.get("auth.hashing.latency").tag("op", "login").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejects_immediately_when_queue_is_full() throws Exception {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofSeconds(5), meters);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Void> busy = executor.submit("login", () -> { started.countDown(); await(release); return null; });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> queued = executor.submit("login", () -> null); // занимает единственное место в очереди
+
+        assertThatThrownBy(() -> executor.submit("login", () -> null))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(meters.get("auth.hashing.rejected").counter().count()).isEqualTo(1.0);
+
+        release.countDown();
+        busy.join();
+        queued.join();
+    }
+
+    @Test
+    void drops_task_that_waited_too_long_in_queue() throws Exception {
+        executor = new PasswordHashingExecutor(1, 4, Duration.ofMillis(200), meters);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Void> busy = executor.submit("login", () -> { started.countDown(); await(release); return null; });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> stale = executor.submit("login", () -> "ran");
+        Thread.sleep(400);
+        release.countDown();
+        busy.join();
+
+        assertThatThrownBy(stale::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(ServiceUnavailableException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try { latch.await(5, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.transfer.TransferSubmissionResponse;
+import com.example.bankcards.entity.TransferSubmission;
+import com.example.bankcards.entity.TransferSubmissionStatus;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AsyncTransferService:
+ * - приём: проверка входа сразу (400), одна вставка PENDING, выполнение в фоне
+ * - бизнес-ошибка выполнения — REJECTED с причиной; конкуренция (503) — заявка остаётся PENDING
+ * - повтор с тем же Idempotency-Key — та же заявка; переполненная очередь узла — 503 без вставки
+ * - статус — только своей заявки; восстановление ставит зависшие PENDING в выполнение
+ * - сбой выполнения засчитывается попыткой; исчерпавшая попытки заявка — REJECTED
+ */
+@ExtendWith(MockitoExtension.class)
+class AsyncTransferServiceTest {
+
+    @Mock TransferService transfers;
+    @Mock TransferSubmissionRepository submissions;
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private AsyncTransferService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AsyncTransferService(transfers, submissions, meters, 2, 100, Duration.ofMinutes(1), 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private void stubSaveAssigningId(long id) {
+        when(submissions.save(any(TransferSubmission.class))).thenAnswer(inv -> {
+            TransferSubmission s = inv.getArgument(0);
+            s.setId(id);
+            return s;
+        });
+    }
+
+    @Test
+    void submit_persistsPendingAndExecutesInBackground() {
+        stubSaveAssigningId(7L);
+        when(transfers.executeSubmission(7L)).thenReturn(true);
+
+        TransferSubmissionResponse res = service.submit(10L, 1L, 2L, new BigDecimal("10"), null);
+
+        assertThat(res.id()).isEqualTo(7L);
+        assertThat(res.status()).isEqualTo(TransferSubmissionStatus.PENDING);
+        verify(transfers, timeout(2000)).executeSubmission(7L);
+        verify(submissions).save(argThat(s -> s.getUserId() == 10L && s.getFromCardId() == 1L
+                && s.getStatus() == TransferSubmissionStatus.PENDING && s.getCreatedAt() != null));
+    }
+
+    @Test
+    void submit_invalidInputRejectedImmediately() {
+        assertThatThrownBy(() -> service.submit(10L, 1L, 1L, new BigDecimal("10"), null))
+                .isInstanceOf(BadRequestException.class).hasMessage("from and to must differ");
+        verifyNoInteractions(submissions, transfers);
+    }
+
+    @Test
+    void businessErrorMarksSubmissionRejected() {
+        stubSaveAssigningId(7L);
+        when(transfers.executeSubmission(7L)).thenThrow(new BadRequestException("insufficient funds"));
+        when(submissions.reject(eq(7L), eq("insufficient funds"), any())).thenReturn(1);
+
+        service.submit(10L, 1L, 2L, new BigDecimal("10"), null);
+
+        verify(submissions, timeout(2000)).reject(eq(7L), eq("insufficient funds"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void contentionLeavesSubmissionPending() throws Exception {
+        stubSaveAssigningId(7L);
+        when(transfers.executeSubmission(7L)).thenThrow(new ServiceUnavailableException("transfer is contended, retry later"));
+
+        service.submit(10L, 1L, 2L, new BigDecimal("10"), null);
+
+        verify(transfers, timeout(2000)).executeSubmission(7L);
+        Thread.sleep(50);
+        verify(submissions, never()).reject(any(), any(), any());
+    }
+
+    @Test
+    void unexpectedFailureCountsAttemptAndLeavesPending() throws Exception {
+        stubSaveAssigningId(7L);
+        when(transfers.executeSubmission(7L)).thenThrow(new IllegalStateException("boom"));
+        when(submissions.rejectExhausted(eq(7L), eq(3), any(), any())).thenReturn(0);
+
+        service.submit(10L, 1L, 2L, new BigDecimal("10"), null);
+
+        verify(submissions, timeout(2000)).rejectExhausted(eq(7L), eq(3), any(), any(LocalDateTime.class));
+        verify(submissions).countFailedAttempt(7L);
+        verify(submissions, never()).reject(any(), any(), any());
+    }
+
+    @Test
+    void poisonSubmissionRejectedAfterMaxAttempts() {
+        // восстановление снова взяло заявку, и это была последняя разрешённая попытка
+        when(submissions.findPendingIdsCreatedBefore(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(7L));
+        when(transfers.executeSubmission(7L)).thenThrow(new IllegalStateException("boom"));
+        when(submissions.rejectExhausted(eq(7L), eq(3), any(), any())).thenReturn(1);
+
+        service.recover();
+
+        verify(submissions, timeout(2000)).rejectExhausted(eq(7L), eq(3), eq(AsyncTransferService.FAILED_REASON),
+                any(LocalDateTime.class));
+        verify(submissions).countFailedAttempt(7L);
+    }
+
+    @Test
+    void replayWithSameKeyReturnsExistingSubmission() {
+        TransferSubmission existing = TransferSubmission.builder().id(5L).userId(10L)
+                .status(TransferSubmissionStatus.COMPLETED).transferId(99L).build();
+        when(submissions.save(any())).thenThrow(new DuplicateKeyException("ux_transfer_submissions_user_idem"));
+        when(submissions.findByUserIdAndIdemKey(10L, "k-1")).thenReturn(Optional.of(existing));
+
+        TransferSubmissionResponse res = service.submit(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        assertThat(res.id()).isEqualTo(5L);
+        assertThat(res.transferId()).isEqualTo(99L);
+        verifyNoInteractions(transfers);
+    }
+
+    @Test
+    void fullQueueRefusesWithoutInsert() {
+        service.shutdown();
+        service = new AsyncTransferService(transfers, submissions, meters, 2, 0, Duration.ofMinutes(1), 3);
+
+        assertThatThrownBy(() -> service.submit(10L, 1L, 2L, new BigDecimal("10"), null))
+                .isInstanceOf(ServiceUnavailableException.class);
+        verifyNoInteractions(submissions);
+        assertThat(meters.get("transfers.async.overloaded").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void statusOnlyForOwnSubmission() {
+        when(submissions.findByIdAndUserId(7L, 11L)).thenReturn(Optional.empty());
+        assertThatThrownBy(() -> service.status(11L, 7L)).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void recoveryDispatchesStalePending() {
+        when(submissions.findPendingIdsCreatedBefore(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(3L, 4L));
+
+        service.recover();
+
+        verify(transfers, timeout(2000)).executeSubmission(3L);
+        verify(transfers, timeout(2000)).executeSubmission(4L);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardCipherRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CryptoUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CardBlindIndexBackfill:
+ * - идёт порциями keyset-ом по id, пока порция полная
+ * - новый и старый формат шифртекста; нерасшифровываемая строка пропускается
+ * - дубль номера в порции не откатывает остальные строки
+ */
+@ExtendWith(MockitoExtension.class)
+class CardBlindIndexBackfillTest {
+
+    @Mock CardRepository repo;
+    @Mock CryptoUtil crypto;
+    @Mock PlatformTransactionManager txManager;
+
+    private CardBlindIndexBackfill backfill;
+
+    @BeforeEach
+    void setUp() {
+        backfill = new CardBlindIndexBackfill(repo, crypto, new TransactionTemplate(txManager),
+                new SyncTaskExecutor(), 2);
+    }
+
+    @Test
+    void walks_table_in_keyset_chunks() {
+        byte[] b1 = {1}, b2 = {2};
+        when(repo.findWithoutPanHmac(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                new CardCipherRow(1L, b1, null), new CardCipherRow(5L, null, "legacy")));
+        when(repo.findWithoutPanHmac(eq(5L), any(Pageable.class))).thenReturn(List.of(
+                new CardCipherRow(7L, b2, null)));
+        when(crypto.decrypt(b1)).thenReturn("1111222233331111");
+        when(crypto.decryptLegacy("legacy")).thenReturn("1111222233335555");
+        when(crypto.decrypt(b2)).thenThrow(new IllegalStateException("Decrypt failed"));
+        when(crypto.blindIndex(anyString())).thenAnswer(inv -> ((String) inv.getArgument(0)).getBytes());
+        when(repo.setPanHmac(anyLong(), any())).thenReturn(1);
+
+        assertThat(backfill.run()).isEqualTo(2);
+
+        verify(repo).setPanHmac(eq(1L), any());
+        verify(repo).setPanHmac(eq(5L), any());
+        verify(repo, never()).setPanHmac(eq(7L), any());
+        // последняя порция неполная — третьего запроса нет
+        verify(repo, times(2)).findWithoutPanHmac(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void duplicate_in_chunk_falls_back_to_row_by_row() {
+        byte[] b1 = {1}, b2 = {2};
+        byte[] h1 = {11}, h2 = {22};
+        when(repo.findWithoutPanHmac(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                new CardCipherRow(1L, b1, null), new CardCipherRow(2L, b2, null)));
+        when(crypto.decrypt(b1)).thenReturn("a");
+        when(crypto.decrypt(b2)).thenReturn("b");
+        when(crypto.blindIndex("a")).thenReturn(h1);
+        when(crypto.blindIndex("b")).thenReturn(h2);
+        when(repo.setPanHmac(1L, h1)).thenReturn(1);
+        when(repo.setPanHmac(2L, h2)).thenThrow(new DataIntegrityViolationException("ux_cards_pan_hmac"));
+        when(repo.findWithoutPanHmac(eq(2L), any(Pageable.class))).thenReturn(List.of());
+
+        assertThat(backfill.run()).isEqualTo(1);
+        // порция откатилась и повторена построчно: строка 1 записана повторно отдельно
+        verify(repo, times(2)).setPanHmac(1L, h1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CardExpiryJob:
+ * - UPDATE порциями, пока порция полная; дата отсечки — сегодня
+ * - пустой проход — один запрос
+ */
+@ExtendWith(MockitoExtension.class)
+class CardExpiryJobTest {
+
+    @Mock CardRepository cards;
+
+    private SimpleMeterRegistry meters;
+    private CardExpiryJob job;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        job = new CardExpiryJob(cards, new SyncTaskExecutor(), meters, 2);
+    }
+
+    @Test
+    void expires_in_chunks_until_short_chunk() {
+        when(cards.expireDueChunk(LocalDate.now(), 2)).thenReturn(2, 2, 1);
+
+        assertThat(job.run()).isEqualTo(5);
+
+        verify(cards, times(3)).expireDueChunk(any(LocalDate.class), eq(2));
+        assertThat(meters.get("cards.expired").counter().count()).isEqualTo(5.0);
+    }
+
+    @Test
+    void nothing_due_is_single_query() {
+        when(cards.expireDueChunk(any(LocalDate.class), eq(2))).thenReturn(0);
+
+        assertThat(job.run()).isZero();
+        verify(cards, times(1)).expireDueChunk(any(LocalDate.class), eq(2));
+    }
+}
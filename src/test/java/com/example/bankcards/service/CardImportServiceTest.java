@@ -0,0 +1,184 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardImportError;
+import com.example.bankcards.dto.card.CardImportResult;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardBatchWriter;
+import com.example.bankcards.repository.CardInsertRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserIdRow;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CryptoUtil;
+import com.example.bankcards.util.DataFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CardImportService:
+ * - CSV и NDJSON; пустые строки и заголовок CSV пропускаются
+ * - ошибки по номерам строк: формат, валидация, неизвестный владелец, дубль в файле и в БД
+ * - владельцы и дубли — один запрос на порцию; вставка — один batch на порцию
+ * - конфликт уникального индекса при вставке — построчный повтор, остальные строки сохраняются
+ * - список ошибок ограничен, счётчик failed — полный
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CardImportServiceTest {
+
+    @Mock CardRepository cards;
+    @Mock UserRepository users;
+    @Mock CardBatchWriter writer;
+    @Mock CryptoUtil crypto;
+    @Mock PlatformTransactionManager txManager;
+
+    private CardImportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = newService(2, 10);
+        // HMAC-заглушка: байты самого номера, чтобы одинаковые номера давали одинаковый индекс
+        when(crypto.blindIndex(anyString())).thenAnswer(inv -> ((String) inv.getArgument(0)).getBytes());
+        when(crypto.encrypt(anyString())).thenReturn(new byte[]{2, 0});
+        when(cards.findExistingPanHmacs(anyCollection())).thenReturn(List.of());
+        when(users.findIdsByUsernameIn(anyCollection())).thenReturn(List.of(new UserIdRow(10L, "bob")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private CardImportService newService(int batchSize, int maxErrors) {
+        return new CardImportService(cards, users, writer, crypto, new TransactionTemplate(txManager),
+                new ObjectMapper(), 2, batchSize, maxErrors);
+    }
+
+    private static InputStream body(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void csv_imports_in_batches_with_one_owner_lookup_per_new_name() {
+        String csv = """
+                number,expiry,ownerUsername,initialBalance
+                1111222233330001,12/29,bob,100
+                1111222233330002,12/29,bob,0
+
+                1111222233330003,01/20,bob,5
+                """;
+
+        CardImportResult res = service.importCards(body(csv), DataFormat.CSV);
+
+        assertThat(res.total()).isEqualTo(3);
+        assertThat(res.created()).isEqualTo(3);
+        assertThat(res.failed()).isZero();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CardInsertRow>> batches = ArgumentCaptor.forClass(List.class);
+        verify(writer, times(2)).insert(batches.capture());
+        assertThat(batches.getAllValues()).extracting(List::size).containsExactly(2, 1);
+        CardInsertRow last = batches.getAllValues().get(1).get(0);
+        assertThat(last.last4()).isEqualTo("0003");
+        assertThat(last.ownerId()).isEqualTo(10L);
+        assertThat(last.expiryDate()).isEqualTo(LocalDate.of(2020, 1, 31));
+        assertThat(last.status()).isEqualTo(CardStatus.EXPIRED); // уже просроченная
+        // bob разрешён в первой порции, во второй — из кэша импорта
+        verify(users, times(1)).findIdsByUsernameIn(anyCollection());
+    }
+
+    @Test
+    void ndjson_reports_row_errors_by_line_and_keeps_valid_rows() {
+        String ndjson = """
+                {"number":"1111222233330001","expiry":"12/29","ownerUsername":"bob","initialBalance":1}
+                {"number":"123","expiry":"12/29","ownerUsername":"bob","initialBalance":1}
+                not json
+                {"number":"1111222233330009","expiry":"12/29","ownerUsername":"bob","initialBalance":1}
+                {"number":"1111222233330004","expiry":"12/29","ownerUsername":"alice","initialBalance":1}
+                {"number":"1111222233330005","expiry":"13/29","ownerUsername":"bob","initialBalance":1}
+                """;
+
+        when(cards.findExistingPanHmacs(anyCollection())).thenReturn(List.of("1111222233330009".getBytes()));
+
+        CardImportResult res = service.importCards(body(ndjson), DataFormat.NDJSON);
+
+        assertThat(res.total()).isEqualTo(6);
+        assertThat(res.created()).isEqualTo(1);
+        assertThat(res.failed()).isEqualTo(5);
+        assertThat(res.errorsTruncated()).isFalse();
+        assertThat(res.errors()).extracting(CardImportError::line).containsExactly(2L, 3L, 4L, 5L, 6L);
+        assertThat(res.errors()).extracting(CardImportError::error).containsExactly(
+                "card number must be 16 digits", "invalid JSON", "card number already exists",
+                "user not found: alice", "expiry must be MM/yy");
+    }
+
+    @Test
+    void ndjson_null_line_is_a_row_error_not_a_failed_import() {
+        String ndjson = """
+                null
+                {"number":"1111222233330001","expiry":"12/29","ownerUsername":"bob","initialBalance":1}
+                """;
+
+        CardImportResult res = service.importCards(body(ndjson), DataFormat.NDJSON);
+
+        assertThat(res.created()).isEqualTo(1);
+        assertThat(res.errors()).containsExactly(new CardImportError(1, "row required"));
+    }
+
+    @Test
+    void duplicate_within_batch_is_reported() {
+        String csv = "1111222233330001,12/29,bob,1\n1111222233330001,12/29,bob,1\n";
+
+        CardImportResult res = service.importCards(body(csv), DataFormat.CSV);
+
+        assertThat(res.created()).isEqualTo(1);
+        assertThat(res.errors()).containsExactly(new CardImportError(2, "duplicate card number in upload"));
+    }
+
+    @Test
+    void unique_violation_falls_back_to_row_by_row() {
+        doThrow(new DataIntegrityViolationException("ux_cards_pan_hmac"))
+                .doNothing()
+                .doThrow(new DataIntegrityViolationException("ux_cards_pan_hmac"))
+                .when(writer).insert(anyList());
+
+        CardImportResult res = service.importCards(
+                body("1111222233330001,12/29,bob,1\n1111222233330002,12/29,bob,1\n"), DataFormat.CSV);
+
+        assertThat(res.created()).isEqualTo(1);
+        assertThat(res.errors()).containsExactly(new CardImportError(2, "card number already exists"));
+        verify(writer, times(3)).insert(anyList());
+    }
+
+    @Test
+    void error_list_is_bounded() {
+        service.shutdown();
+        service = newService(2, 1);
+
+        CardImportResult res = service.importCards(body("x\ny\nz\n"), DataFormat.CSV);
+
+        assertThat(res.failed()).isEqualTo(3);
+        assertThat(res.errors()).hasSize(1);
+        assertThat(res.errorsTruncated()).isTrue();
+        verifyNoInteractions(writer);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.KeyRotationCheckpoint;
+import com.example.bankcards.repository.CardCipherRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.KeyRotationCheckpointRepository;
+import com.example.bankcards.util.CryptoUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CardKeyRotationJob:
+ * - перешифровывает только строки не под активным ключом, compare-and-set по старому шифртексту
+ * - старый текстовый формат переводится в enc_pan
+ * - продолжает с чекпоинта; завершённая ротация не запускается повторно
+ * - конфликт compare-and-set (строка изменилась) не ломает проход
+ */
+@ExtendWith(MockitoExtension.class)
+class CardKeyRotationJobTest {
+
+    @Mock CardRepository cards;
+    @Mock KeyRotationCheckpointRepository checkpoints;
+    @Mock CryptoUtil crypto;
+    @Mock PlatformTransactionManager txManager;
+
+    private SimpleMeterRegistry meters;
+    private CardKeyRotationJob job;
+
+    private final byte[] current = {2, 1};
+    private final byte[] old = {2, 0};
+    private final byte[] fresh = {2, 1, 9};
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        job = new CardKeyRotationJob(cards, checkpoints, crypto, new TransactionTemplate(txManager),
+                new SyncTaskExecutor(), meters, 2, Duration.ZERO);
+        when(crypto.activeKeyId()).thenReturn(1);
+        lenient().when(checkpoints.save(any())).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void rotates_stale_rows_and_checkpoints_each_batch() {
+        when(checkpoints.findById(1)).thenReturn(Optional.empty());
+        when(cards.findCipherRows(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                new CardCipherRow(1L, current, null), new CardCipherRow(2L, old, null)));
+        when(cards.findCipherRows(eq(2L), any(Pageable.class))).thenReturn(List.of(
+                new CardCipherRow(3L, null, "legacy")));
+        when(crypto.isCurrent(current)).thenReturn(true);
+        when(crypto.decrypt(old)).thenReturn("1111222233334444");
+        when(crypto.decryptLegacy("legacy")).thenReturn("5555666677778888");
+        when(crypto.encrypt(anyString())).thenReturn(fresh);
+        when(cards.replaceEncPan(2L, old, fresh)).thenReturn(1);
+        when(cards.replaceLegacyNumber(3L, "legacy", fresh)).thenReturn(1);
+
+        job.run();
+
+        verify(cards, never()).replaceEncPan(eq(1L), any(), any());
+        ArgumentCaptor<KeyRotationCheckpoint> saved = ArgumentCaptor.forClass(KeyRotationCheckpoint.class);
+        verify(checkpoints, times(3)).save(saved.capture()); // две порции + отметка о завершении
+        KeyRotationCheckpoint last = saved.getValue();
+        assertThat(last.getLastCardId()).isEqualTo(3L);
+        assertThat(last.getRotated()).isEqualTo(2L);
+        assertThat(last.getFinishedAt()).isNotNull();
+        assertThat(meters.get("crypto.rotation.rows").tag("result", "rotated").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void resumes_from_checkpoint() {
+        when(checkpoints.findById(1)).thenReturn(Optional.of(KeyRotationCheckpoint.builder()
+                .targetKeyId(1).lastCardId(500L).rotated(40L).updatedAt(LocalDateTime.now()).build()));
+        when(cards.findCipherRows(eq(500L), any(Pageable.class))).thenReturn(List.of());
+
+        job.run();
+
+        verify(cards).findCipherRows(eq(500L), any(Pageable.class));
+        verify(cards, never()).findCipherRows(eq(0L), any(Pageable.class));
+    }
+
+    @Test
+    void finished_rotation_is_not_repeated() {
+        when(checkpoints.findById(1)).thenReturn(Optional.of(KeyRotationCheckpoint.builder()
+                .targetKeyId(1).lastCardId(500L).rotated(40L).finishedAt(LocalDateTime.now()).build()));
+
+        job.run();
+
+        verifyNoInteractions(cards);
+    }
+
+    @Test
+    void lost_compare_and_set_is_counted_as_conflict() {
+        when(checkpoints.findById(1)).thenReturn(Optional.empty());
+        when(cards.findCipherRows(eq(0L), any(Pageable.class))).thenReturn(List.of(new CardCipherRow(2L, old, null)));
+        when(crypto.decrypt(old)).thenReturn("1111222233334444");
+        when(crypto.encrypt(anyString())).thenReturn(fresh);
+        when(cards.replaceEncPan(2L, old, fresh)).thenReturn(0);
+
+        job.run();
+
+        assertThat(meters.get("crypto.rotation.rows").tag("result", "conflict").counter().count()).isEqualTo(1.0);
+        assertThat(meters.get("crypto.rotation.rows").tag("result", "rotated").counter().count()).isZero();
+    }
+}
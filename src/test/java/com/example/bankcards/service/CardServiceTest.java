@@ -1,21 +1,29 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardSearch;
+import com.example.bankcards.dto.card.CardView;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.util.CryptoUtil;
+import com.example.bankcards.util.DateUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,11 +33,14 @@ import static org.mockito.Mockito.*;
 
 /**
  * Юнит-тесты CardService:
- * - create: валидации, шифрование, last4, сохранение
- * - getOwned / listOwned: выборка "своих" карт и NotFound
- * - listAll: пагинация
- * - block / activate: изменение статуса + повторное чтение
- * - effectiveStatus / masked: вычисление статуса и маски
+ * - create: валидации, шифрование, blind index, last4, сохранение, начальный снимок журнала; дубль номера — 400
+ * - findByNumber: поиск по pan_hmac без расшифровки
+ * - getOwned: выборка "своей" карты по id владельца (один запрос, проекция CardView) и NotFound
+ * - search: все фильтры вместе, нормализация и отказ от неиндексируемых/некорректных фильтров
+ * - scrollOwned / scrollAll: keyset-пагинация без OFFSET и COUNT
+ * - block / activate / changeOwnedStatus: один UPDATE + одно чтение проекции; просроченная карта не активируется
+ * - changeStatusBulk / changeStatusByOwner: порции ограниченного размера
+ * - effectiveStatus / masked: вычисление статуса (по DATE, без разбора строки) и маски
  */
 @ExtendWith(MockitoExtension.class)
 class CardServiceTest {
@@ -37,6 +48,7 @@ class CardServiceTest {
     @Mock private CardRepository repo;
     @Mock private UserService userService;
     @Mock private CryptoUtil crypto;
+    @Mock private CardBalanceSnapshotRepository snapshots;
 
     @InjectMocks
     private CardService service;
@@ -54,12 +66,15 @@ class CardServiceTest {
     @Test
     void create_ok_encrypts_and_saves() {
         String plain = "1111222233334444";
-        String enc   = "IV:ENC";
+        byte[] enc   = {1, 2, 3};
+        byte[] hmac  = {9, 9};
+        when(crypto.blindIndex(plain)).thenReturn(hmac);
+        when(repo.existsByPanHmac(hmac)).thenReturn(false);
         when(userService.byUsername("bob")).thenReturn(owner);
         when(crypto.encrypt(plain)).thenReturn(enc);
 
         // save возвращает ту же карту с выставленным id
-        when(repo.save(any(Card.class))).thenAnswer(inv -> {
+        when(repo.saveAndFlush(any(Card.class))).thenAnswer(inv -> {
             Card c = inv.getArgument(0);
             c.setId(1L);
             return c;
@@ -68,18 +83,71 @@ class CardServiceTest {
         Card c = service.create(plain, "12/29", "bob", BigDecimal.valueOf(100));
 
         assertThat(c.getId()).isEqualTo(1L);
-        assertThat(c.getEncNumber()).isEqualTo(enc);
+        assertThat(c.getEncPan()).isEqualTo(enc);
+        assertThat(c.getEncNumber()).isNull(); // старый текстовый формат больше не пишется
+        assertThat(c.getPanHmac()).isEqualTo(hmac);
         assertThat(c.getLast4()).isEqualTo("4444");
         assertThat(c.getOwner()).isSameAs(owner);
-        assertThat(c.getExpiry()).isEqualTo("12/29");
+        assertThat(c.getExpiryDate()).isEqualTo(LocalDate.of(2029, 12, 31));
+        assertThat(c.getStatus()).isEqualTo(CardStatus.ACTIVE);
         assertThat(c.getStatus()).isEqualTo(CardStatus.ACTIVE);
         assertThat(c.getBalance()).isEqualByComparingTo("100");
         assertThat(c.getCreatedAt()).isInstanceOf(LocalDateTime.class);
 
-        verify(repo).save(any(Card.class));
+        verify(repo).existsByPanHmac(hmac);
+        verify(repo).saveAndFlush(any(Card.class));
+        verifyNoMoreInteractions(repo);
+        verify(snapshots).insertOpening(1L, BigDecimal.valueOf(100), c.getCreatedAt()); // seq 0 журнала
+
+    }
+
+    @Test
+    void create_rejects_duplicate_number_before_insert() {
+        byte[] hmac = {9, 9};
+        when(crypto.blindIndex("1111222233334444")).thenReturn(hmac);
+        when(repo.existsByPanHmac(hmac)).thenReturn(true);
+
+        assertThatThrownBy(() -> service.create("1111222233334444", "12/29", "bob", BigDecimal.TEN))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("already exists");
+        verify(repo, never()).saveAndFlush(any());
+        verifyNoInteractions(userService, snapshots);
+    }
+
+    @Test
+    void create_maps_unique_index_race_to_bad_request() {
+        byte[] hmac = {9, 9};
+        when(crypto.blindIndex("1111222233334444")).thenReturn(hmac);
+        when(userService.byUsername("bob")).thenReturn(owner);
+        when(repo.saveAndFlush(any(Card.class))).thenThrow(new DataIntegrityViolationException("ux_cards_pan_hmac"));
+
+        assertThatThrownBy(() -> service.create("1111222233334444", "12/29", "bob", BigDecimal.TEN))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("already exists");
+    }
+
+    @Test
+    void findByNumber_uses_blind_index_lookup() {
+        byte[] hmac = {9, 9};
+        CardView card = view(100L, CardStatus.ACTIVE, "4444");
+        when(crypto.blindIndex("1111222233334444")).thenReturn(hmac);
+        when(repo.findViewByPanHmac(hmac)).thenReturn(Optional.of(card));
+
+        assertThat(service.findByNumber("1111222233334444")).isSameAs(card);
+        verify(repo).findViewByPanHmac(hmac);
+        verify(crypto, never()).decrypt(any());
         verifyNoMoreInteractions(repo);
     }
 
+    @Test
+    void findByNumber_notFound() {
+        when(crypto.blindIndex("1111222233334444")).thenReturn(new byte[]{1});
+        when(repo.findViewByPanHmac(any())).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.findByNumber("1111222233334444"))
+                .isInstanceOf(NotFoundException.class);
+    }
+
     @Test
     void create_fails_when_number_invalid() {
         assertThatThrownBy(() ->
@@ -104,113 +172,224 @@ class CardServiceTest {
                 .hasMessageContaining("initialBalance must be >= 0");
     }
 
+    // ---- минимальное число запросов: владелец — условие самого запроса, User не загружается ----
+
     @Test
     void getOwned_ok() {
-        when(userService.byUsername("bob")).thenReturn(owner);
-        Card card = card(100L, owner, "12/29", CardStatus.ACTIVE, "4444");
-        when(repo.findByIdAndOwnerId(100L, 10L)).thenReturn(Optional.of(card));
+        CardView card = view(100L, CardStatus.ACTIVE, "4444");
+        when(repo.findOwnedView(100L, 10L)).thenReturn(Optional.of(card));
 
-        Card found = service.getOwned(100L, "bob");
+        CardView found = service.getOwned(100L, 10L);
         assertThat(found).isSameAs(card);
+
+        verify(repo).findOwnedView(100L, 10L);
+        verifyNoMoreInteractions(repo);
+        verifyNoInteractions(userService);
     }
 
     @Test
     void getOwned_notFound() {
-        when(userService.byUsername("bob")).thenReturn(owner);
-        when(repo.findByIdAndOwnerId(100L, 10L)).thenReturn(Optional.empty());
+        when(repo.findOwnedView(100L, 10L)).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> service.getOwned(100L, "bob"))
+        assertThatThrownBy(() -> service.getOwned(100L, 10L))
                 .isInstanceOf(NotFoundException.class)
                 .hasMessageContaining("Card not found");
+        verifyNoInteractions(userService);
     }
 
     @Test
-    void listOwned_default_all_user_cards() {
-        when(userService.byUsername("bob")).thenReturn(owner);
-        Card c1 = card(1L, owner, "12/29", CardStatus.ACTIVE, "1111");
-        Page<Card> page = new PageImpl<>(List.of(c1));
+    void search_owned_default_all_user_cards() {
+        CardView c1 = view(1L, CardStatus.ACTIVE, "1111");
+        when(repo.search(any(CardSearch.class), any(Pageable.class))).thenReturn(new PageImpl<>(List.of(c1)));
 
-        when(repo.findByOwner(eq(owner), any(Pageable.class))).thenReturn(page);
+        Page<CardView> res = service.search(CardSearch.ofOwner(10L, null, null), 0, 10);
 
-        Page<Card> res = service.listOwned("bob", null, null, 0, 10);
         assertThat(res.getContent()).containsExactly(c1);
-        verify(repo).findByOwner(eq(owner), any(Pageable.class));
+        verify(repo).search(eq(CardSearch.ofOwner(10L, null, null)), eq(PageRequest.of(0, 10)));
+        verifyNoMoreInteractions(repo);
+        verifyNoInteractions(userService);
     }
 
     @Test
-    void listOwned_with_status_filter() {
-        when(userService.byUsername("bob")).thenReturn(owner);
-        Card c1 = card(1L, owner, "12/29", CardStatus.BLOCKED, "1111");
-        Page<Card> page = new PageImpl<>(List.of(c1));
+    void search_applies_status_and_last4_together() {
+        when(repo.search(any(CardSearch.class), any(Pageable.class))).thenReturn(Page.empty());
 
-        when(repo.findByOwnerAndStatus(eq(owner), eq(CardStatus.BLOCKED), any(Pageable.class)))
-                .thenReturn(page);
+        service.search(CardSearch.ofOwner(10L, CardStatus.BLOCKED, " 12 "), 0, 10);
 
-        Page<Card> res = service.listOwned("bob", CardStatus.BLOCKED, null, 0, 10);
-        assertThat(res.getContent()).containsExactly(c1);
+        // раньше при status фильтр last4 терялся; теперь оба уходят в один запрос
+        verify(repo).search(eq(CardSearch.ofOwner(10L, CardStatus.BLOCKED, "12")), any(Pageable.class));
     }
 
     @Test
-    void listOwned_with_last4_filter() {
-        when(userService.byUsername("bob")).thenReturn(owner);
-        Card c1 = card(1L, owner, "12/29", CardStatus.ACTIVE, "1234");
-        Page<Card> page = new PageImpl<>(List.of(c1));
+    void search_normalizes_blank_filters_and_caps_size() {
+        when(repo.search(any(CardSearch.class), any(Pageable.class))).thenReturn(Page.empty());
 
-        when(repo.findByOwnerAndLast4Containing(eq(owner), eq("1234"), any(Pageable.class)))
-                .thenReturn(page);
+        service.search(new CardSearch(null, " ", "", null, "", null, null, null), -1, 1000);
 
-        Page<Card> res = service.listOwned("bob", null, "1234", 0, 10);
-        assertThat(res.getContent()).containsExactly(c1);
+        verify(repo).search(eq(new CardSearch(null, null, null, null, null, null, null, null)), eq(PageRequest.of(0, 10)));
     }
 
     @Test
-    void listAll_returns_page() {
-        Card c1 = card(1L, owner, "12/29", CardStatus.ACTIVE, "1111");
-        when(repo.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(c1)));
-
-        Page<Card> res = service.listAll(0, 10);
-        assertThat(res.getContent()).containsExactly(c1);
+    void search_rejects_non_indexable_or_invalid_filters() {
+        assertThatThrownBy(() -> service.search(CardSearch.ofOwner(10L, null, "12a"), 0, 10))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("last4");
+        assertThatThrownBy(() -> service.search(CardSearch.ofOwner(10L, null, "12345"), 0, 10))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("last4");
+        assertThatThrownBy(() -> service.search(new CardSearch(null, null, null, null, "12/29", "01/29", null, null), 0, 10))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("expiryFrom");
+        assertThatThrownBy(() -> service.search(new CardSearch(null, null, null, null, "13/25", null, null, null), 0, 10))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("MM/yy");
+        assertThatThrownBy(() -> service.search(new CardSearch(null, null, null, null, null, null,
+                BigDecimal.TEN, BigDecimal.ONE), 0, 10))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("minBalance");
+        verifyNoInteractions(repo);
     }
 
-    @Test
-    void block_ok_changes_status_and_reloads() {
-        Card before = card(5L, owner, "12/29", CardStatus.ACTIVE, "2222");
-        Card after  = card(5L, owner, "12/29", CardStatus.BLOCKED, "2222");
+    // ---- смена статуса: один UPDATE + одно чтение проекции, без загрузки сущности ----
 
-        // findById (первый вызов) -> ACTIVE
-        when(repo.findById(5L)).thenReturn(Optional.of(before))  // 1-й вызов
-                .thenReturn(Optional.of(after));  // 2-й вызов (после save)
-        when(repo.save(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
+    @Test
+    void block_is_single_update_plus_one_read() {
+        CardView after = view(5L, CardStatus.BLOCKED, "2222");
+        when(repo.updateStatus(5L, CardStatus.BLOCKED)).thenReturn(1);
+        when(repo.findViewById(5L)).thenReturn(Optional.of(after));
 
-        Card res = service.block(5L);
+        CardView res = service.block(5L);
 
-        assertThat(res.getStatus()).isEqualTo(CardStatus.BLOCKED);
-        verify(repo, times(2)).findById(5L);
-        verify(repo).save(argThat(c -> c.getStatus() == CardStatus.BLOCKED));
+        assertThat(res.status()).isEqualTo(CardStatus.BLOCKED);
+        verify(repo).updateStatus(5L, CardStatus.BLOCKED);
+        verify(repo).findViewById(5L);
+        verifyNoMoreInteractions(repo);
     }
 
     @Test
     void block_notFound() {
-        when(repo.findById(999L)).thenReturn(Optional.empty());
+        when(repo.updateStatus(999L, CardStatus.BLOCKED)).thenReturn(0);
+        when(repo.findViewById(999L)).thenReturn(Optional.empty());
         assertThatThrownBy(() -> service.block(999L))
                 .isInstanceOf(NotFoundException.class)
                 .hasMessageContaining("card not found");
     }
 
     @Test
-    void activate_ok_changes_status_and_reloads() {
-        Card before = card(6L, owner, "12/29", CardStatus.BLOCKED, "3333");
-        Card after  = card(6L, owner, "12/29", CardStatus.ACTIVE,  "3333");
+    void block_expired_card_stays_expired() {
+        // условие UPDATE не трогает EXPIRED: 0 строк, карта существует и по-прежнему EXPIRED
+        when(repo.updateStatus(6L, CardStatus.BLOCKED)).thenReturn(0);
+        when(repo.findViewById(6L)).thenReturn(Optional.of(view(6L, CardStatus.EXPIRED, "3333")));
+
+        assertThatThrownBy(() -> service.block(6L))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("expired");
+    }
+
+    @Test
+    void changeOwnedStatus_expired_card_stays_expired() {
+        when(repo.updateStatusOwned(6L, 10L, CardStatus.BLOCKED)).thenReturn(0);
+        when(repo.findOwnedView(6L, 10L)).thenReturn(Optional.of(view(6L, CardStatus.EXPIRED, "3333")));
+
+        assertThatThrownBy(() -> service.changeOwnedStatus(6L, 10L, CardStatus.BLOCKED))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void activate_is_single_update_plus_one_read() {
+        when(repo.activate(6L, LocalDate.now())).thenReturn(1);
+        when(repo.findViewById(6L)).thenReturn(Optional.of(view(6L, CardStatus.ACTIVE, "3333")));
+
+        assertThat(service.activate(6L).status()).isEqualTo(CardStatus.ACTIVE);
+        verify(repo).activate(6L, LocalDate.now());
+        verify(repo, never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void activate_expired_card_is_rejected() {
+        // условие UPDATE не трогает EXPIRED / просроченную карту: 0 строк, но карта существует
+        when(repo.activate(6L, LocalDate.now())).thenReturn(0);
+        when(repo.findViewById(6L)).thenReturn(Optional.of(view(6L, CardStatus.EXPIRED, "3333")));
+
+        assertThatThrownBy(() -> service.activate(6L))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("expired");
+        assertThatThrownBy(() -> service.changeStatus(6L, CardStatus.ACTIVE))
+                .isInstanceOf(BadRequestException.class);
+        verify(repo, never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void activate_missing_card_is_not_found() {
+        when(repo.activate(999L, LocalDate.now())).thenReturn(0);
+        when(repo.findViewById(999L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.activate(999L)).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void changeOwnedStatus_foreign_card_is_not_found() {
+        when(repo.updateStatusOwned(5L, 10L, CardStatus.BLOCKED)).thenReturn(0);
+
+        when(repo.findOwnedView(5L, 10L)).thenReturn(Optional.empty());
+        assertThatThrownBy(() -> service.changeOwnedStatus(5L, 10L, CardStatus.BLOCKED))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void changeStatusBulk_updates_in_bounded_chunks_and_dedups() {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= CardService.STATUS_CHUNK * 2L + 5; i++) ids.add(i);
+        ids.add(1L); // дубль не попадает в IN второй раз
+        when(repo.updateStatusIn(anyCollection(), eq(CardStatus.BLOCKED))).thenReturn(1000, 1000, 3);
+
+        int affected = service.changeStatusBulk(ids, CardStatus.BLOCKED);
+
+        assertThat(affected).isEqualTo(2003);
+        ArgumentCaptor<Collection<Long>> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(repo, times(3)).updateStatusIn(chunks.capture(), eq(CardStatus.BLOCKED));
+        assertThat(chunks.getAllValues()).extracting(Collection::size)
+                .containsExactly(CardService.STATUS_CHUNK, CardService.STATUS_CHUNK, 5);
+    }
+
+    @Test
+    void changeStatusBulk_rejects_expired_and_empty() {
+        assertThatThrownBy(() -> service.changeStatusBulk(List.of(1L), CardStatus.EXPIRED))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> service.changeStatusBulk(List.of(), CardStatus.BLOCKED))
+                .isInstanceOf(BadRequestException.class);
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void changeStatusBulk_activation_skips_expired_cards() {
+        when(repo.activateIn(anyCollection(), eq(LocalDate.now()))).thenReturn(1); // из двух id одна карта просрочена
 
-        when(repo.findById(6L)).thenReturn(Optional.of(before))
-                .thenReturn(Optional.of(after));
-        when(repo.save(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
+        assertThat(service.changeStatusBulk(List.of(1L, 2L), CardStatus.ACTIVE)).isEqualTo(1);
+        verify(repo).activateIn(List.of(1L, 2L), LocalDate.now());
+        verify(repo, never()).updateStatusIn(anyCollection(), any());
+    }
 
-        Card res = service.activate(6L);
+    @Test
+    void changeStatusByOwner_activation_skips_expired_cards() {
+        when(userService.byUsername("bob")).thenReturn(owner);
+        when(repo.activateByOwnerChunk(10L, LocalDate.now(), CardService.STATUS_CHUNK)).thenReturn(3);
 
-        assertThat(res.getStatus()).isEqualTo(CardStatus.ACTIVE);
-        verify(repo, times(2)).findById(6L);
-        verify(repo).save(argThat(c -> c.getStatus() == CardStatus.ACTIVE));
+        assertThat(service.changeStatusByOwner("bob", CardStatus.ACTIVE)).isEqualTo(3);
+        verify(repo, never()).updateStatusByOwnerChunk(any(), any(), anyInt());
+    }
+
+    @Test
+    void changeStatusBulk_block_does_not_count_expired_cards() {
+        // card 2 — EXPIRED: условие UPDATE её пропускает, статус не меняется и в счёт не входит
+        when(repo.updateStatusIn(List.of(1L, 2L), CardStatus.BLOCKED)).thenReturn(1);
+
+        assertThat(service.changeStatusBulk(List.of(1L, 2L), CardStatus.BLOCKED)).isEqualTo(1);
+    }
+
+    @Test
+    void changeStatusByOwner_loops_until_short_chunk() {
+        when(userService.byUsername("bob")).thenReturn(owner);
+        when(repo.updateStatusByOwnerChunk(10L, "BLOCKED", CardService.STATUS_CHUNK))
+                .thenReturn(CardService.STATUS_CHUNK, 7);
+
+        assertThat(service.changeStatusByOwner("bob", CardStatus.BLOCKED)).isEqualTo(CardService.STATUS_CHUNK + 7);
+        verify(repo, times(2)).updateStatusByOwnerChunk(10L, "BLOCKED", CardService.STATUS_CHUNK);
     }
 
     @Test
@@ -225,6 +404,22 @@ class CardServiceTest {
         assertThat(service.effectiveStatus(expired)).isEqualTo(CardStatus.EXPIRED);
     }
 
+    @Test
+    void effectiveStatus_trusts_stored_expired_without_date_check() {
+        assertThat(service.effectiveStatus(LocalDate.of(2099, 12, 31), CardStatus.EXPIRED)).isEqualTo(CardStatus.EXPIRED);
+    }
+
+    @Test
+    void create_stores_already_past_expiry_as_expired() {
+        when(crypto.blindIndex(anyString())).thenReturn(new byte[32]);
+        when(userService.byUsername("bob")).thenReturn(owner);
+        when(repo.saveAndFlush(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        Card c = service.create("1111222233334444", "01/20", "bob", BigDecimal.TEN);
+
+        assertThat(c.getStatus()).isEqualTo(CardStatus.EXPIRED);
+    }
+
     @Test
     void effectiveStatus_keeps_actual_when_not_expired() {
         Card active = card(8L, owner, "12/99", CardStatus.BLOCKED, "5555");
@@ -249,12 +444,83 @@ class CardServiceTest {
                 .hasMessageContaining("Encrypt failed");
     }
 
+    @Test
+    void revealNumber_reads_binary_and_legacy_rows() {
+        Card fresh = card(1L, owner, "12/29", CardStatus.ACTIVE, "4444");
+        fresh.setEncPan(new byte[]{1, 9});
+        Card legacy = card(2L, owner, "12/29", CardStatus.ACTIVE, "5555");
+        legacy.setEncNumber("aXY=:Y2lwaGVy");
+        when(crypto.decrypt(fresh.getEncPan())).thenReturn("1111222233334444");
+        when(crypto.decryptLegacy("aXY=:Y2lwaGVy")).thenReturn("1111222233335555");
+
+        assertThat(service.revealNumber(fresh)).isEqualTo("1111222233334444");
+        assertThat(service.revealNumber(legacy)).isEqualTo("1111222233335555");
+    }
+
     // --- helpers ---
+    // ---- keyset: limit size+1, без count; курсор переходит в условие id < ... ----
+
+    @Test
+    void scrollOwned_first_page_has_next_when_extra_row_returned() {
+        List<CardView> rows = List.of(view(30L, CardStatus.ACTIVE, "3333"),
+                view(20L, CardStatus.ACTIVE, "2222"),
+                view(10L, CardStatus.ACTIVE, "1111"));
+        when(repo.scrollViewsByOwner(eq(10L), eq(Long.MAX_VALUE), any(Pageable.class)))
+                .thenReturn(rows);
+
+        Slice<CardView> res = service.scrollOwned(10L, null, null, 2);
+
+        assertThat(res.getContent()).extracting(CardView::id).containsExactly(30L, 20L);
+        assertThat(res.hasNext()).isTrue();
+        ArgumentCaptor<Pageable> p = ArgumentCaptor.forClass(Pageable.class);
+        verify(repo).scrollViewsByOwner(eq(10L), eq(Long.MAX_VALUE), p.capture());
+        assertThat(p.getValue().getPageSize()).isEqualTo(3);
+        assertThat(p.getValue().getOffset()).isZero();
+        verifyNoMoreInteractions(repo);
+    }
+
+    @Test
+    void scrollOwned_with_status_continues_after_cursor() {
+        when(repo.scrollViewsByOwnerAndStatus(eq(10L), eq(CardStatus.BLOCKED), eq(20L), any(Pageable.class)))
+                .thenReturn(List.of(view(10L, CardStatus.BLOCKED, "1111")));
+
+        Slice<CardView> res = service.scrollOwned(10L, CardStatus.BLOCKED, 20L, 2);
+
+        assertThat(res.getContent()).hasSize(1);
+        assertThat(res.hasNext()).isFalse();
+    }
+
+    @Test
+    void scrollAll_uses_primary_key_range() {
+        when(repo.scrollViews(eq(500L), any(Pageable.class))).thenReturn(List.of());
+
+        Slice<CardView> res = service.scrollAll(null, 500L, 10);
+
+        assertThat(res.getContent()).isEmpty();
+        assertThat(res.hasNext()).isFalse();
+        verify(repo, never()).search(any(), any());
+    }
+
+    @Test
+    void scrollAll_with_status_uses_status_index() {
+        when(repo.scrollViewsByStatus(eq(CardStatus.EXPIRED), eq(Long.MAX_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(view(3L, CardStatus.EXPIRED, "0003")));
+
+        Slice<CardView> res = service.scrollAll(CardStatus.EXPIRED, null, 10);
+
+        assertThat(res.getContent()).extracting(CardView::status).containsExactly(CardStatus.EXPIRED);
+        verify(repo, never()).scrollViews(any(), any());
+    }
+
+    private static CardView view(Long id, CardStatus status, String last4) {
+        return new CardView(id, last4, LocalDate.of(2029, 12, 31), status, BigDecimal.ZERO, "bob");
+    }
+
     private Card card(Long id, User owner, String expiry, CardStatus status, String last4) {
         Card c = new Card();
         c.setId(id);
         c.setOwner(owner);
-        c.setExpiry(expiry);
+        c.setExpiryDate(DateUtil.parseExpiry(expiry));
         c.setStatus(status);
         c.setLast4(last4);
         c.setCreatedAt(LocalDateTime.now());
@@ -0,0 +1,91 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.DataFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ExportService:
+ * - NDJSON: объект на строку, срок в формате API, эффективный статус
+ * - CSV: заголовок, экранирование запятых/кавычек
+ * - поток строк из репозитория закрывается (курсор освобождается)
+ */
+@ExtendWith(MockitoExtension.class)
+class ExportServiceTest {
+
+    @Mock CardRepository cards;
+    @Mock TransferRepository transfers;
+    @Mock CardService cardService;
+
+    private ExportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ExportService(cards, transfers, cardService, new ObjectMapper());
+    }
+
+    @Test
+    void cards_as_ndjson() throws Exception {
+        LocalDate exp = LocalDate.of(2029, 12, 31);
+        AtomicBoolean closed = new AtomicBoolean();
+        when(cards.streamViews()).thenReturn(Stream.of(
+                new CardView(1L, "4444", exp, CardStatus.ACTIVE, new BigDecimal("10.50"), "bob"),
+                new CardView(2L, "5555", exp, CardStatus.BLOCKED, BigDecimal.ZERO, "alice")).onClose(() -> closed.set(true)));
+        when(cardService.effectiveStatus(eq(exp), any())).thenAnswer(inv -> inv.getArgument(1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long n = service.exportCards(out, DataFormat.NDJSON);
+
+        assertThat(n).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"id\":1,\"last4\":\"4444\",\"expiry\":\"12/29\",\"status\":\"ACTIVE\",\"balance\":10.50,\"owner\":\"bob\"}\n"
+                + "{\"id\":2,\"last4\":\"5555\",\"expiry\":\"12/29\",\"status\":\"BLOCKED\",\"balance\":0,\"owner\":\"alice\"}\n");
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void cards_as_csv_with_header_and_escaping() throws Exception {
+        LocalDate exp = LocalDate.of(2020, 1, 31);
+        when(cards.streamViews()).thenReturn(Stream.of(
+                new CardView(1L, "4444", exp, CardStatus.ACTIVE, BigDecimal.ONE, "o\"neil,jr")));
+        when(cardService.effectiveStatus(exp, CardStatus.ACTIVE)).thenReturn(CardStatus.EXPIRED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.exportCards(out, DataFormat.CSV);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "id,last4,expiry,status,balance,owner\n1,4444,01/20,EXPIRED,1,\"o\"\"neil,jr\"\n");
+    }
+
+    @Test
+    void transfers_as_csv() throws Exception {
+        when(transfers.streamViews()).thenReturn(Stream.of(
+                new TransferView(7L, 1L, 2L, 10L, new BigDecimal("5.00"), LocalDateTime.of(2025, 3, 1, 12, 0, 5))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(service.exportTransfers(out, DataFormat.CSV)).isEqualTo(1);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "id,fromCardId,toCardId,userId,amount,createdAt\n7,1,2,10,5.00,2025-03-01T12:00:05\n");
+    }
+}
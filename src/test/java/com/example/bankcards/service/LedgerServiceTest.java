@@ -0,0 +1,88 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.card.LedgerBalanceResponse;
+import com.example.bankcards.entity.CardBalanceSnapshot;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerDelta;
+import com.example.bankcards.repository.LedgerWriter;
+import com.example.bankcards.repository.PostingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * LedgerService.balance: последний снимок + проводки после него (только хвост после seq снимка),
+ * сверка с cards.balance; без снимка или карты — 404. Запись проводок — см. TransferServiceTest.
+ */
+@ExtendWith(MockitoExtension.class)
+class LedgerServiceTest {
+
+    @Mock PostingRepository postings;
+    @Mock CardBalanceSnapshotRepository snapshots;
+    @Mock LedgerWriter writer;
+    @Mock CardRepository cards;
+
+    private LedgerService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new LedgerService(postings, snapshots, writer, cards, new SimpleMeterRegistry(), 100);
+    }
+
+    private void card(String balance) {
+        when(cards.findViewById(1L)).thenReturn(Optional.of(new CardView(1L, "0001", LocalDate.of(2030, 12, 31),
+                CardStatus.ACTIVE, new BigDecimal(balance), "bob")));
+    }
+
+    @Test
+    void balance_is_snapshot_plus_tail() {
+        card("70.00");
+        when(snapshots.findFirstByCardIdOrderBySeqDesc(1L)).thenReturn(Optional.of(
+                new CardBalanceSnapshot(1L, 200L, new BigDecimal("100.00"), LocalDateTime.now())));
+        when(postings.deltaAfter(1L, 200L)).thenReturn(new LedgerDelta(3, new BigDecimal("-30.00")));
+
+        LedgerBalanceResponse r = service.balance(1L);
+
+        assertThat(r.snapshotSeq()).isEqualTo(200L);
+        assertThat(r.postingsAfterSnapshot()).isEqualTo(3);
+        assertThat(r.ledgerBalance()).isEqualByComparingTo("70");
+        assertThat(r.consistent()).isTrue();
+    }
+
+    @Test
+    void mismatch_is_reported_not_fixed() {
+        card("75.00");
+        when(snapshots.findFirstByCardIdOrderBySeqDesc(1L)).thenReturn(Optional.of(
+                new CardBalanceSnapshot(1L, 0L, new BigDecimal("70.00"), LocalDateTime.now())));
+        when(postings.deltaAfter(1L, 0L)).thenReturn(new LedgerDelta(0, null)); // sum() без строк — NULL
+
+        LedgerBalanceResponse r = service.balance(1L);
+
+        assertThat(r.ledgerBalance()).isEqualByComparingTo("70");
+        assertThat(r.consistent()).isFalse();
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void unknown_card_is_not_found() {
+        when(cards.findViewById(1L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.balance(1L)).isInstanceOf(NotFoundException.class);
+        verifyNoInteractions(snapshots, postings);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.CardAmountRow;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.DataFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * StatementService:
+ * - входящий остаток = баланс минус движения с начала периода, остаток после каждой строки, исходящий остаток
+ * - списания и зачисления сливаются по (created_at, id); курсоры закрываются
+ * - месячные выписки: порции карт, по четыре запроса на порцию; движения каждой карты — только в её выписке
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class StatementServiceTest {
+
+    @Mock CardRepository cards;
+    @Mock TransferRepository transfers;
+    @Mock CardService cardService;
+
+    private StatementService service;
+
+    private static final LocalDateTime MAY = LocalDateTime.of(2026, 5, 1, 0, 0);
+    private static final LocalDateTime JUNE = LocalDateTime.of(2026, 6, 1, 0, 0);
+
+    @BeforeEach
+    void setUp() {
+        service = new StatementService(cards, transfers, cardService, new ObjectMapper(), 2);
+        when(transfers.sumDebitsSince(anyCollection(), any())).thenReturn(List.of());
+        when(transfers.sumCreditsSince(anyCollection(), any())).thenReturn(List.of());
+        when(transfers.streamDebits(anyCollection(), any(), any())).thenReturn(Stream.empty());
+        when(transfers.streamCredits(anyCollection(), any(), any())).thenReturn(Stream.empty());
+    }
+
+    private static CardView card(long id, String balance) {
+        return new CardView(id, "0000", LocalDate.of(2029, 12, 31), CardStatus.ACTIVE, new BigDecimal(balance), "bob");
+    }
+
+    private static TransferView t(long id, long from, long to, String amount, LocalDateTime at) {
+        return new TransferView(id, from, to, 10L, new BigDecimal(amount), at);
+    }
+
+    @Test
+    void card_statement_merges_debits_and_credits_with_running_balance() throws Exception {
+        when(cardService.getOwned(1L, 10L)).thenReturn(card(1, "100"));
+        // с 1 мая: списано 30 + 5 (в том числе 5 — уже в июне), зачислено 20
+        when(transfers.sumDebitsSince(List.of(1L), MAY)).thenReturn(List.of(new CardAmountRow(1L, new BigDecimal("35"))));
+        when(transfers.sumCreditsSince(List.of(1L), MAY)).thenReturn(List.of(new CardAmountRow(1L, new BigDecimal("20"))));
+        AtomicInteger closed = new AtomicInteger();
+        LocalDateTime at = MAY.plusDays(3);
+        when(transfers.streamDebits(List.of(1L), MAY, JUNE)).thenReturn(Stream.of(
+                t(7, 1, 2, "10", at), t(9, 1, 3, "20", at.plusHours(1))).onClose(closed::incrementAndGet));
+        when(transfers.streamCredits(List.of(1L), MAY, JUNE)).thenReturn(Stream.of(
+                t(8, 2, 1, "20", at)).onClose(closed::incrementAndGet));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long n = service.exportCardStatement(10L, 1L, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31), out,
+                DataFormat.CSV);
+
+        assertThat(n).isEqualTo(5);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).containsExactly(
+                "cardId,entry,transferId,counterpartyCardId,createdAt,amount,balance",
+                "1,OPENING,,,2026-05-01T00:00,,115",
+                "1,DEBIT,7,2,2026-05-04T00:00,-10,105",
+                "1,CREDIT,8,2,2026-05-04T00:00,20,125",
+                "1,DEBIT,9,3,2026-05-04T01:00,-20,105",
+                "1,CLOSING,,,2026-06-01T00:00,,105");
+        assertThat(closed).hasValue(2);
+    }
+
+    @Test
+    void from_after_to_is_rejected() {
+        assertThatThrownBy(() -> service.exportCardStatement(10L, 1L, LocalDate.of(2026, 6, 1),
+                LocalDate.of(2026, 5, 1), new ByteArrayOutputStream(), DataFormat.CSV))
+                .isInstanceOf(BadRequestException.class);
+        verifyNoInteractions(transfers);
+    }
+
+    @Test
+    void monthly_statements_are_built_per_chunk_of_cards() throws Exception {
+        when(cards.streamViews()).thenReturn(Stream.of(card(1, "10"), card(2, "0"), card(3, "5")));
+        LocalDateTime at = MAY.plusDays(1);
+        // перевод 1 -> 2 виден в обеих выписках первой порции
+        when(transfers.streamDebits(List.of(1L, 2L), MAY, JUNE)).thenReturn(Stream.of(t(4, 1, 2, "3", at)));
+        when(transfers.streamCredits(List.of(1L, 2L), MAY, JUNE)).thenReturn(Stream.of(t(4, 1, 2, "3", at)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long n = service.exportMonthlyStatements(YearMonth.of(2026, 5), out, DataFormat.NDJSON);
+
+        assertThat(n).isEqualTo(8);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines.get(1)).isEqualTo("{\"cardId\":1,\"entry\":\"DEBIT\",\"transferId\":4,\"counterpartyCardId\":2,"
+                + "\"createdAt\":\"2026-05-02T00:00\",\"amount\":-3,\"balance\":7}");
+        assertThat(lines.get(4)).contains("\"cardId\":2,\"entry\":\"CREDIT\"").contains("\"balance\":3");
+        assertThat(lines.get(7)).contains("\"cardId\":3,\"entry\":\"CLOSING\"").contains("\"balance\":5");
+        verify(transfers).sumDebitsSince(List.of(1L, 2L), MAY);
+        verify(transfers).sumDebitsSince(List.of(3L), MAY);
+        verify(transfers, times(2)).streamCredits(anyCollection(), eq(MAY), eq(JUNE));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.transfer.TransferView;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.util.CursorUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * TransferHistoryService:
+ * - первая страница без дат — весь диапазон, запрос size+1 строк, hasNext по лишней строке
+ * - даты включительно: [from 00:00, to+1 00:00), курсор заменяет верхнюю границу
+ * - фильтр по карте — две ветки (списания/зачисления) по индексам карты, слитые по (created_at, id); from > to — 400
+ */
+@ExtendWith(MockitoExtension.class)
+class TransferHistoryServiceTest {
+
+    @Mock private TransferRepository transfers;
+
+    @InjectMocks
+    private TransferHistoryService service;
+
+    private static TransferView view(long id, LocalDateTime at) {
+        return new TransferView(id, 1L, 2L, 10L, BigDecimal.ONE, at);
+    }
+
+    @Test
+    void first_page_without_dates_scans_whole_range_and_detects_next() {
+        LocalDateTime t = LocalDateTime.of(2026, 5, 1, 10, 0);
+        when(transfers.scrollByUser(eq(10L), any(), any(), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(view(3, t), view(2, t), view(1, t)));
+
+        Slice<TransferView> res = service.scroll(10L, null, null, null, null, 2);
+
+        assertThat(res.getContent()).extracting(TransferView::id).containsExactly(3L, 2L);
+        assertThat(res.hasNext()).isTrue();
+        ArgumentCaptor<Pageable> p = ArgumentCaptor.forClass(Pageable.class);
+        ArgumentCaptor<LocalDateTime> lower = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> upper = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(transfers).scrollByUser(eq(10L), lower.capture(), upper.capture(), eq(Long.MAX_VALUE), p.capture());
+        assertThat(p.getValue().getPageSize()).isEqualTo(3);
+        assertThat(p.getValue().getOffset()).isZero();
+        assertThat(lower.getValue()).isBefore(t);
+        assertThat(upper.getValue()).isAfter(t);
+    }
+
+    @Test
+    void dates_are_inclusive_days() {
+        when(transfers.scrollByUser(anyLong(), any(), any(), anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        Slice<TransferView> res = service.scroll(10L, null, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31),
+                null, 10);
+
+        assertThat(res.hasNext()).isFalse();
+        verify(transfers).scrollByUser(eq(10L), eq(LocalDateTime.of(2026, 5, 1, 0, 0)),
+                eq(LocalDateTime.of(2026, 6, 1, 0, 0)), eq(0L), any(Pageable.class));
+    }
+
+    @Test
+    void cursor_replaces_upper_bound_and_card_filter_uses_card_query() {
+        LocalDateTime t = LocalDateTime.of(2026, 5, 10, 8, 0, 0, 5_000);
+        when(transfers.scrollDebitsByCard(anyLong(), anyLong(), any(), any(), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(view(40, t)));
+
+        Slice<TransferView> res = service.scroll(10L, 5L, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31),
+                new CursorUtil.TimeKey(t, 41L), 0);
+
+        assertThat(res.getContent()).hasSize(1);
+        verify(transfers).scrollDebitsByCard(eq(10L), eq(5L), eq(LocalDateTime.of(2026, 5, 1, 0, 0)), eq(t),
+                eq(41L), argThat(p -> p.getPageSize() == 11)); // size 0 -> 10 по умолчанию
+        verify(transfers).scrollCreditsByCard(eq(10L), eq(5L), eq(LocalDateTime.of(2026, 5, 1, 0, 0)), eq(t),
+                eq(41L), argThat(p -> p.getPageSize() == 11));
+        verify(transfers, never()).scrollByUser(anyLong(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void card_branches_are_merged_newest_first_and_cut_to_page() {
+        LocalDateTime t = LocalDateTime.of(2026, 5, 10, 8, 0);
+        // списания и зачисления карты — каждая ветка уже в порядке (created_at desc, id desc)
+        when(transfers.scrollDebitsByCard(anyLong(), anyLong(), any(), any(), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(view(9, t.plusMinutes(3)), view(4, t.plusMinutes(1)), view(2, t)));
+        when(transfers.scrollCreditsByCard(anyLong(), anyLong(), any(), any(), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(view(7, t.plusMinutes(2)), view(3, t)));
+
+        Slice<TransferView> res = service.scroll(10L, 5L, null, null, null, 3);
+
+        assertThat(res.getContent()).extracting(TransferView::id).containsExactly(9L, 7L, 4L);
+        assertThat(res.hasNext()).isTrue();
+    }
+
+    @Test
+    void from_after_to_is_rejected() {
+        assertThatThrownBy(() -> service.scroll(10L, null, LocalDate.of(2026, 6, 1), LocalDate.of(2026, 5, 1),
+                null, 10)).isInstanceOf(BadRequestException.class);
+        verifyNoInteractions(transfers);
+    }
+}
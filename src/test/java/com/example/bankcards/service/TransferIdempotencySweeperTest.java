@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * TransferIdempotencySweeper:
+ * - DELETE порциями, пока порция полная; отсечка — сейчас минус ttl
+ * - пустой проход — один запрос на таблицу
+ * - завершённые асинхронные заявки старше ttl удаляются той же отсечкой
+ */
+@ExtendWith(MockitoExtension.class)
+class TransferIdempotencySweeperTest {
+
+    @Mock TransferIdempotencyKeyRepository keys;
+    @Mock TransferSubmissionRepository submissions;
+
+    private SimpleMeterRegistry meters;
+    private TransferIdempotencySweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        sweeper = new TransferIdempotencySweeper(keys, submissions, meters, Duration.ofHours(24), 2);
+    }
+
+    @Test
+    void deletes_in_chunks_until_short_chunk() {
+        when(keys.deleteCreatedBeforeChunk(any(LocalDateTime.class), eq(2))).thenReturn(2, 2, 1);
+
+        assertThat(sweeper.run()).isEqualTo(5);
+
+        ArgumentCaptor<LocalDateTime> before = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(keys, times(3)).deleteCreatedBeforeChunk(before.capture(), eq(2));
+        assertThat(before.getValue()).isBetween(
+                LocalDateTime.now().minusHours(24).minusMinutes(1), LocalDateTime.now().minusHours(24));
+        assertThat(meters.get("transfers.idempotency.swept").counter().count()).isEqualTo(5.0);
+    }
+
+    @Test
+    void nothing_expired_is_single_query() {
+        when(keys.deleteCreatedBeforeChunk(any(LocalDateTime.class), eq(2))).thenReturn(0);
+
+        assertThat(sweeper.run()).isZero();
+        verify(keys, times(1)).deleteCreatedBeforeChunk(any(LocalDateTime.class), eq(2));
+        verify(submissions, times(1)).deleteFinishedCreatedBeforeChunk(any(LocalDateTime.class), eq(2));
+    }
+
+    @Test
+    void finished_submissions_are_removed_with_same_cutoff() {
+        when(submissions.deleteFinishedCreatedBeforeChunk(any(LocalDateTime.class), eq(2))).thenReturn(2, 1);
+
+        assertThat(sweeper.run()).isEqualTo(3);
+
+        ArgumentCaptor<LocalDateTime> keysBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> subsBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(keys).deleteCreatedBeforeChunk(keysBefore.capture(), eq(2));
+        verify(submissions, times(2)).deleteFinishedCreatedBeforeChunk(subsBefore.capture(), eq(2));
+        assertThat(subsBefore.getValue()).isEqualTo(keysBefore.getValue());
+        assertThat(meters.get("transfers.async.swept").counter().count()).isEqualTo(3.0);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.exception.BadRequestException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Стресс-тест TransferService без БД: условные UPDATE debit/credit эмулируются над общими картами.
+ * Строковая блокировка InnoDB — ReentrantLock на карту: берётся UPDATE-ом, отпускается при commit/rollback,
+ * ожидание ограничено, как innodb_lock_wait_timeout; rollback возвращает изменённые балансы.
+ * Проверяем:
+ * - встречные переводы в много потоков: сумма балансов сохраняется, отрицательных балансов нет,
+ *   таймаутов ожидания (взаимоблокировок) нет благодаря порядку UPDATE по id;
+ * - одна «горячая» карта-источник: проходит ровно столько списаний, сколько покрывает баланс.
+ * Оба сценария — без полос и с TransferStripes (2 полосы: у перевода обе карты часто в одной полосе).
+ */
+class TransferServiceConcurrencyTest {
+    private static final int CARDS = 4, THREADS = 8;
+
+    private final Map<Long, Card> cards = new HashMap<>();
+    private final Map<Long, ReentrantLock> rowLocks = new HashMap<>();
+    private final ThreadLocal<Tx> current = ThreadLocal.withInitial(Tx::new);
+    private final AtomicInteger lockTimeouts = new AtomicInteger();
+    private CardRepository cardRepo;
+    private CardService cardService;
+    private TransferService service;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= CARDS; id++) {
+            Card c = new Card();
+            c.setId(id);
+            c.setBalance(new BigDecimal("1000.00"));
+            c.setStatus(CardStatus.ACTIVE);
+            cards.put(id, c);
+            rowLocks.put(id, new ReentrantLock());
+        }
+
+        cardRepo = mock(CardRepository.class);
+        when(cardRepo.debit(anyLong(), eq(10L), any(), any())).thenAnswer(inv -> {
+            Card c = lockRow(inv.getArgument(0));
+            BigDecimal amount = inv.getArgument(2);
+            if (c.getBalance().compareTo(amount) < 0) return 0;
+            current.get().undo.push(Map.entry(c, c.getBalance()));
+            c.setBalance(c.getBalance().subtract(amount));
+            return 1;
+        });
+        when(cardRepo.credit(anyLong(), eq(10L), any(), any())).thenAnswer(inv -> {
+            Card c = lockRow(inv.getArgument(0));
+            current.get().undo.push(Map.entry(c, c.getBalance()));
+            c.setBalance(c.getBalance().add(inv.getArgument(2)));
+            return 1;
+        });
+        when(cardRepo.findOwnedView(anyLong(), eq(10L))).thenAnswer(inv -> Optional.of(
+                new CardView(inv.getArgument(0), "0001", LocalDate.of(2030, 12, 31), CardStatus.ACTIVE, null, "u")));
+        cardService = mock(CardService.class);
+        when(cardService.effectiveStatus(any(), any())).thenReturn(CardStatus.ACTIVE);
+    }
+
+    // striped = true: переводы дополнительно сериализуются полосами TransferStripes перед транзакцией
+    private void startService(boolean striped) {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        service = new TransferService(mock(TransferRepository.class), cardRepo, mock(UserService.class),
+                cardService, mock(TransferIdempotencyKeyRepository.class),
+                mock(TransferSubmissionRepository.class), new TransferStripes(meters, striped, 2, Duration.ofSeconds(5)),
+                mock(LedgerService.class), new TransactionTemplate(new RowLockTxManager()), meters,
+                3, Duration.ofMillis(1), Duration.ofHours(24), 1000);
+    }
+
+    @ParameterizedTest(name = "striped={0}")
+    @ValueSource(booleans = {false, true})
+    void concurrent_transfers_conserve_total_balance(boolean striped) throws Exception {
+        startService(striped);
+        AtomicInteger ok = new AtomicInteger(), rejected = new AtomicInteger();
+        runThreads(() -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            for (int i = 0; i < 300; i++) {
+                long from = rnd.nextLong(1, CARDS + 1), to = rnd.nextLong(1, CARDS + 1);
+                if (from == to) continue;
+                try {
+                    service.transfer(10L, from, to, new BigDecimal(rnd.nextInt(1, 400)));
+                    ok.incrementAndGet();
+                } catch (BadRequestException e) {
+                    rejected.incrementAndGet(); // insufficient funds — ожидаемо при случайных суммах
+                }
+            }
+        });
+
+        assertThat(total()).isEqualByComparingTo("4000.00");
+        assertThat(cards.values()).allSatisfy(c -> assertThat(c.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO));
+        assertThat(lockTimeouts).hasValue(0);
+        assertThat(ok.get()).isPositive();
+        assertThat(rejected.get()).isPositive();
+    }
+
+    @ParameterizedTest(name = "striped={0}")
+    @ValueSource(booleans = {false, true})
+    void hot_source_card_is_never_overdrawn(boolean striped) throws Exception {
+        startService(striped);
+        cards.get(1L).setBalance(new BigDecimal("100.00"));
+        AtomicInteger ok = new AtomicInteger(), rejected = new AtomicInteger();
+        runThreads(() -> {
+            for (int i = 0; i < 50; i++) {
+                try {
+                    service.transfer(10L, 1L, 2L + i % (CARDS - 1), new BigDecimal("1.00"));
+                    ok.incrementAndGet();
+                } catch (BadRequestException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(ok).hasValue(100);
+        assertThat(rejected).hasValue(THREADS * 50 - 100);
+        assertThat(cards.get(1L).getBalance()).isEqualByComparingTo("0");
+        assertThat(total()).isEqualByComparingTo("3100.00");
+        assertThat(lockTimeouts).hasValue(0);
+    }
+
+    private void runThreads(Runnable work) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) futures.add(pool.submit(work));
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+    }
+
+    private BigDecimal total() {
+        return cards.values().stream().map(Card::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private Card lockRow(Long id) throws InterruptedException {
+        ReentrantLock lock = rowLocks.get(id);
+        if (!lock.tryLock(1, TimeUnit.SECONDS)) {
+            lockTimeouts.incrementAndGet();
+            throw new CannotAcquireLockException("Lock wait timeout exceeded");
+        }
+        current.get().locks.push(lock);
+        return cards.get(id);
+    }
+
+    /** Состояние транзакции потока: взятые блокировки строк и старые балансы для отката. */
+    private static final class Tx {
+        final Deque<ReentrantLock> locks = new ArrayDeque<>();
+        final Deque<Map.Entry<Card, BigDecimal>> undo = new ArrayDeque<>();
+    }
+
+    private final class RowLockTxManager extends AbstractPlatformTransactionManager {
+        @Override protected Object doGetTransaction() { return new Object(); }
+        @Override protected void doBegin(Object transaction, TransactionDefinition definition) { }
+        @Override protected void doCommit(DefaultTransactionStatus status) { release(); }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            Tx tx = current.get();
+            while (!tx.undo.isEmpty()) {
+                Map.Entry<Card, BigDecimal> e = tx.undo.pop();
+                e.getKey().setBalance(e.getValue());
+            }
+            release();
+        }
+
+        private void release() {
+            Tx tx = current.get();
+            tx.undo.clear();
+            while (!tx.locks.isEmpty()) tx.locks.pop().unlock();
+        }
+    }
+}
@@ -1,21 +1,48 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardView;
+import com.example.bankcards.dto.transfer.TransferBatchItemResult;
+import com.example.bankcards.dto.transfer.TransferBatchMode;
+import com.example.bankcards.dto.transfer.TransferBatchResponse;
+import com.example.bankcards.dto.transfer.TransferRequest;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSnapshot;
 import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Posting;
 import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.TransferSubmission;
+import com.example.bankcards.entity.TransferSubmissionStatus;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.ForbiddenException;
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.repository.CardBalanceSnapshotRepository;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerWriter;
+import com.example.bankcards.repository.PostingRepository;
+import com.example.bankcards.repository.TransferIdempotencyKeyRepository;
 import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.TransferSubmissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,10 +51,16 @@ import static org.mockito.Mockito.*;
 
 /**
  * Тесты под фактический TransferService:
- * - userService.byUsername(username)
- * - cardRepo.findByIdAndOwnerId(cardId, userId) (дважды)
- * - cardService.effectiveStatus(card) (1–2 раза)
- * - transferRepo.save(transfer)
+ * - cardRepo.debit / cardRepo.credit (userId из principal) — условные UPDATE по возрастанию id карт
+ * - при 0 изменённых строк — одно чтение findOwnedView, чтобы выбрать ошибку (владелец / статус / средства)
+ * - повтор транзакции при deadlock/таймауте блокировки, после max-attempts — 503
+ * - Idempotency-Key: ключ пишется в той же транзакции; повтор — из кэша узла или по нарушению PK ключа
+ * - пакет: один SELECT ... FOR UPDATE всех карт, балансы в памяти, один saveAll; ALL_OR_NOTHING и PER_ITEM
+ * - асинхронная заявка: строка заявки блокируется, перевод и COMPLETED — в одной транзакции; не PENDING — пропуск
+ * - cardRepo.getReferenceById / userService.reference(userId) — прокси без SELECT для внешних ключей transfers
+ * - transferRepo.save(transfer), затем журнал: один INSERT обеих проводок и один INSERT снимков
+ * - пакет: проводки и снимки считаются в памяти по seq карт и пишутся одним append
+ * Итого на успешный перевод: 2 UPDATE карт + 3 INSERT (перевод, проводки, снимки), без SELECT.
  * Код сервиса: см. TransferService. Репозиторий: TransferRepository.
  */
 @ExtendWith(MockitoExtension.class)
@@ -37,34 +70,50 @@ class TransferServiceTest {
     @Mock CardRepository cardRepo;
     @Mock UserService userService;
     @Mock CardService cardService;
+    @Mock TransferIdempotencyKeyRepository idempotencyKeys;
+    @Mock TransferSubmissionRepository submissions;
+    @Mock PlatformTransactionManager txManager;
+    @Mock PostingRepository postings;
+    @Mock CardBalanceSnapshotRepository snapshots;
+    @Mock LedgerWriter ledgerWriter;
 
-    @InjectMocks TransferService transferService;
+    TransferService transferService;
+    SimpleMeterRegistry meters;
 
     private User user;
 
     @BeforeEach
     void setUp() {
+        meters = new SimpleMeterRegistry();
+        TransferStripes stripes = new TransferStripes(meters, false, 0, Duration.ZERO);
+        // снимок журнала каждые 2 проводки карты — чтобы пакет из нескольких переводов его задевал
+        LedgerService ledger = new LedgerService(postings, snapshots, ledgerWriter, cardRepo, meters, 2);
+        transferService = new TransferService(transferRepo, cardRepo, userService, cardService, idempotencyKeys,
+                submissions, stripes, ledger, new TransactionTemplate(txManager), meters, 3, Duration.ZERO,
+                Duration.ofHours(24), 1000);
         user = new User();
         setId(user, 10L);
         user.setUsername("alice");
     }
 
+    private static final LocalDate EXP = LocalDate.of(2030, 12, 31);
+
+    private static CardView view(Long id, CardStatus status, String balance) {
+        return new CardView(id, "0001", EXP, status, new BigDecimal(balance), "alice");
+    }
+
     // ---------- УСПЕШНЫЙ ПЕРЕВОД ----------
     @Test
     void transfer_success() {
         Long fromId = 1L, toId = 2L;
         BigDecimal amount = new BigDecimal("250.00");
+        Card from = card(fromId, "0"), to = card(toId, "0");
 
-        Card from = new Card();
-        from.setBalance(new BigDecimal("1000.00"));
-        Card to = new Card();
-        to.setBalance(new BigDecimal("100.00"));
-
-        when(userService.byUsername("alice")).thenReturn(user);
-        when(cardRepo.findByIdAndOwnerId(fromId, user.getId())).thenReturn(Optional.of(from));
-        when(cardRepo.findByIdAndOwnerId(toId, user.getId())).thenReturn(Optional.of(to));
-        when(cardService.effectiveStatus(from)).thenReturn(CardStatus.ACTIVE);
-        when(cardService.effectiveStatus(to)).thenReturn(CardStatus.ACTIVE);
+        when(cardRepo.debit(eq(fromId), eq(10L), eq(amount), any(LocalDate.class))).thenReturn(1);
+        when(cardRepo.credit(eq(toId), eq(10L), eq(amount), any(LocalDate.class))).thenReturn(1);
+        when(cardRepo.getReferenceById(fromId)).thenReturn(from);
+        when(cardRepo.getReferenceById(toId)).thenReturn(to);
+        when(userService.reference(10L)).thenReturn(user);
 
         // Эмулируем присвоение ID тем же объектам, что переданы в save(...)
         doAnswer(inv -> {
@@ -73,34 +122,35 @@ class TransferServiceTest {
             return t;
         }).when(transferRepo).save(any(Transfer.class));
 
-        Long id = transferService.transfer("alice", fromId, toId, amount);
+        Long id = transferService.transfer(10L, fromId, toId, amount);
 
-        // Балансы изменены
-        assertEquals(0, from.getBalance().compareTo(new BigDecimal("750.00")));
-        assertEquals(0, to.getBalance().compareTo(new BigDecimal("350.00")));
-        // Вернулся ID, выставленный "JPA"
         assertEquals(99L, id);
-
-        // ------ Точные verify под реальные вызовы ------
-        verify(userService, times(1)).byUsername(eq("alice"));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(fromId), eq(user.getId()));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(toId), eq(user.getId()));
-        verify(cardService, times(1)).effectiveStatus(same(from));
-        verify(cardService, times(1)).effectiveStatus(same(to));
+        // списание раньше зачисления (1 < 2), без SELECT карт
+        InOrder order = inOrder(cardRepo);
+        order.verify(cardRepo).debit(eq(fromId), eq(10L), eq(amount), any(LocalDate.class));
+        order.verify(cardRepo).credit(eq(toId), eq(10L), eq(amount), any(LocalDate.class));
+        verify(cardRepo, never()).findOwnedView(anyLong(), anyLong());
         verify(transferRepo, times(1)).save(argThat(t ->
                 t.getFromCard() == from &&
                         t.getToCard() == to &&
                         t.getUser() == user &&
                         amount.compareTo(t.getAmount()) == 0
         ));
-        verifyNoMoreInteractions(userService, cardRepo, cardService, transferRepo);
+        verifyNoInteractions(cardService);
+        // журнал: обе проводки одним INSERT после сохранения перевода, затем один INSERT снимков
+        InOrder ledger = inOrder(transferRepo, postings, snapshots);
+        ledger.verify(transferRepo).save(any(Transfer.class));
+        ledger.verify(postings).insertTransfer(eq(99L), eq(fromId), eq(toId), eq(amount), any());
+        ledger.verify(snapshots).checkpoint(eq(List.of(fromId, toId)), eq(2), any());
+        verifyNoInteractions(ledgerWriter);
+        assertEquals(2.0, meters.counter("ledger.postings").count());
     }
 
     // ---------- НЕКОРРЕКТНЫЕ ВХОДНЫЕ ДАННЫЕ ----------
     @Test
     void transfer_nullIds() {
         BadRequestException ex = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", null, 2L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, null, 2L, new BigDecimal("10")));
         assertEquals("card ids required", ex.getMessage());
         verifyNoInteractions(userService, cardRepo, cardService, transferRepo);
     }
@@ -108,7 +158,7 @@ class TransferServiceTest {
     @Test
     void transfer_sameCards() {
         BadRequestException ex = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", 1L, 1L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, 1L, 1L, new BigDecimal("10")));
         assertEquals("from and to must differ", ex.getMessage());
         verifyNoInteractions(userService, cardRepo, cardService, transferRepo);
     }
@@ -117,12 +167,12 @@ class TransferServiceTest {
     void transfer_amountTooSmall_orNull() {
         // amount < 0.01
         BadRequestException ex1 = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", 1L, 2L, new BigDecimal("0.001")));
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("0.001")));
         assertEquals("amount must be >= 0.01", ex1.getMessage());
 
         // amount == null
         BadRequestException ex2 = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", 1L, 2L, null));
+                () -> transferService.transfer(10L, 1L, 2L, null));
         assertEquals("amount must be >= 0.01", ex2.getMessage());
 
         verifyNoInteractions(userService, cardRepo, cardService, transferRepo);
@@ -131,82 +181,423 @@ class TransferServiceTest {
     // ---------- ДОСТУП / ПРИНАДЛЕЖНОСТЬ ----------
     @Test
     void transfer_fromNotOwned_forbidden() {
-        when(userService.byUsername("alice")).thenReturn(user);
-        when(cardRepo.findByIdAndOwnerId(1L, user.getId())).thenReturn(Optional.empty());
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.empty());
 
         ForbiddenException ex = assertThrows(ForbiddenException.class,
-                () -> transferService.transfer("alice", 1L, 2L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
         assertEquals("not your source card", ex.getMessage());
 
-        verify(userService, times(1)).byUsername(eq("alice"));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(1L), eq(user.getId()));
-        verify(cardRepo, never()).findByIdAndOwnerId(eq(2L), anyLong());
-        verifyNoInteractions(cardService, transferRepo);
+        verify(cardRepo, never()).credit(any(), any(), any(), any());
+        verifyNoInteractions(userService, cardService, transferRepo);
     }
 
     @Test
     void transfer_toNotOwned_forbidden() {
-        Card from = new Card(); from.setBalance(new BigDecimal("50"));
-        when(userService.byUsername("alice")).thenReturn(user);
-        when(cardRepo.findByIdAndOwnerId(1L, user.getId())).thenReturn(Optional.of(from));
-        when(cardRepo.findByIdAndOwnerId(2L, user.getId())).thenReturn(Optional.empty());
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(1);
+        when(cardRepo.credit(eq(2L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(2L, 10L)).thenReturn(Optional.empty());
 
         ForbiddenException ex = assertThrows(ForbiddenException.class,
-                () -> transferService.transfer("alice", 1L, 2L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
         assertEquals("not your target card", ex.getMessage());
 
-        verify(userService, times(1)).byUsername(eq("alice"));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(1L), eq(user.getId()));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(2L), eq(user.getId()));
-        verifyNoInteractions(cardService, transferRepo);
+        // списание уже выполнено — откатывается вместе с транзакцией
+        verify(txManager).rollback(any());
+        verifyNoInteractions(userService, cardService, transferRepo);
     }
 
     // ---------- СТАТУС КАРТ ----------
     @Test
     void transfer_cardsMustBeActive_sourceBlocked() {
-        Card from = new Card(); from.setBalance(new BigDecimal("100"));
-        Card to = new Card();   to.setBalance(new BigDecimal("100"));
-
-        when(userService.byUsername("alice")).thenReturn(user);
-        when(cardRepo.findByIdAndOwnerId(1L, user.getId())).thenReturn(Optional.of(from));
-        when(cardRepo.findByIdAndOwnerId(2L, user.getId())).thenReturn(Optional.of(to));
-        when(cardService.effectiveStatus(from)).thenReturn(CardStatus.BLOCKED); // уже не ACTIVE
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.of(view(1L, CardStatus.BLOCKED, "100")));
+        when(cardService.effectiveStatus(EXP, CardStatus.BLOCKED)).thenReturn(CardStatus.BLOCKED);
 
         BadRequestException ex = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", 1L, 2L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
         assertEquals("cards must be ACTIVE", ex.getMessage());
 
-        verify(userService, times(1)).byUsername(eq("alice"));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(1L), eq(user.getId()));
-        verify(cardRepo, times(1)).findByIdAndOwnerId(eq(2L), eq(user.getId()));
-        verify(cardService, times(1)).effectiveStatus(same(from));
-        // из-за short-circuit второй effectiveStatus(to) не вызывается
-        verify(cardService, never()).effectiveStatus(same(to));
-        verifyNoInteractions(transferRepo);
+        verify(cardRepo, never()).credit(any(), any(), any(), any());
+        verifyNoInteractions(userService, transferRepo);
+    }
+
+    @Test
+    void transfer_cardsMustBeActive_targetNotActive() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(1);
+        when(cardRepo.credit(eq(2L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(2L, 10L)).thenReturn(Optional.of(view(2L, CardStatus.EXPIRED, "0")));
+
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
+        assertEquals("cards must be ACTIVE", ex.getMessage());
+        verifyNoInteractions(userService, transferRepo);
     }
 
     // ---------- БАЛАНС ----------
     @Test
     void transfer_insufficientFunds() {
-        Card from = new Card(); from.setBalance(new BigDecimal("5"));
-        Card to = new Card();   to.setBalance(new BigDecimal("0"));
-
-        when(userService.byUsername("alice")).thenReturn(user);
-        when(cardRepo.findByIdAndOwnerId(1L, user.getId())).thenReturn(Optional.of(from));
-        when(cardRepo.findByIdAndOwnerId(2L, user.getId())).thenReturn(Optional.of(to));
-        when(cardService.effectiveStatus(from)).thenReturn(CardStatus.ACTIVE);
-        when(cardService.effectiveStatus(to)).thenReturn(CardStatus.ACTIVE);
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.of(view(1L, CardStatus.ACTIVE, "5")));
+        when(cardService.effectiveStatus(EXP, CardStatus.ACTIVE)).thenReturn(CardStatus.ACTIVE);
 
         BadRequestException ex = assertThrows(BadRequestException.class,
-                () -> transferService.transfer("alice", 1L, 2L, new BigDecimal("10")));
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
         assertEquals("insufficient funds", ex.getMessage());
 
-        // статусы проверены для обеих карт (оба ACTIVE, поэтому оба вызова состоялись)
-        verify(cardService, times(1)).effectiveStatus(same(from));
-        verify(cardService, times(1)).effectiveStatus(same(to));
+        verify(cardRepo, never()).credit(any(), any(), any(), any());
+        verifyNoInteractions(userService, transferRepo);
+    }
+
+    // ---------- ПОРЯДОК БЛОКИРОВОК И ПОВТОРЫ ----------
+    @Test
+    void transfer_updatesCardsInAscendingIdOrder() {
+        when(cardRepo.debit(eq(5L), eq(10L), any(), any())).thenReturn(1);
+        when(cardRepo.credit(eq(3L), eq(10L), any(), any())).thenReturn(1);
+
+        transferService.transfer(10L, 5L, 3L, new BigDecimal("10"));
+
+        // перевод 5 -> 3: первой блокируется карта 3 — как и во встречном 3 -> 5, взаимоблокировки нет
+        InOrder order = inOrder(cardRepo);
+        order.verify(cardRepo).credit(eq(3L), eq(10L), any(), any());
+        order.verify(cardRepo).debit(eq(5L), eq(10L), any(), any());
+    }
+
+    @Test
+    void transfer_retriesAfterDeadlock() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any()))
+                .thenThrow(new CannotAcquireLockException("Deadlock found when trying to get lock"))
+                .thenReturn(1);
+        when(cardRepo.credit(eq(2L), eq(10L), any(), any())).thenReturn(1);
+
+        transferService.transfer(10L, 1L, 2L, new BigDecimal("10"));
+
+        verify(cardRepo, times(2)).debit(eq(1L), eq(10L), any(), any());
+        verify(cardRepo, times(1)).credit(eq(2L), eq(10L), any(), any());
+        verify(txManager).rollback(any()); // первая попытка откатана целиком
+        verify(transferRepo, times(1)).save(any(Transfer.class));
+        assertEquals(1.0, meters.get("transfers.retries").counter().count());
+    }
+
+    @Test
+    void transfer_givesUpAfterMaxAttempts() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any()))
+                .thenThrow(new CannotAcquireLockException("Lock wait timeout exceeded"));
+
+        assertThrows(ServiceUnavailableException.class,
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
+        verify(cardRepo, times(3)).debit(eq(1L), eq(10L), any(), any());
         verifyNoInteractions(transferRepo);
     }
 
+    @Test
+    void transfer_businessErrorIsNotRetried() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.empty());
+
+        assertThrows(ForbiddenException.class, () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10")));
+        verify(cardRepo, times(1)).debit(eq(1L), eq(10L), any(), any());
+        assertEquals(0.0, meters.get("transfers.retries").counter().count());
+    }
+
+    // ---------- IDEMPOTENCY-KEY ----------
+    private void stubSuccessfulTransfer() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(1);
+        when(cardRepo.credit(eq(2L), eq(10L), any(), any())).thenReturn(1);
+        doAnswer(inv -> {
+            Transfer t = inv.getArgument(0, Transfer.class);
+            setId(t, 99L);
+            return t;
+        }).when(transferRepo).save(any(Transfer.class));
+    }
+
+    @Test
+    void transfer_storesKeyAndAnswersReplayFromCache() {
+        stubSuccessfulTransfer();
+
+        Long first = transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+        Long replay = transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        assertEquals(99L, first);
+        assertEquals(99L, replay);
+        verify(idempotencyKeys, times(1)).insert(eq(10L), eq("k-1"), eq(99L), any());
+        verify(cardRepo, times(1)).debit(any(), any(), any(), any()); // повтор не списывает второй раз
+        verify(idempotencyKeys, times(1)).findTransferId(10L, "k-1"); // только исходный запрос, повтор — из кэша
+        assertEquals(1.0, meters.get("transfers.idempotent.replays").counter().count());
+    }
+
+    @Test
+    void transfer_sameKeyOfAnotherUserIsIndependent() {
+        stubSuccessfulTransfer();
+        when(cardRepo.debit(eq(1L), eq(11L), any(), any())).thenReturn(1);
+        when(cardRepo.credit(eq(2L), eq(11L), any(), any())).thenReturn(1);
+
+        transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+        transferService.transfer(11L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        verify(idempotencyKeys).insert(eq(10L), eq("k-1"), any(), any());
+        verify(idempotencyKeys).insert(eq(11L), eq("k-1"), any(), any());
+    }
+
+    @Test
+    void transfer_replayFromAnotherNodeResolvedByKeyConflict() {
+        stubSuccessfulTransfer();
+        when(idempotencyKeys.insert(eq(10L), eq("k-1"), any(), any()))
+                .thenThrow(new DuplicateKeyException("pk_transfer_idempotency_keys"));
+        // до списания ключа ещё нет (исходный запрос не закоммичен), после конфликта PK — есть
+        when(idempotencyKeys.findTransferId(10L, "k-1")).thenReturn(Optional.empty(), Optional.of(42L));
+
+        Long id = transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        assertEquals(42L, id); // исходный перевод, а новый откатан вместе с транзакцией
+        verify(txManager).rollback(any());
+        verify(txManager, never()).commit(any());
+        assertEquals(1.0, meters.get("transfers.idempotent.replays").counter().count());
+    }
+
+    @Test
+    void transfer_failedTransferDoesNotStoreKey() {
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.empty());
+
+        assertThrows(ForbiddenException.class,
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1"));
+        verify(idempotencyKeys, never()).insert(any(), any(), any(), any());
+    }
+
+    @Test
+    void transfer_replayMissingCacheReturnsOriginalBeforeTouchingCards() {
+        // исходный перевод закоммичен другим узлом, баланс с тех пор уже недостаточен
+        when(idempotencyKeys.findTransferId(10L, "k-1")).thenReturn(Optional.of(42L));
+
+        Long id = transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        assertEquals(42L, id);
+        verify(cardRepo, never()).debit(any(), any(), any(), any());
+        verify(cardRepo, never()).credit(any(), any(), any(), any());
+        verifyNoInteractions(transferRepo, postings);
+        assertEquals(1.0, meters.get("transfers.idempotent.replays").counter().count());
+    }
+
+    @Test
+    void transfer_replayFromDbDoesNotRefreshNodeCache() {
+        // ключ вставлен другим узлом: повтор не кладёт его в кэш, иначе запись пережила бы очистку таблицы
+        when(idempotencyKeys.findTransferId(10L, "k-1")).thenReturn(Optional.of(42L));
+
+        transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+        transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        verify(idempotencyKeys, times(2)).findTransferId(10L, "k-1");
+    }
+
+    @Test
+    void transfer_replayRacingOriginalResolvedAfterInsufficientFunds() {
+        // ключа ещё нет: исходный запрос коммитится, пока повтор ждёт блокировку карты и видит списанный баланс
+        when(idempotencyKeys.findTransferId(10L, "k-1")).thenReturn(Optional.empty(), Optional.of(42L));
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.of(view(1L, CardStatus.ACTIVE, "0")));
+        when(cardService.effectiveStatus(any(), any())).thenReturn(CardStatus.ACTIVE);
+
+        Long id = transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "k-1");
+
+        assertEquals(42L, id);
+        verify(idempotencyKeys, never()).insert(any(), any(), any(), any());
+        assertEquals(1.0, meters.get("transfers.idempotent.replays").counter().count());
+    }
+
+    @Test
+    void transfer_invalidKeyRejected() {
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), "x".repeat(65)));
+        assertEquals("Idempotency-Key must be 1..64 characters", ex.getMessage());
+        assertThrows(BadRequestException.class,
+                () -> transferService.transfer(10L, 1L, 2L, new BigDecimal("10"), " "));
+        verifyNoInteractions(cardRepo, idempotencyKeys);
+    }
+
+    // ---------- ПАКЕТ ПЕРЕВОДОВ ----------
+    private static Card card(long id, String balance) {
+        Card c = new Card();
+        c.setId(id);
+        c.setBalance(new BigDecimal(balance));
+        return c;
+    }
+
+    private static TransferRequest item(long from, long to, String amount) {
+        return new TransferRequest(from, to, new BigDecimal(amount));
+    }
+
+    // карты блокируются по возрастанию id, каждая один раз
+    private static Collection<Long> idsInOrder(Long... ids) {
+        return argThat(c -> c != null && new ArrayList<>(c).equals(List.of(ids)));
+    }
+
+    private void stubSaveAllAssigningIds() {
+        doAnswer(inv -> {
+            long id = 500;
+            for (Transfer t : inv.<List<Transfer>>getArgument(0)) setId(t, id++);
+            return inv.getArgument(0);
+        }).when(transferRepo).saveAll(anyList());
+    }
+
+    @Test
+    void batch_locksAllCardsOnceAndSavesAllTransfers() {
+        Card c1 = card(1, "100"), c2 = card(2, "0"), c3 = card(3, "0");
+        when(cardRepo.findOwnedForUpdate(idsInOrder(1L, 2L, 3L), eq(10L))).thenReturn(List.of(c1, c2, c3));
+        when(cardService.effectiveStatus(any(Card.class))).thenReturn(CardStatus.ACTIVE);
+        when(userService.reference(10L)).thenReturn(user);
+        stubSaveAllAssigningIds();
+
+        // третий перевод тратит деньги, пришедшие на карту 2 первым
+        TransferBatchResponse res = transferService.transferBatch(10L,
+                List.of(item(1, 2, "30"), item(1, 3, "50"), item(2, 3, "10")), TransferBatchMode.ALL_OR_NOTHING);
+
+        assertEquals(3, res.succeeded());
+        assertEquals(0, res.failed());
+        assertEquals(List.of(500L, 501L, 502L), res.items().stream().map(TransferBatchItemResult::transferId).toList());
+        assertEquals(0, c1.getBalance().compareTo(new BigDecimal("20")));
+        assertEquals(0, c2.getBalance().compareTo(new BigDecimal("20")));
+        assertEquals(0, c3.getBalance().compareTo(new BigDecimal("60")));
+        verify(cardRepo, times(1)).findOwnedForUpdate(anyCollection(), eq(10L));
+        verify(transferRepo, times(1)).saveAll(argThat(l -> ((List<?>) l).size() == 3));
+        verify(userService, times(1)).reference(10L);
+        verify(cardRepo, never()).debit(any(), any(), any(), any());
+
+        // журнал: по две проводки на перевод, seq карты подряд; снимок на каждой второй проводке карты
+        ArgumentCaptor<List<Posting>> entries = ArgumentCaptor.captor();
+        ArgumentCaptor<List<CardBalanceSnapshot>> checkpoints = ArgumentCaptor.captor();
+        verify(ledgerWriter).append(entries.capture(), checkpoints.capture());
+        assertEquals(List.of("1#1:-30", "2#1:30", "1#2:-50", "3#1:50", "2#2:-10", "3#2:10"), entries.getValue().stream()
+                .map(p -> p.getCardId() + "#" + p.getSeq() + ":" + p.getAmount().toPlainString()).toList());
+        assertEquals(500L, entries.getValue().get(0).getTransfer().getId());
+        assertEquals(List.of("1#2=20", "2#2=20", "3#2=60"), checkpoints.getValue().stream()
+                .map(c -> c.getCardId() + "#" + c.getSeq() + "=" + c.getBalance().toPlainString()).toList());
+        assertEquals(2, c1.getPostingSeq());
+        verify(postings, never()).insertTransfer(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void batch_allOrNothing_firstErrorRollsBackEverything() {
+        Card c1 = card(1, "100"), c2 = card(2, "0");
+        when(cardRepo.findOwnedForUpdate(idsInOrder(1L, 2L), eq(10L))).thenReturn(List.of(c1, c2));
+        when(cardService.effectiveStatus(any(Card.class))).thenReturn(CardStatus.ACTIVE);
+
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> transferService.transferBatch(10L,
+                List.of(item(1, 2, "60"), item(1, 2, "60")), TransferBatchMode.ALL_OR_NOTHING));
+
+        assertEquals("item 1: insufficient funds", ex.getMessage());
+        verify(txManager).rollback(any());
+        verify(transferRepo, never()).saveAll(any());
+    }
+
+    @Test
+    void batch_allOrNothing_invalidItemRejectedBeforeAnyQuery() {
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> transferService.transferBatch(10L,
+                List.of(item(1, 2, "1"), item(2, 2, "1")), null));
+
+        assertEquals("item 1: from and to must differ", ex.getMessage());
+        verifyNoInteractions(cardRepo, transferRepo);
+    }
+
+    @Test
+    void batch_allOrNothing_foreignCardForbidden() {
+        when(cardRepo.findOwnedForUpdate(idsInOrder(1L, 7L), eq(10L))).thenReturn(List.of(card(1, "100")));
+
+        ForbiddenException ex = assertThrows(ForbiddenException.class, () -> transferService.transferBatch(10L,
+                List.of(item(1, 7, "1")), TransferBatchMode.ALL_OR_NOTHING));
+        assertEquals("item 0: not your target card", ex.getMessage());
+    }
+
+    @Test
+    void batch_perItem_reportsErrorsAndKeepsValidTransfers() {
+        Card c1 = card(1, "100"), c2 = card(2, "0");
+        when(cardRepo.findOwnedForUpdate(idsInOrder(1L, 2L, 9L), eq(10L))).thenReturn(List.of(c1, c2));
+        when(cardService.effectiveStatus(any(Card.class))).thenReturn(CardStatus.ACTIVE);
+        stubSaveAllAssigningIds();
+
+        TransferBatchResponse res = transferService.transferBatch(10L, List.of(
+                item(1, 2, "70"),
+                item(1, 1, "1"),    // некорректный вход
+                item(9, 2, "1"),    // чужая карта
+                item(1, 2, "70"),   // после первого перевода денег не хватает
+                item(2, 1, "5")), TransferBatchMode.PER_ITEM);
+
+        assertEquals(2, res.succeeded());
+        assertEquals(3, res.failed());
+        assertEquals(Arrays.asList(null, "from and to must differ", "not your source card", "insufficient funds", null),
+                res.items().stream().map(TransferBatchItemResult::error).toList());
+        assertEquals(Arrays.asList(500L, null, null, null, 501L),
+                res.items().stream().map(TransferBatchItemResult::transferId).toList());
+        assertEquals(0, c1.getBalance().compareTo(new BigDecimal("35")));
+        assertEquals(0, c2.getBalance().compareTo(new BigDecimal("65")));
+    }
+
+    @Test
+    void batch_limits() {
+        assertThrows(BadRequestException.class, () -> transferService.transferBatch(10L, List.of(), null));
+        List<TransferRequest> tooMany = Collections.nCopies(TransferService.MAX_BATCH_ITEMS + 1, item(1, 2, "1"));
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> transferService.transferBatch(10L, tooMany, null));
+        assertEquals("at most 500 items per batch", ex.getMessage());
+        verifyNoInteractions(cardRepo);
+    }
+
+    // ---------- АСИНХРОННАЯ ЗАЯВКА ----------
+    private static TransferSubmission pending() {
+        return TransferSubmission.builder().id(7L).userId(10L).fromCardId(1L).toCardId(2L)
+                .amount(new BigDecimal("10")).status(TransferSubmissionStatus.PENDING).build();
+    }
+
+    @Test
+    void submission_executedAndCompletedInSameTransaction() {
+        TransferSubmission locked = pending();
+        when(submissions.findById(7L)).thenReturn(Optional.of(pending()));
+        when(submissions.findPendingForUpdate(7L)).thenReturn(Optional.of(locked));
+        stubSuccessfulTransfer();
+
+        assertTrue(transferService.executeSubmission(7L));
+
+        assertEquals(TransferSubmissionStatus.COMPLETED, locked.getStatus());
+        assertEquals(99L, locked.getTransferId());
+        assertNotNull(locked.getCompletedAt());
+        InOrder order = inOrder(submissions, cardRepo);
+        order.verify(submissions).findPendingForUpdate(7L); // строка заявки — до карт
+        order.verify(cardRepo).debit(eq(1L), eq(10L), any(), any());
+        verify(txManager).commit(any());
+    }
+
+    @Test
+    void submission_alreadyProcessedIsSkipped() {
+        TransferSubmission done = pending();
+        done.setStatus(TransferSubmissionStatus.COMPLETED);
+        when(submissions.findById(7L)).thenReturn(Optional.of(done));
+
+        assertFalse(transferService.executeSubmission(7L));
+        verifyNoInteractions(cardRepo, txManager);
+    }
+
+    @Test
+    void submission_completedByAnotherNodeWhileWaitingIsSkipped() {
+        when(submissions.findById(7L)).thenReturn(Optional.of(pending()));
+        when(submissions.findPendingForUpdate(7L)).thenReturn(Optional.empty());
+
+        assertFalse(transferService.executeSubmission(7L));
+        verifyNoInteractions(cardRepo, transferRepo);
+    }
+
+    @Test
+    void submission_businessErrorPropagatesAndRollsBack() {
+        when(submissions.findById(7L)).thenReturn(Optional.of(pending()));
+        when(submissions.findPendingForUpdate(7L)).thenReturn(Optional.of(pending()));
+        when(cardRepo.debit(eq(1L), eq(10L), any(), any())).thenReturn(0);
+        when(cardRepo.findOwnedView(1L, 10L)).thenReturn(Optional.of(view(1L, CardStatus.ACTIVE, "5")));
+        when(cardService.effectiveStatus(EXP, CardStatus.ACTIVE)).thenReturn(CardStatus.ACTIVE);
+
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> transferService.executeSubmission(7L));
+        assertEquals("insufficient funds", ex.getMessage());
+        verify(txManager).rollback(any());
+    }
+
     // ---------- утилита рефлексии для установки id ----------
     private static void setId(Object target, Long id) {
         try {
@@ -0,0 +1,85 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * TransferStripes:
+ * - выключено — action выполняется сразу
+ * - в полосе одновременно не больше одного action; карты одной полосы берутся один раз
+ * - встречные наборы карт не взаимоблокируются (полосы по возрастанию)
+ * - ожидание дольше max-wait — 503 и счётчик
+ */
+class TransferStripesTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @Test
+    void disabled_runs_action_directly() {
+        TransferStripes stripes = new TransferStripes(meters, false, 0, Duration.ZERO);
+        assertThat(stripes.withCards(List.of(1L, 2L), () -> 42)).isEqualTo(42);
+    }
+
+    @Test
+    void cards_of_same_stripe_are_locked_once() {
+        TransferStripes stripes = new TransferStripes(meters, true, 4, Duration.ofSeconds(1));
+        // 1 и 5 в одной полосе: повторный захват не должен оставить её занятой после выхода
+        assertThat(stripes.withCards(List.of(1L, 5L), () -> "ok")).isEqualTo("ok");
+        assertThat(stripes.withCards(Set.of(5L), () -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    void one_writer_per_stripe_and_no_deadlock_for_opposite_pairs() throws Exception {
+        TransferStripes stripes = new TransferStripes(meters, true, 8, Duration.ofSeconds(5));
+        AtomicInteger inside = new AtomicInteger(), maxInside = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            List<Long> cards = t % 2 == 0 ? List.of(1L, 2L) : List.of(2L, 1L);
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    stripes.withCards(cards, () -> {
+                        maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                        inside.decrementAndGet();
+                        return null;
+                    });
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertThat(maxInside).hasValue(1);
+        assertThat(meters.get("transfers.stripes.timeouts").counter().count()).isZero();
+    }
+
+    @Test
+    void busy_stripe_times_out_with_503() throws Exception {
+        TransferStripes stripes = new TransferStripes(meters, true, 4, Duration.ofMillis(50));
+        CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> stripes.withCards(List.of(3L), () -> {
+            held.countDown();
+            try { release.await(); } catch (InterruptedException ignored) { }
+            return null;
+        }));
+        owner.start();
+        held.await();
+
+        assertThatThrownBy(() -> stripes.withCards(List.of(7L), () -> null)) // 7 mod 4 == 3
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(meters.get("transfers.stripes.timeouts").counter().count()).isEqualTo(1.0);
+
+        release.countDown();
+        owner.join();
+    }
+}
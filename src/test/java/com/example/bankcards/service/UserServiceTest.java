@@ -5,6 +5,8 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.BadRequestException;
 import com.example.bankcards.exception.NotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.BankUserDetailsService;
+import com.example.bankcards.security.TokenEpochService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -31,6 +33,12 @@ class UserServiceTest {
     @Mock
     PasswordEncoder encoder;
 
+    @Mock
+    BankUserDetailsService userDetails;
+
+    @Mock
+    TokenEpochService tokenEpochs;
+
     @Captor
     ArgumentCaptor<User> userCaptor;
 
@@ -38,7 +46,7 @@ class UserServiceTest {
 
     @BeforeEach
     void setUp() {
-        service = new UserService(repo, encoder);
+        service = new UserService(repo, encoder, userDetails, tokenEpochs);
     }
 
     @Test
@@ -140,4 +148,48 @@ class UserServiceTest {
         verifyNoMoreInteractions(repo);
         verifyNoInteractions(encoder);
     }
+
+    @Test
+    @DisplayName("changePassword(): новый хэш, токены отозваны, кэш UserDetails сброшен")
+    void changePassword_evictsCacheAndRevokesTokens() {
+        User u = new User();
+        u.setId(7L);
+        u.setUsername("alice");
+        u.setPassword("old");
+        when(repo.findById(7L)).thenReturn(Optional.of(u));
+        when(encoder.encode("newSecret")).thenReturn("ENC(newSecret)");
+
+        service.changePassword(7L, "newSecret");
+
+        assertEquals("ENC(newSecret)", u.getPassword());
+        verify(tokenEpochs).revokeAll(7L);
+        verify(userDetails).evict("alice");
+    }
+
+    @Test
+    @DisplayName("changeRoles(): роли заменены, токены отозваны, кэш UserDetails сброшен")
+    void changeRoles_evictsCacheAndRevokesTokens() {
+        User u = new User();
+        u.setId(8L);
+        u.setUsername("bob");
+        u.setRoles(Set.of(Role.USER));
+        when(repo.findById(8L)).thenReturn(Optional.of(u));
+
+        service.changeRoles(8L, Set.of(Role.ADMIN));
+
+        assertEquals(Set.of(Role.ADMIN), u.getRoles());
+        verify(tokenEpochs).revokeAll(8L);
+        verify(userDetails).evict("bob");
+        verifyNoInteractions(encoder);
+    }
+
+    @Test
+    @DisplayName("changePassword(): пользователь не найден -> NotFound, кэш не трогаем")
+    void changePassword_notFound() {
+        when(repo.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> service.changePassword(99L, "newSecret"));
+
+        verifyNoInteractions(encoder, userDetails, tokenEpochs);
+    }
 }
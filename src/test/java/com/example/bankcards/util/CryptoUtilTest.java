@@ -0,0 +1,152 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.config.CryptoProperties;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * CryptoUtil:
+ * - бинарный формат v2: версия + id ключа + IV + шифртекст, round-trip, уникальный IV; v1 читается
+ * - keyring: старый ключ читается после ротации, новые записи идут активным ключом
+ * - подмена байта ловится тегом GCM
+ * - старые строки "base64(iv):base64(cipher)" читаются через decryptLegacy
+ * - blind index: детерминирован, зависит от ключа; короткий HMAC-ключ не принимается
+ * - переиспользование Cipher безопасно при параллельной работе
+ */
+class CryptoUtilTest {
+
+    private static final String KEY = "3Ju/4BZDL+OaMu5wn4SkMqZ/85nZ72EVwuYoVu8kQsg=";
+    private static final String HMAC_KEY = "gkdakBQy1CYzu7lJMT5lcanVRbwaiEE4ei8LZ1NKvq4=";
+    private static final String KEY_1 = "a4pAkL+a6CVw7u4qrA1SeBbeqg+ihzGz5S2Bi8st0ew=";
+    private final CryptoUtil crypto = crypto(Map.of(), 0);
+
+    private static CryptoUtil crypto(Map<Integer, String> keys, int activeKeyId) {
+        return new CryptoUtil(new CryptoProperties(KEY, HMAC_KEY, keys, activeKeyId));
+    }
+
+    @Test
+    void blind_index_is_deterministic_and_keyed() {
+        byte[] a = crypto.blindIndex("1111222233334444");
+
+        assertThat(a).hasSize(32);
+        assertThat(crypto.blindIndex("1111222233334444")).isEqualTo(a);
+        assertThat(crypto.blindIndex("1111222233334445")).isNotEqualTo(a);
+        // другой ключ — другой индекс: без ключа по HMAC номер не подобрать
+        CryptoUtil other = new CryptoUtil(new CryptoProperties(KEY, "kvm6abcD+Bjjot0ufZ1ZsVWLT7YcRXwqUF3KeHi1VRI=", null, 0));
+        assertThat(other.blindIndex("1111222233334444")).isNotEqualTo(a);
+    }
+
+    @Test
+    void short_hmac_key_is_rejected() {
+        assertThatThrownBy(() -> new CryptoUtil(new CryptoProperties(KEY, Base64.getEncoder().encodeToString(new byte[16]), null, 0)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("HMAC key length");
+    }
+
+    @Test
+    void encrypt_produces_versioned_compact_blob() {
+        byte[] blob = crypto.encrypt("1111222233334444");
+
+        assertThat(blob[0]).isEqualTo(CryptoUtil.FORMAT_V2);
+        assertThat(blob[1]).isEqualTo((byte) 0); // id активного ключа
+        assertThat(blob).hasSize(2 + 12 + 16 + 16);
+        assertThat(crypto.decrypt(blob)).isEqualTo("1111222233334444");
+        assertThat(crypto.isCurrent(blob)).isTrue();
+    }
+
+    @Test
+    void v1_blobs_written_before_keyring_are_still_readable() throws Exception {
+        byte[] iv = new byte[12];
+        iv[0] = 3;
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(KEY), "AES"), new GCMParameterSpec(128, iv));
+        byte[] ct = c.doFinal("4000123412341234".getBytes(StandardCharsets.UTF_8));
+        byte[] v1 = new byte[1 + 12 + ct.length];
+        v1[0] = CryptoUtil.FORMAT_V1;
+        System.arraycopy(iv, 0, v1, 1, 12);
+        System.arraycopy(ct, 0, v1, 13, ct.length);
+
+        assertThat(crypto.decrypt(v1)).isEqualTo("4000123412341234");
+        assertThat(crypto.keyId(v1)).isZero();
+        assertThat(crypto.isCurrent(v1)).isFalse();
+    }
+
+    @Test
+    void rotated_keyring_reads_old_key_and_writes_new_one() {
+        byte[] old = crypto.encrypt("1111222233334444");
+        CryptoUtil rotated = crypto(Map.of(1, KEY_1), 1);
+
+        assertThat(rotated.decrypt(old)).isEqualTo("1111222233334444");
+        assertThat(rotated.isCurrent(old)).isFalse();
+
+        byte[] fresh = rotated.encrypt("1111222233334444");
+        assertThat(rotated.keyId(fresh)).isEqualTo(1);
+        assertThat(rotated.isCurrent(fresh)).isTrue();
+        // узел без нового ключа не расшифрует — ключ нужно раскатить до переключения active-key-id
+        assertThatThrownBy(() -> crypto.decrypt(fresh))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("not in the keyring");
+    }
+
+    @Test
+    void active_key_must_be_in_keyring() {
+        assertThatThrownBy(() -> crypto(Map.of(1, KEY_1), 2))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("active-key-id=2");
+    }
+
+    @Test
+    void same_plaintext_gets_fresh_iv_each_time() {
+        Set<String> ivs = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] blob = crypto.encrypt("1111222233334444");
+            ivs.add(Base64.getEncoder().encodeToString(Arrays.copyOfRange(blob, 2, 14)));
+        }
+        assertThat(ivs).hasSize(100);
+    }
+
+    @Test
+    void tampered_blob_is_rejected() {
+        byte[] blob = crypto.encrypt("1111222233334444");
+        blob[blob.length - 1] ^= 1;
+
+        assertThatThrownBy(() -> crypto.decrypt(blob))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Decrypt failed");
+    }
+
+    @Test
+    void legacy_base64_rows_are_still_readable() throws Exception {
+        byte[] iv = new byte[12];
+        iv[0] = 7;
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(KEY), "AES"), new GCMParameterSpec(128, iv));
+        byte[] enc = c.doFinal("4000123412341234".getBytes(StandardCharsets.UTF_8));
+        String legacy = Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(enc);
+
+        assertThat(crypto.decryptLegacy(legacy)).isEqualTo("4000123412341234");
+    }
+
+    @Test
+    void parallel_round_trips_do_not_interfere() {
+        ConcurrentHashMap<Integer, String> results = new ConcurrentHashMap<>();
+        IntStream.range(0, 2_000).parallel().forEach(i -> {
+            String pan = String.format("%016d", i);
+            results.put(i, crypto.decrypt(crypto.encrypt(pan)));
+        });
+        IntStream.range(0, 2_000).forEach(i -> assertThat(results.get(i)).isEqualTo(String.format("%016d", i)));
+    }
+}
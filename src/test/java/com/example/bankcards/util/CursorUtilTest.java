@@ -0,0 +1,42 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * CursorUtil: курсоры по id и по (время, id) — круговое преобразование, пустой курсор,
+ * отказ на мусоре и на курсоре другой версии (курсор карт не годится для истории переводов).
+ */
+class CursorUtilTest {
+
+    @Test
+    void id_cursor_roundtrip() {
+        assertThat(CursorUtil.decode(CursorUtil.encode(42L))).isEqualTo(42L);
+        assertThat(CursorUtil.decode(null)).isNull();
+        assertThat(CursorUtil.decode(" ")).isNull();
+    }
+
+    @Test
+    void time_cursor_roundtrip_keeps_nanos() {
+        LocalDateTime t = LocalDateTime.of(2026, 3, 1, 12, 30, 15, 123_456_000);
+
+        CursorUtil.TimeKey k = CursorUtil.decodeTimeKey(CursorUtil.encode(t, 7L));
+
+        assertThat(k).isEqualTo(new CursorUtil.TimeKey(t, 7L));
+        assertThat(CursorUtil.decodeTimeKey(null)).isNull();
+    }
+
+    @Test
+    void rejects_garbage_and_foreign_version() {
+        assertThatThrownBy(() -> CursorUtil.decode("!!")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CursorUtil.decodeTimeKey("AAAA")).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CursorUtil.decodeTimeKey(CursorUtil.encode(1L)))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> CursorUtil.decode(CursorUtil.encode(LocalDateTime.now(), 1L)))
+                .isInstanceOf(BadRequestException.class);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * DataFormat: выбор формата по Content-Type загрузки и по параметру выгрузки.
+ */
+class DataFormatTest {
+
+    @Test
+    void from_content_type() {
+        assertThat(DataFormat.of(MediaType.parseMediaType("application/x-ndjson"))).isEqualTo(DataFormat.NDJSON);
+        assertThat(DataFormat.of(MediaType.parseMediaType("text/csv;charset=UTF-8"))).isEqualTo(DataFormat.CSV);
+        assertThatThrownBy(() -> DataFormat.of(MediaType.APPLICATION_JSON))
+                .isInstanceOf(BadRequestException.class).hasMessageContaining("content type");
+    }
+
+    @Test
+    void from_parameter() {
+        assertThat(DataFormat.of("CSV")).isEqualTo(DataFormat.CSV);
+        assertThat(DataFormat.of("ndjson")).isEqualTo(DataFormat.NDJSON);
+        assertThatThrownBy(() -> DataFormat.of("xml")).isInstanceOf(BadRequestException.class);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * DateUtil: "MM/yy" <-> последний день месяца (cards.expiry_date).
+ * Карта действует весь месяц срока включительно.
+ */
+class DateUtilTest {
+
+    @Test
+    void parses_to_last_day_of_month() {
+        assertThat(DateUtil.parseExpiry("02/28")).isEqualTo(LocalDate.of(2028, 2, 29));
+        assertThat(DateUtil.parseExpiry("12/29")).isEqualTo(LocalDate.of(2029, 12, 31));
+    }
+
+    @Test
+    void format_roundtrip() {
+        assertThat(DateUtil.formatExpiry(DateUtil.parseExpiry("01/26"))).isEqualTo("01/26");
+    }
+
+    @Test
+    void expires_after_last_day_of_month() {
+        LocalDate exp = DateUtil.parseExpiry("11/25");
+        assertThat(DateUtil.isExpired(exp, LocalDate.of(2025, 11, 30))).isFalse();
+        assertThat(DateUtil.isExpired(exp, LocalDate.of(2025, 12, 1))).isTrue();
+    }
+}